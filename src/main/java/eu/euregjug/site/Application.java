@@ -41,6 +41,22 @@ public class Application {
         return new ThreadPoolTaskExecutor();
     }
 
+    /**
+     * A single threaded executor for rendering changed posts. Changes are
+     * rendered in the order they arrived and don't compete with other
+     * asynchronous tasks.
+     *
+     * @return The executor used for rendering posts in the background
+     */
+    @Bean
+    public Executor renderExecutor() {
+        final ThreadPoolTaskExecutor rv = new ThreadPoolTaskExecutor();
+        rv.setCorePoolSize(1);
+        rv.setMaxPoolSize(1);
+        rv.setThreadNamePrefix("post-render-");
+        return rv;
+    }
+
     @SuppressWarnings({"squid:S2095"}) // Ignore 'Close this "ConfigurableApplicationContext".'
     public static void main(final String... args) {
         SpringApplication.run(Application.class, args);
@@ -16,35 +16,46 @@
 package eu.euregjug.site.assets;
 
 import com.mongodb.gridfs.GridFSDBFile;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
 import java.util.Optional;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
-import org.apache.tika.Tika;
-import org.apache.tika.io.TikaInputStream;
-import org.apache.tika.mime.MediaType;
-import org.springframework.dao.DataIntegrityViolationException;
-import org.springframework.data.mongodb.core.query.Criteria;
-import org.springframework.data.mongodb.core.query.Query;
-import org.springframework.data.mongodb.gridfs.GridFsTemplate;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.converter.ResourceHttpMessageConverter;
+import org.springframework.http.converter.ResourceRegionHttpMessageConverter;
+import org.springframework.http.server.ServletServerHttpResponse;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
-import org.springframework.web.bind.annotation.ResponseBody;
+import org.springframework.web.context.request.ServletWebRequest;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
 
 import static java.time.format.DateTimeFormatter.RFC_1123_DATE_TIME;
+import static java.util.stream.Collectors.toList;
+import static org.springframework.web.bind.annotation.RequestMethod.GET;
+import static org.springframework.web.bind.annotation.RequestMethod.HEAD;
 import static org.springframework.web.bind.annotation.RequestMethod.POST;
+import static org.springframework.web.bind.annotation.RequestMethod.PUT;
 import static java.time.ZoneId.of;
 import static java.time.ZonedDateTime.now;
 import lombok.RequiredArgsConstructor;
-import lombok.extern.slf4j.Slf4j;
-import static org.springframework.http.HttpStatus.CREATED;
-import org.springframework.web.bind.annotation.ResponseStatus;
 
 /**
  * @author Michael J. Simons, 2015-12-29
@@ -52,55 +63,263 @@ import org.springframework.web.bind.annotation.ResponseStatus;
 @Controller
 @RequestMapping("/api/assets")
 @RequiredArgsConstructor
-@Slf4j
 class AssetApiController {
 
-    private final Tika tika = new Tika();
+    /**
+     * Request attributes through which Tomcat sends files with sendfile.
+     */
+    private static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
 
-    private final GridFsTemplate gridFs;
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+
+    private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+
+    private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
+    private static final ResourceHttpMessageConverter RESOURCE_CONVERTER = new ResourceHttpMessageConverter();
+
+    private static final ResourceRegionHttpMessageConverter RESOURCE_REGION_CONVERTER = new ResourceRegionHttpMessageConverter();
+
+    private final AssetService assetService;
+
+    private final AssetCache assetCache;
+
+    private final AssetDerivativeService assetDerivativeService;
 
     @RequestMapping(method = POST)
     @PreAuthorize("isAuthenticated()")
-    @ResponseBody
-    @ResponseStatus(CREATED)
-    public String create(
+    public ResponseEntity<String> create(
             @RequestParam("assetData") final MultipartFile assetData
     ) throws IOException {
-
-        // Check duplicates
-        final GridFSDBFile file = this.gridFs.findOne(Query.query(Criteria.where("filename").is(assetData.getOriginalFilename())));
-        if (file != null) {
-            throw new DataIntegrityViolationException(String.format("Asset with name '%s' already exists", assetData.getOriginalFilename()));
-        } else {
-            try (InputStream usedStream = TikaInputStream.get(assetData.getInputStream())) {
-                MediaType mediaType = null;
-                try {
-                    mediaType = MediaType.parse(tika.detect(usedStream, assetData.getOriginalFilename()));
-                } catch (IOException e) {
-                    log.warn("Could not detect content type", e);
-                }
-                this.gridFs.store(assetData.getInputStream(), assetData.getOriginalFilename(), Optional.ofNullable(mediaType).map(MediaType::toString).orElse(null));
-                return assetData.getOriginalFilename();
-            }
+        try (InputStream content = assetData.getInputStream()) {
+            return created(assetData.getOriginalFilename(), this.assetService.store(assetData.getOriginalFilename(), assetData.getSize(), content));
         }
     }
 
+    /**
+     * Stores several assets at once, for example when migrating the
+     * materials of past talks. The assets are stored concurrently and
+     * independent of each other.
+     *
+     * @param assetData The assets to store
+     * @return The outcome for each asset
+     */
+    @RequestMapping(value = "/batch", method = POST)
+    @PreAuthorize("isAuthenticated()")
+    public ResponseEntity<List<AssetService.UploadResult>> createAll(
+            @RequestParam("assetData") final List<MultipartFile> assetData
+    ) {
+        return ResponseEntity.ok(this.assetService.storeAll(assetData.stream()
+                .map(file -> new AssetService.Upload(file.getOriginalFilename(), file.getSize(), file::getInputStream))
+                .collect(toList())
+        ));
+    }
+
+    /**
+     * Lists the stored assets. The content of the assets is not loaded.
+     *
+     * @param pageable
+     * @return A page of assets
+     */
+    @RequestMapping(method = GET)
+    @PreAuthorize("isAuthenticated()")
+    public ResponseEntity<Page<AssetInfo>> list(final Pageable pageable) {
+        return ResponseEntity.ok(this.assetService.findAll(pageable));
+    }
+
+    /**
+     * Stores the request body as a new asset. Other than multipart uploads,
+     * the body is not spooled to disk by the container but written directly
+     * to GridFS in a single pass.
+     *
+     * @param filename
+     * @param request
+     * @return The name of the stored asset
+     * @throws IOException
+     */
+    @RequestMapping(value = "/{filename:.+}", method = PUT)
+    @PreAuthorize("isAuthenticated()")
+    public ResponseEntity<String> upload(
+            @PathVariable final String filename,
+            final HttpServletRequest request
+    ) throws IOException {
+        return created(filename, this.assetService.store(filename, request.getContentLengthLong(), request.getInputStream()));
+    }
+
+    /**
+     * @param filename
+     * @param sha256
+     * @return A response with the name of the new asset as body and its
+     * immutable url as location
+     */
+    static ResponseEntity<String> created(final String filename, final String sha256) {
+        return ResponseEntity
+                .created(ServletUriComponentsBuilder.fromCurrentContextPath().path("/api/assets/{sha256}/{filename}").buildAndExpand(sha256, filename).encode().toUri())
+                .body(filename);
+    }
+
+    /**
+     * Serves the asset with the given name. Single and multiple byte ranges
+     * are supported, so that large files can be seeked into and downloads
+     * resumed. The MD5 checksum and the upload date of the file are used as
+     * validators for conditional requests. Assets are served from the local
+     * {@link AssetCache} if possible, otherwise they are copied from GridFS
+     * chunk by chunk with a small buffer.
+     *
+     * @param filename Filename or alias of the asset
+     * @param webRequest
+     * @param response
+     * @throws IOException
+     */
     @RequestMapping({"/{filename:.+}"})
     public void get(
             @PathVariable final String filename,
-            final HttpServletRequest request,
+            final ServletWebRequest webRequest,
             final HttpServletResponse response
     ) throws IOException {
-        final GridFSDBFile file = this.gridFs.findOne(Query.query(Criteria.where("filename").is(filename)));
-        if (file == null) {
-            response.setStatus(HttpServletResponse.SC_NOT_FOUND);
-        } else {
+        serve(filename, () -> this.assetService.findByName(filename), filename, false, webRequest, response);
+    }
+
+    /**
+     * Serves a scaled down and recompressed derivative of the image with the
+     * given name. The derivative is created on first request and stored next
+     * to the original, all later requests are served like any other asset.
+     *
+     * @param filename Filename or alias of the original image
+     * @param width Width of the derivative, must be one of the configured
+     * widths
+     * @param format Format of the derivative, either jpg or png
+     * @param quality Quality of jpg derivatives between 1 and 100
+     * @param webRequest
+     * @param response
+     * @throws IOException
+     */
+    @RequestMapping(value = "/{filename:.+}", method = {GET, HEAD}, params = "width")
+    public void getDerivative(
+            @PathVariable final String filename,
+            @RequestParam final int width,
+            @RequestParam(defaultValue = "jpg") final String format,
+            @RequestParam(defaultValue = "80") final int quality,
+            final ServletWebRequest webRequest,
+            final HttpServletResponse response
+    ) throws IOException {
+        final AssetDerivativeService.Derivative derivative = this.assetDerivativeService.getDerivative(width, format, quality);
+        final int extension = filename.lastIndexOf('.');
+        final String derivativeFilename = (extension < 0 ? filename : filename.substring(0, extension)) + '.' + derivative.getFormat();
+        serve(filename + '?' + derivative, () -> {
+            final GridFSDBFile source = this.assetService.findByName(filename);
+            return source == null ? null : this.assetDerivativeService.getOrCreate(source, derivative);
+        }, derivativeFilename, false, webRequest, response);
+    }
+
+    /**
+     * Serves the asset with the given content like {@link #get} does. The url
+     * changes with the content, so the asset is marked as immutable and can
+     * be cached forever.
+     *
+     * @param sha256 Hex encoded SHA-256 of the content
+     * @param filename Name of the asset presented to the client
+     * @param webRequest
+     * @param response
+     * @throws IOException
+     */
+    @RequestMapping(value = "/{sha256:[0-9a-f]{64}}/{filename:.+}", method = {GET, HEAD})
+    public void getImmutable(
+            @PathVariable final String sha256,
+            @PathVariable final String filename,
+            final ServletWebRequest webRequest,
+            final HttpServletResponse response
+    ) throws IOException {
+        serve(sha256 + '/' + filename, () -> this.assetService.findBySha256(sha256), filename, true, webRequest, response);
+    }
+
+    void serve(
+            final String key,
+            final Supplier<GridFSDBFile> files,
+            final String filename,
+            final boolean immutable,
+            final ServletWebRequest webRequest,
+            final HttpServletResponse response
+    ) throws IOException {
+        AssetResource asset = this.assetCache.getIfPresent(key);
+        if (asset == null) {
+            final GridFSDBFile file = files.get();
+            if (file == null) {
+                response.setStatus(HttpServletResponse.SC_NOT_FOUND);
+                return;
+            }
+            asset = this.assetCache.put(key, file);
+        }
+        try {
             final int cacheForDays = 365;
-            response.setHeader("Content-Type", file.getContentType());
-            response.setHeader("Content-Disposition", String.format("inline; filename=\"%s\"", file.getFilename()));
+            response.setHeader("Content-Disposition", String.format("inline; filename=\"%s\"", filename));
             response.setHeader("Expires", now(of("UTC")).plusDays(cacheForDays).format(RFC_1123_DATE_TIME));
-            response.setHeader("Cache-Control", String.format("max-age=%d, %s", TimeUnit.DAYS.toSeconds(cacheForDays), "public"));
-            file.writeTo(response.getOutputStream());
+            response.setHeader("Cache-Control", String.format("max-age=%d, %s", TimeUnit.DAYS.toSeconds(cacheForDays), immutable ? "public, immutable" : "public"));
+            response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+            if (webRequest.checkNotModified(asset.getEtag(), asset.lastModified())) {
+                return;
+            }
+
+            final MediaType contentType = Optional.ofNullable(asset.getContentType()).map(MediaType::parseMediaType).orElse(null);
+            final ServletServerHttpResponse outputMessage = new ServletServerHttpResponse(response);
+            final String range = webRequest.getHeader(HttpHeaders.RANGE);
+            if (range == null) {
+                if (asset instanceof AssetCache.CachedAssetResource) {
+                    // With sendfile the container opens the copy right after
+                    // it has been released. It is the most recently used
+                    // copy then and won't be evicted in between.
+                    sendFile(asset.getFile(), contentType, webRequest.getRequest(), response);
+                } else {
+                    RESOURCE_CONVERTER.write(asset, contentType, outputMessage);
+                }
+                return;
+            }
+            try {
+                final List<HttpRange> httpRanges = HttpRange.parseRanges(range);
+                response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+                if (httpRanges.size() == 1) {
+                    RESOURCE_REGION_CONVERTER.write(httpRanges.get(0).toResourceRegion(asset), contentType, outputMessage);
+                } else {
+                    RESOURCE_REGION_CONVERTER.write(HttpRange.toResourceRegions(httpRanges, asset), contentType, outputMessage);
+                }
+            } catch (IllegalArgumentException e) {
+                response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + asset.contentLength());
+                response.sendError(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+            }
+        } finally {
+            this.assetCache.release(asset);
+        }
+    }
+
+    /**
+     * Sends a complete local file without copying it through the heap: The
+     * servlet container sends the file itself if it supports sendfile,
+     * otherwise the file is transferred through its channel.
+     *
+     * @param file
+     * @param contentType
+     * @param request
+     * @param response
+     * @throws IOException
+     */
+    static void sendFile(final File file, final MediaType contentType, final HttpServletRequest request, final HttpServletResponse response) throws IOException {
+        final long length = file.length();
+        response.setContentType(Optional.ofNullable(contentType).orElse(MediaType.APPLICATION_OCTET_STREAM).toString());
+        response.setHeader(HttpHeaders.CONTENT_LENGTH, Long.toString(length));
+        if (Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT))) {
+            request.setAttribute(SENDFILE_FILENAME, file.getAbsolutePath());
+            request.setAttribute(SENDFILE_START, 0L);
+            request.setAttribute(SENDFILE_END, length);
+        } else {
+            try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+                final WritableByteChannel out = Channels.newChannel(response.getOutputStream());
+                long position = 0;
+                long transferred = 1;
+                while (position < length && transferred > 0) {
+                    transferred = channel.transferTo(position, length - position, out);
+                    position += transferred;
+                }
+            }
             response.flushBuffer();
         }
     }
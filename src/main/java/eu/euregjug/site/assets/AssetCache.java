@@ -0,0 +1,315 @@
+/*
+ * Copyright 2018 EuregJUG.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.euregjug.site.assets;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalNotification;
+import com.mongodb.gridfs.GridFSDBFile;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.stereotype.Component;
+
+/**
+ * Keeps copies of assets stored in GridFS on the local disk. Assets cannot be
+ * changed once they are stored, so a copy is valid as long as it exists. The
+ * copies are keyed by the MD5 checksum of their content, so that an asset
+ * reachable through its name, its alias and its content addressed url is
+ * copied only once. The least recently used copies are evicted when the
+ * cache exceeds its maximum size. Each copy counts the requests using it and
+ * is deleted only after it has been evicted and the last request released
+ * it. The cache starts empty on each start.
+ */
+@Component
+@Slf4j
+class AssetCache implements PublicMetrics {
+
+    /**
+     * Maximum number of names, aliases and urls pointing to copies.
+     */
+    static final int MAXIMUM_NUMBER_OF_KEYS = 4096;
+
+    /**
+     * A file on the local disk holding the content of one or more assets.
+     */
+    static final class Copy {
+
+        private final String md5;
+
+        private final File file;
+
+        /**
+         * The length recorded when the copy has been created, so that the
+         * size of the cache doesn't depend on the file still existing.
+         */
+        private final long length;
+
+        /**
+         * Number of references, one held by the cache and one by each request
+         * using the copy.
+         */
+        private final AtomicInteger references = new AtomicInteger(1);
+
+        Copy(final String md5, final File file, final long length) {
+            this.md5 = md5;
+            this.file = file;
+            this.length = length;
+        }
+
+        /**
+         * @return True, if the copy has been retained, false if it has
+         * already been deleted
+         */
+        boolean retain() {
+            int current;
+            do {
+                current = this.references.get();
+                if (current == 0) {
+                    return false;
+                }
+            } while (!this.references.compareAndSet(current, current + 1));
+            return true;
+        }
+
+        void release() {
+            if (this.references.decrementAndGet() == 0) {
+                delete(this.file.toPath());
+            }
+        }
+    }
+
+    /**
+     * An asset copied to the local disk.
+     */
+    static final class CachedAssetResource extends FileSystemResource implements AssetResource {
+
+        private final Copy copy;
+
+        private final String filename;
+
+        private final String etag;
+
+        private final String contentType;
+
+        private final long lastModified;
+
+        CachedAssetResource(final Copy copy, final GridFsAssetResource source) {
+            super(copy.file);
+            this.copy = copy;
+            this.filename = source.getFilename();
+            this.etag = source.getEtag();
+            this.contentType = source.getContentType();
+            this.lastModified = source.lastModified();
+        }
+
+        @Override
+        public String getFilename() {
+            return this.filename;
+        }
+
+        @Override
+        public long lastModified() {
+            return this.lastModified;
+        }
+
+        @Override
+        public String getEtag() {
+            return this.etag;
+        }
+
+        @Override
+        public String getContentType() {
+            return this.contentType;
+        }
+    }
+
+    private final boolean enabled;
+
+    private final Path directory;
+
+    private final long maximumFileSize;
+
+    private final Cache<String, Copy> copies;
+
+    private final Cache<String, CachedAssetResource> assets;
+
+    private final AtomicLong size = new AtomicLong();
+
+    private final LongAdder hits = new LongAdder();
+
+    private final LongAdder misses = new LongAdder();
+
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * Creates a new asset cache and deletes all copies left in its directory.
+     *
+     * @param enabled Flag, if assets are copied at all
+     * @param directory Directory of the copies, defaults to a directory inside
+     * the temporary directory
+     * @param maximumSize Maximum size of all copies in bytes
+     * @param maximumFileSize Maximum size of a single copy in bytes, larger
+     * assets are always read from GridFS
+     * @throws IOException
+     */
+    AssetCache(
+            @Value("${euregjug.asset-cache.enabled:true}") final boolean enabled,
+            @Value("${euregjug.asset-cache.directory:}") final String directory,
+            @Value("${euregjug.asset-cache.maximum-size:268435456}") final long maximumSize,
+            @Value("${euregjug.asset-cache.maximum-file-size:33554432}") final long maximumFileSize
+    ) throws IOException {
+        this.enabled = enabled;
+        this.directory = directory.isEmpty() ? Paths.get(System.getProperty("java.io.tmpdir"), "euregjug-assets") : Paths.get(directory);
+        this.maximumFileSize = Math.min(maximumFileSize, Integer.MAX_VALUE);
+        // A single segment, so that the least recently used asset of all
+        // assets is evicted and not the one of a segment
+        this.copies = CacheBuilder.newBuilder()
+                .concurrencyLevel(1)
+                .maximumWeight(maximumSize)
+                .weigher((final String md5, final Copy copy) -> (int) copy.length)
+                .removalListener(this::onRemoval)
+                .build();
+        this.assets = CacheBuilder.newBuilder()
+                .maximumSize(MAXIMUM_NUMBER_OF_KEYS)
+                .build();
+        if (this.enabled) {
+            Files.createDirectories(this.directory);
+            try (Stream<Path> copies = Files.list(this.directory)) {
+                copies.forEach(AssetCache::delete);
+            }
+        }
+    }
+
+    /**
+     * Returns the local copy of the asset with the given key. The copy is
+     * retained until it is passed to {@link #release(AssetResource)}.
+     *
+     * @param key
+     * @return The local copy of the asset with the given key, null if there
+     * is none
+     */
+    AssetResource getIfPresent(final String key) {
+        final CachedAssetResource rv = this.assets.getIfPresent(key);
+        if (rv == null) {
+            return null;
+        }
+        // Looking the copy up marks it as used
+        if (this.copies.getIfPresent(rv.copy.md5) != rv.copy || !rv.copy.retain()) {
+            this.assets.asMap().remove(key, rv);
+            return null;
+        }
+        this.hits.increment();
+        return rv;
+    }
+
+    /**
+     * Copies the given file to the local disk if possible. A local copy is
+     * retained until it is passed to {@link #release(AssetResource)}.
+     *
+     * @param key
+     * @param file A file stored in GridFS
+     * @return The local copy of the file or the file in GridFS itself, if it
+     * cannot be copied
+     */
+    AssetResource put(final String key, final GridFSDBFile file) {
+        final GridFsAssetResource source = new GridFsAssetResource(file);
+        this.misses.increment();
+        if (!this.enabled || file.getMD5() == null || file.getLength() > this.maximumFileSize) {
+            return source;
+        }
+        final Copy copy;
+        try {
+            copy = this.copies.get(file.getMD5(), () -> copy(file));
+        } catch (ExecutionException | RuntimeException e) {
+            log.warn("Could not cache asset {}: {}", file.getFilename(), e.getMessage());
+            return source;
+        }
+        if (!copy.retain()) {
+            return source;
+        }
+        final CachedAssetResource rv = new CachedAssetResource(copy, source);
+        this.assets.put(key, rv);
+        return rv;
+    }
+
+    /**
+     * Releases an asset returned by this cache once it has been served.
+     *
+     * @param asset
+     */
+    void release(final AssetResource asset) {
+        if (asset instanceof CachedAssetResource) {
+            ((CachedAssetResource) asset).copy.release();
+        }
+    }
+
+    Copy copy(final GridFSDBFile file) throws IOException {
+        // Each copy gets a file of its own, so that a new copy of an evicted
+        // but still used copy doesn't replace its file
+        final Path target = Files.createTempFile(this.directory, file.getMD5() + "-", ".asset");
+        try {
+            file.writeTo(target.toFile());
+        } catch (IOException | RuntimeException e) {
+            delete(target);
+            throw e;
+        }
+        this.size.addAndGet(file.getLength());
+        return new Copy(file.getMD5(), target.toFile(), file.getLength());
+    }
+
+    void onRemoval(final RemovalNotification<String, Copy> notification) {
+        final Copy copy = notification.getValue();
+        this.size.addAndGet(-copy.length);
+        if (notification.wasEvicted()) {
+            this.evictions.increment();
+        }
+        copy.release();
+    }
+
+    static void delete(final Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            log.warn("Could not delete cached asset {}: {}", path, e.getMessage());
+        }
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        return Arrays.asList(
+                new Metric<>("assets.cache.hits", this.hits.sum()),
+                new Metric<>("assets.cache.misses", this.misses.sum()),
+                new Metric<>("assets.cache.evictions", this.evictions.sum()),
+                new Metric<>("assets.cache.count", this.copies.size()),
+                new Metric<>("assets.cache.size", this.size.get())
+        );
+    }
+}
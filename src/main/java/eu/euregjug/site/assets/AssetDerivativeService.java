@@ -0,0 +1,366 @@
+/*
+ * Copyright 2018 EuregJUG.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.euregjug.site.assets;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.gridfs.GridFSDBFile;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.Collectors;
+import javax.annotation.PreDestroy;
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.gridfs.GridFsTemplate;
+import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * Creates resized and recompressed derivatives of images stored as assets.
+ * Derivatives are created once on a bounded pool of workers and stored in
+ * GridFS, keyed by the hash of the original and the parameters of the
+ * derivative. Concurrent requests for the same derivative wait for the same
+ * worker.
+ */
+@Service
+@Slf4j
+class AssetDerivativeService {
+
+    /**
+     * Key of the hash of the original in the metadata of a derivative.
+     */
+    static final String METADATA_DERIVATIVE_OF = "derivativeOf";
+
+    /**
+     * Images with more pixels than this are not decoded at all.
+     */
+    private static final long MAXIMUM_NUMBER_OF_PIXELS = 50_000_000L;
+
+    /**
+     * Parameters of a derivative.
+     */
+    @Getter
+    static final class Derivative {
+
+        static final List<String> FORMATS = Arrays.asList("jpg", "png");
+
+        private final int width;
+
+        private final String format;
+
+        private final int quality;
+
+        private Derivative(final int width, final String format, final int quality) {
+            this.width = width;
+            this.format = format;
+            this.quality = quality;
+        }
+
+        /**
+         * @param width
+         * @param format
+         * @param quality
+         * @param allowedWidths
+         * @return Valid parameters of a derivative
+         * @throws IllegalArgumentException if any of the parameters is invalid
+         */
+        static Derivative of(final int width, final String format, final int quality, final List<Integer> allowedWidths) {
+            if (!allowedWidths.contains(width)) {
+                throw new IllegalArgumentException(String.format("Width must be one of %s", allowedWidths));
+            }
+            final String normalizedFormat = format.toLowerCase(Locale.ENGLISH);
+            if (!FORMATS.contains(normalizedFormat)) {
+                throw new IllegalArgumentException(String.format("Format must be one of %s", FORMATS));
+            }
+            if (quality < 1 || quality > 100) {
+                throw new IllegalArgumentException("Quality must be between 1 and 100");
+            }
+            // Quality has no meaning for lossless formats
+            return new Derivative(width, normalizedFormat, "png".equals(normalizedFormat) ? 100 : quality);
+        }
+
+        String getContentType() {
+            return "jpg".equals(this.format) ? "image/jpeg" : "image/png";
+        }
+
+        /**
+         * @param source
+         * @return The name under which the derivative of the given original is
+         * stored
+         */
+        String getFilename(final GridFSDBFile source) {
+            return String.format("derivatives/%s/%d-%d.%s", getSourceHash(source), this.width, this.quality, this.format);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("width=%d&format=%s&quality=%d", this.width, this.format, this.quality);
+        }
+    }
+
+    /**
+     * Thrown when all workers are busy and the queue is full or when a
+     * derivative could not be created in time.
+     */
+    @ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+    static class DerivativeUnavailableException extends RuntimeException {
+
+        private static final long serialVersionUID = 2391380472622372411L;
+
+        DerivativeUnavailableException(final String message) {
+            super(message);
+        }
+    }
+
+    private final GridFsTemplate gridFs;
+
+    private final List<Integer> allowedWidths;
+
+    private final long timeout;
+
+    private final ThreadPoolExecutor workers;
+
+    private final ConcurrentMap<String, CompletableFuture<Void>> inFlight = new ConcurrentHashMap<>();
+
+    AssetDerivativeService(
+            final GridFsTemplate gridFs,
+            @Value("${euregjug.assets.derivatives.widths:320,640,960,1280,1920}") final int[] allowedWidths,
+            @Value("${euregjug.assets.derivatives.pool-size:2}") final int poolSize,
+            @Value("${euregjug.assets.derivatives.queue-capacity:16}") final int queueCapacity,
+            @Value("${euregjug.assets.derivatives.timeout:30000}") final long timeout
+    ) {
+        this.gridFs = gridFs;
+        this.allowedWidths = Arrays.stream(allowedWidths).boxed().collect(Collectors.toList());
+        this.timeout = timeout;
+        this.workers = new ThreadPoolExecutor(
+                poolSize, poolSize, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                new CustomizableThreadFactory("asset-derivatives-")
+        );
+    }
+
+    /**
+     * @param width
+     * @param format
+     * @param quality
+     * @return Valid parameters of a derivative
+     * @throws IllegalArgumentException if any of the parameters is invalid
+     */
+    Derivative getDerivative(final int width, final String format, final int quality) {
+        return Derivative.of(width, format, quality, this.allowedWidths);
+    }
+
+    /**
+     * Selects a derivative of the given original and creates it, if it
+     * doesn't exist yet.
+     *
+     * @param source The original image
+     * @param derivative
+     * @return The derivative
+     */
+    GridFSDBFile getOrCreate(final GridFSDBFile source, final Derivative derivative) {
+        if (source.getContentType() == null || !source.getContentType().startsWith("image/")) {
+            throw new IllegalArgumentException(String.format("Asset '%s' is not an image", source.getFilename()));
+        }
+        final String filename = derivative.getFilename(source);
+        GridFSDBFile rv = findByFilename(filename);
+        if (rv == null) {
+            final CompletableFuture<Void> task = new CompletableFuture<>();
+            final CompletableFuture<Void> existingTask = this.inFlight.putIfAbsent(filename, task);
+            if (existingTask == null) {
+                submit(filename, task, () -> create(source, derivative, filename));
+                await(filename, task);
+            } else {
+                await(filename, existingTask);
+            }
+            rv = findByFilename(filename);
+        }
+        return rv;
+    }
+
+    GridFSDBFile findByFilename(final String filename) {
+        return this.gridFs.findOne(Query.query(Criteria.where("filename").is(filename)));
+    }
+
+    void submit(final String filename, final CompletableFuture<Void> task, final Runnable creation) {
+        try {
+            this.workers.execute(() -> {
+                try {
+                    creation.run();
+                    task.complete(null);
+                } catch (RuntimeException e) {
+                    task.completeExceptionally(e);
+                } finally {
+                    this.inFlight.remove(filename, task);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            this.inFlight.remove(filename, task);
+            task.completeExceptionally(e);
+            throw new DerivativeUnavailableException("All workers for derivatives are busy");
+        }
+    }
+
+    void await(final String filename, final CompletableFuture<Void> task) {
+        try {
+            task.get(this.timeout, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DerivativeUnavailableException(String.format("Interrupted while waiting for %s", filename));
+        } catch (TimeoutException e) {
+            throw new DerivativeUnavailableException(String.format("%s not created after %dms", filename, this.timeout));
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IllegalArgumentException) {
+                throw (IllegalArgumentException) e.getCause();
+            }
+            throw new IllegalStateException(String.format("Could not create %s", filename), e.getCause());
+        }
+    }
+
+    void create(final GridFSDBFile source, final Derivative derivative, final String filename) {
+        final byte[] content;
+        try (InputStream in = source.getInputStream()) {
+            content = render(in, derivative);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        this.gridFs.store(
+                new ByteArrayInputStream(content), filename, derivative.getContentType(),
+                new BasicDBObject(METADATA_DERIVATIVE_OF, getSourceHash(source))
+        );
+        log.debug("Created {} with {} bytes", filename, content.length);
+    }
+
+    /**
+     * Scales the given image down to the width of the derivative, keeping
+     * its aspect ratio, and encodes it in the format of the derivative.
+     * Images are never scaled up.
+     *
+     * @param in The original image
+     * @param derivative
+     * @return The encoded derivative
+     * @throws IOException
+     */
+    static byte[] render(final InputStream in, final Derivative derivative) throws IOException {
+        final BufferedImage original = read(in);
+        final int width = Math.min(derivative.getWidth(), original.getWidth());
+        final int height = Math.max(1, Math.round((float) original.getHeight() * width / original.getWidth()));
+        final boolean opaque = "jpg".equals(derivative.getFormat());
+
+        BufferedImage rv = original;
+        int currentWidth = original.getWidth();
+        int currentHeight = original.getHeight();
+        // Scaling down in steps of at most a half keeps bilinear
+        // interpolation from dropping pixels
+        do {
+            currentWidth = Math.max(width, currentWidth / 2);
+            currentHeight = Math.max(height, currentHeight / 2);
+            final BufferedImage step = new BufferedImage(currentWidth, currentHeight, opaque ? BufferedImage.TYPE_INT_RGB : BufferedImage.TYPE_INT_ARGB);
+            final Graphics2D graphics = step.createGraphics();
+            try {
+                graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+                graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+                if (opaque) {
+                    graphics.setColor(Color.WHITE);
+                    graphics.fillRect(0, 0, currentWidth, currentHeight);
+                }
+                graphics.drawImage(rv, 0, 0, currentWidth, currentHeight, null);
+            } finally {
+                graphics.dispose();
+            }
+            rv = step;
+        } while (currentWidth > width || currentHeight > height);
+
+        return write(rv, derivative);
+    }
+
+    static BufferedImage read(final InputStream in) throws IOException {
+        try (ImageInputStream imageIn = ImageIO.createImageInputStream(in)) {
+            final Iterator<ImageReader> readers = imageIn == null ? null : ImageIO.getImageReaders(imageIn);
+            if (readers == null || !readers.hasNext()) {
+                throw new IllegalArgumentException("Unsupported image format");
+            }
+            final ImageReader reader = readers.next();
+            try {
+                reader.setInput(imageIn, true, true);
+                if ((long) reader.getWidth(0) * reader.getHeight(0) > MAXIMUM_NUMBER_OF_PIXELS) {
+                    throw new IllegalArgumentException("Image is too large");
+                }
+                return reader.read(0);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    static byte[] write(final BufferedImage image, final Derivative derivative) throws IOException {
+        final ImageWriter writer = ImageIO.getImageWritersByFormatName(derivative.getFormat()).next();
+        final ByteArrayOutputStream rv = new ByteArrayOutputStream();
+        try (ImageOutputStream imageOut = ImageIO.createImageOutputStream(rv)) {
+            writer.setOutput(imageOut);
+            final ImageWriteParam param = writer.getDefaultWriteParam();
+            if (param.canWriteCompressed() && "jpg".equals(derivative.getFormat())) {
+                param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+                param.setCompressionQuality(derivative.getQuality() / 100f);
+            }
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+        return rv.toByteArray();
+    }
+
+    static String getSourceHash(final GridFSDBFile source) {
+        final Object sha256 = source.getMetaData() == null ? null : source.getMetaData().get(AssetService.METADATA_SHA256);
+        return sha256 == null ? source.getMD5() : sha256.toString();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        this.workers.shutdownNow();
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright 2018 EuregJUG.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.euregjug.site.assets;
+
+import com.mongodb.DBObject;
+import java.io.Serializable;
+import java.util.Date;
+import lombok.Getter;
+
+/**
+ * Describes a stored asset without its content, used for listing assets.
+ */
+@Getter
+public final class AssetInfo implements Serializable {
+
+    private static final long serialVersionUID = -3290436287283446124L;
+
+    /**
+     * Fields of a GridFS files document needed for an {@link AssetInfo}.
+     */
+    static final String[] FIELDS = {"filename", "length", "contentType", "uploadDate", "metadata." + AssetService.METADATA_SHA256};
+
+    private final String filename;
+
+    private final long length;
+
+    private final String contentType;
+
+    private final String sha256;
+
+    private final Date uploadDate;
+
+    AssetInfo(final String filename, final long length, final String contentType, final String sha256, final Date uploadDate) {
+        this.filename = filename;
+        this.length = length;
+        this.contentType = contentType;
+        this.sha256 = sha256;
+        this.uploadDate = uploadDate;
+    }
+
+    /**
+     * @param file A GridFS files document containing at least {@link #FIELDS}
+     * @return Information about the asset described by the given document
+     */
+    static AssetInfo of(final DBObject file) {
+        final DBObject metadata = (DBObject) file.get("metadata");
+        final Object sha256 = metadata == null ? null : metadata.get(AssetService.METADATA_SHA256);
+        final Number length = (Number) file.get("length");
+        return new AssetInfo(
+                (String) file.get("filename"),
+                length == null ? 0L : length.longValue(),
+                (String) file.get("contentType"),
+                sha256 == null ? null : sha256.toString(),
+                (Date) file.get("uploadDate")
+        );
+    }
+}
@@ -0,0 +1,35 @@
+/*
+ * Copyright 2018 EuregJUG.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.euregjug.site.assets;
+
+import org.springframework.core.io.Resource;
+
+/**
+ * A stored asset together with the metadata needed to serve it.
+ */
+interface AssetResource extends Resource {
+
+    /**
+     * @return A strong entity tag computed from the content of the asset,
+     * null if there's none
+     */
+    String getEtag();
+
+    /**
+     * @return The content type the asset has been stored with
+     */
+    String getContentType();
+}
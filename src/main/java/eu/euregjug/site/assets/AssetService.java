@@ -0,0 +1,437 @@
+/*
+ * Copyright 2018 EuregJUG.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.euregjug.site.assets;
+
+import com.google.common.hash.Hashing;
+import com.google.common.hash.HashingInputStream;
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBObject;
+import com.mongodb.DuplicateKeyException;
+import com.mongodb.gridfs.GridFSDBFile;
+import com.mongodb.gridfs.GridFSFile;
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.PreDestroy;
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.tika.Tika;
+import org.apache.tika.mime.MediaType;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.domain.Sort.Direction;
+import org.springframework.data.mongodb.core.IndexOperations;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.data.mongodb.gridfs.GridFsTemplate;
+import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+import static java.util.stream.Collectors.toList;
+
+/**
+ * Stores assets in GridFS. The content of an asset is read exactly once: The
+ * content type is detected from the leading bytes, which are kept in a small
+ * buffer, and the content is hashed while it is written to GridFS chunk by
+ * chunk. Assets are content addressed: Each content is stored once and can
+ * have several names.
+ */
+@Service
+@Slf4j
+class AssetService {
+
+    /**
+     * Key of the hex encoded SHA-256 of the content in the metadata of an
+     * asset.
+     */
+    static final String METADATA_SHA256 = "sha256";
+
+    /**
+     * Key of all names of an asset in the metadata of an asset, including
+     * the filename it has been stored with first.
+     */
+    static final String METADATA_ALIASES = "aliases";
+
+    private static final String METADATA = "metadata";
+
+    private static final String FILES_COLLECTION = "fs.files";
+
+    /**
+     * Size of the buffer for the leading bytes. It grows up to the number of
+     * bytes Tika needs for detecting the content type.
+     */
+    private static final int BUFFER_SIZE = 8192;
+
+    /**
+     * Thrown when an asset exceeds the maximum size.
+     */
+    @ResponseStatus(HttpStatus.PAYLOAD_TOO_LARGE)
+    static class AssetTooLargeException extends RuntimeException {
+
+        private static final long serialVersionUID = -2617373578364453520L;
+
+        AssetTooLargeException(final String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * Thrown when an asset is uploaded without announcing its size.
+     */
+    @ResponseStatus(HttpStatus.LENGTH_REQUIRED)
+    static class LengthRequiredException extends RuntimeException {
+
+        private static final long serialVersionUID = 6364286713590574457L;
+
+        LengthRequiredException(final String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * Supplies the content of an asset in a batch of uploads. The content is
+     * opened only when the asset is stored.
+     */
+    @FunctionalInterface
+    interface Content {
+
+        InputStream open() throws IOException;
+    }
+
+    /**
+     * An asset in a batch of uploads.
+     */
+    @Getter
+    @RequiredArgsConstructor
+    static final class Upload {
+
+        private final String filename;
+
+        private final long size;
+
+        private final Content content;
+    }
+
+    /**
+     * The outcome of storing a single asset of a batch of uploads.
+     */
+    @Getter
+    @RequiredArgsConstructor(access = AccessLevel.PRIVATE)
+    public static final class UploadResult {
+
+        private final String filename;
+
+        private final int status;
+
+        private final String sha256;
+
+        private final String message;
+
+        static UploadResult created(final String filename, final String sha256) {
+            return new UploadResult(filename, HttpStatus.CREATED.value(), sha256, null);
+        }
+
+        static UploadResult failed(final String filename, final HttpStatus status, final String message) {
+            return new UploadResult(filename, status.value(), null, message);
+        }
+    }
+
+    private final Tika tika = new Tika();
+
+    private final GridFsTemplate gridFs;
+
+    private final MongoOperations mongoOperations;
+
+    private final long maximumSize;
+
+    private final ThreadPoolExecutor uploadWorkers;
+
+    AssetService(
+            final GridFsTemplate gridFs,
+            final MongoOperations mongoOperations,
+            @Value("${euregjug.assets.maximum-size:536870912}") final long maximumSize,
+            @Value("${euregjug.assets.uploads.pool-size:4}") final int uploadPoolSize,
+            @Value("${euregjug.assets.uploads.queue-capacity:16}") final int uploadQueueCapacity
+    ) {
+        this.gridFs = gridFs;
+        this.mongoOperations = mongoOperations;
+        this.maximumSize = maximumSize;
+        // Uploads that don't fit into the queue are stored by the requesting
+        // thread, which slows down large batches instead of rejecting them
+        this.uploadWorkers = new ThreadPoolExecutor(
+                uploadPoolSize, uploadPoolSize, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(uploadQueueCapacity),
+                new CustomizableThreadFactory("asset-uploads-"),
+                new ThreadPoolExecutor.CallerRunsPolicy()
+        );
+    }
+
+    /**
+     * Stores a new asset. The content is stored only once: If there's
+     * already an asset with the same content, the new content is dropped and
+     * the filename is added as an alias to the existing asset.
+     *
+     * @param filename The unique name of the asset
+     * @param size The size of the content in bytes
+     * @param content The content, will not be closed
+     * @return The hex encoded SHA-256 of the content
+     * @throws IOException
+     */
+    String store(final String filename, final long size, final InputStream content) throws IOException {
+        checkSize(filename, size);
+        if (findByName(filename) != null) {
+            throw new DataIntegrityViolationException(String.format("Asset with name '%s' already exists", filename));
+        }
+        return storeContent(filename, content);
+    }
+
+    /**
+     * Stores a batch of new assets concurrently on a bounded pool of workers.
+     * Existing names are looked up once for the whole batch instead of once
+     * per asset. A failing asset doesn't affect the others.
+     *
+     * @param uploads The assets to store
+     * @return The outcome for each asset in the order of the uploads
+     */
+    List<UploadResult> storeAll(final List<Upload> uploads) {
+        final Set<String> existingNames = findExistingNames(uploads.stream().map(Upload::getFilename).distinct().collect(toList()));
+        final Set<String> names = new HashSet<>();
+        final List<CompletableFuture<UploadResult>> results = new ArrayList<>(uploads.size());
+        for (Upload upload : uploads) {
+            final String filename = upload.getFilename();
+            if (existingNames.contains(filename) || !names.add(filename)) {
+                results.add(CompletableFuture.completedFuture(UploadResult.failed(filename, HttpStatus.CONFLICT, String.format("Asset with name '%s' already exists", filename))));
+            } else {
+                results.add(CompletableFuture.supplyAsync(() -> store(upload), this.uploadWorkers));
+            }
+        }
+        return results.stream().map(CompletableFuture::join).collect(toList());
+    }
+
+    UploadResult store(final Upload upload) {
+        final String filename = upload.getFilename();
+        try {
+            checkSize(filename, upload.getSize());
+            try (InputStream content = upload.getContent().open()) {
+                return UploadResult.created(filename, storeContent(filename, content));
+            }
+        } catch (AssetTooLargeException e) {
+            return UploadResult.failed(filename, HttpStatus.PAYLOAD_TOO_LARGE, e.getMessage());
+        } catch (LengthRequiredException e) {
+            return UploadResult.failed(filename, HttpStatus.LENGTH_REQUIRED, e.getMessage());
+        } catch (DataIntegrityViolationException e) {
+            return UploadResult.failed(filename, HttpStatus.CONFLICT, e.getMessage());
+        } catch (IOException | RuntimeException e) {
+            log.warn("Could not store asset '{}'", filename, e);
+            return UploadResult.failed(filename, HttpStatus.INTERNAL_SERVER_ERROR, e.getMessage());
+        }
+    }
+
+    void checkSize(final String filename, final long size) {
+        if (size < 0) {
+            throw new LengthRequiredException(String.format("Size of asset '%s' is unknown", filename));
+        }
+        if (size > this.maximumSize) {
+            throw new AssetTooLargeException(String.format("Asset '%s' is larger than %d bytes", filename, this.maximumSize));
+        }
+    }
+
+    /**
+     * Streams the content into GridFS in a single pass. The hash is known
+     * only after the content has been written, so identical content occupies
+     * storage twice until the unique index rejects it and the duplicate is
+     * deleted. Staging each upload in a local file instead would cost a
+     * full extra copy of every upload to spare the rare duplicate.
+     *
+     * @param filename The unique name of the asset
+     * @param content The content, will not be closed
+     * @return The hex encoded SHA-256 of the content
+     * @throws IOException
+     */
+    String storeContent(final String filename, final InputStream content) throws IOException {
+        final InputStream bufferedContent = new BufferedInputStream(content, BUFFER_SIZE);
+        String contentType = null;
+        try {
+            contentType = MediaType.parse(tika.detect(bufferedContent, filename)).toString();
+        } catch (IOException e) {
+            log.warn("Could not detect content type", e);
+        }
+        final HashingInputStream hashingContent = new HashingInputStream(Hashing.sha256(), bufferedContent);
+        final GridFSFile file = this.gridFs.store(hashingContent, filename, contentType);
+        final String sha256 = hashingContent.hash().toString();
+        file.setMetaData(new BasicDBObject(METADATA_SHA256, sha256).append(METADATA_ALIASES, Collections.singletonList(filename)));
+        try {
+            file.save();
+        } catch (DuplicateKeyException e) {
+            // The unique indexes guarantee that each content and name is
+            // stored only once, even for concurrent uploads
+            discard(file);
+            // The name is checked first, an existing name with identical
+            // content is a conflict as well and must not become an alias
+            if (isNameTakenByOther(filename, file.getId()) || findBySha256(sha256) == null) {
+                throw new DataIntegrityViolationException(String.format("Asset with name '%s' already exists", filename), e);
+            }
+            this.mongoOperations.updateFirst(
+                    Query.query(Criteria.where(METADATA + "." + METADATA_SHA256).is(sha256)),
+                    new Update().addToSet(METADATA + "." + METADATA_ALIASES, filename),
+                    FILES_COLLECTION
+            );
+        }
+        return sha256;
+    }
+
+    /**
+     * Deletes content that has been stored but turned out to be a duplicate.
+     * A failing delete doesn't fail the upload, the orphaned file has no
+     * hash and is logged for manual removal.
+     *
+     * @param file The duplicate
+     */
+    private void discard(final GridFSFile file) {
+        try {
+            this.gridFs.delete(Query.query(Criteria.where("_id").is(file.getId())));
+        } catch (RuntimeException e) {
+            log.error("Could not delete duplicate content of asset '{}' with id {}", file.getFilename(), file.getId(), e);
+        }
+    }
+
+    /**
+     * @param name Filename or alias of an asset
+     * @param id The id of a file to ignore
+     * @return True if another file than the given one has the given name
+     */
+    private boolean isNameTakenByOther(final String name, final Object id) {
+        return this.gridFs.findOne(Query.query(new Criteria().andOperator(
+                Criteria.where("_id").ne(id),
+                new Criteria().orOperator(
+                        Criteria.where("filename").is(name),
+                        Criteria.where(METADATA + "." + METADATA_ALIASES).is(name)
+                )
+        ))) != null;
+    }
+
+    /**
+     * @param name Filename or alias of an asset
+     * @return The asset with the given name, null if there is none
+     */
+    GridFSDBFile findByName(final String name) {
+        return this.gridFs.findOne(Query.query(new Criteria().orOperator(
+                Criteria.where("filename").is(name),
+                Criteria.where(METADATA + "." + METADATA_ALIASES).is(name)
+        )));
+    }
+
+    /**
+     * @param names
+     * @return All of the given names that are already used as filename or
+     * alias
+     */
+    Set<String> findExistingNames(final Collection<String> names) {
+        final Query query = Query.query(new Criteria().orOperator(
+                Criteria.where("filename").in(names),
+                Criteria.where(METADATA + "." + METADATA_ALIASES).in(names)
+        ));
+        query.fields().include("filename").include(METADATA + "." + METADATA_ALIASES);
+        final Set<String> rv = new HashSet<>();
+        this.mongoOperations.find(query, DBObject.class, FILES_COLLECTION).forEach(file -> {
+            rv.add((String) file.get("filename"));
+            final DBObject metadata = (DBObject) file.get(METADATA);
+            final Object aliases = metadata == null ? null : metadata.get(METADATA_ALIASES);
+            if (aliases instanceof Collection) {
+                ((Collection<?>) aliases).forEach(alias -> rv.add(String.valueOf(alias)));
+            }
+        });
+        rv.retainAll(names);
+        return rv;
+    }
+
+    /**
+     * Lists assets without their content. Only the files documents are
+     * queried and only the fields needed for {@link AssetInfo} are loaded.
+     * Derivatives of images are not listed. Assets are ordered by upload date,
+     * newest first, unless the page requests another order.
+     *
+     * @param pageable
+     * @return A page of assets
+     */
+    Page<AssetInfo> findAll(final Pageable pageable) {
+        final Query query = Query.query(Criteria.where(METADATA + "." + AssetDerivativeService.METADATA_DERIVATIVE_OF).exists(false));
+        final long total = this.mongoOperations.count(query, FILES_COLLECTION);
+        query.with(pageable);
+        if (pageable.getSort() == null) {
+            query.with(new Sort(Direction.DESC, "uploadDate"));
+        }
+        for (String field : AssetInfo.FIELDS) {
+            query.fields().include(field);
+        }
+        final List<AssetInfo> content = this.mongoOperations.find(query, DBObject.class, FILES_COLLECTION).stream()
+                .map(AssetInfo::of)
+                .collect(toList());
+        return new PageImpl<>(content, pageable, total);
+    }
+
+    /**
+     * @param sha256 Hex encoded SHA-256 of the content of an asset
+     * @return The asset with the given content, null if there is none
+     */
+    GridFSDBFile findBySha256(final String sha256) {
+        return this.gridFs.findOne(Query.query(Criteria.where(METADATA + "." + METADATA_SHA256).is(sha256)));
+    }
+
+    /**
+     * Ensures that each content and each name is stored only once. Assets
+     * stored before contents have been hashed have neither a hash nor
+     * aliases, so both indexes are sparse.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void createIndexes() {
+        try {
+            final IndexOperations indexOperations = this.mongoOperations.indexOps(FILES_COLLECTION);
+            indexOperations.ensureIndex(new Index().on(METADATA + "." + METADATA_SHA256, Direction.ASC).unique().sparse());
+            indexOperations.ensureIndex(new Index().on(METADATA + "." + METADATA_ALIASES, Direction.ASC).unique().sparse());
+        } catch (RuntimeException e) {
+            log.warn("Could not create indexes for assets: {}", e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        this.uploadWorkers.shutdownNow();
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright 2018 EuregJUG.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.euregjug.site.assets;
+
+import com.mongodb.gridfs.GridFSDBFile;
+import java.io.InputStream;
+import java.util.Date;
+import java.util.Optional;
+import org.springframework.core.io.AbstractResource;
+
+/**
+ * A resource backed by a file stored in GridFS. Unlike an input stream
+ * resource it can be read more than once, which is needed for serving
+ * multiple ranges of a file. Each stream reads the file chunk by chunk and
+ * skips over whole chunks without loading them, so that seeking into large
+ * files is cheap.
+ */
+final class GridFsAssetResource extends AbstractResource implements AssetResource {
+
+    private final GridFSDBFile file;
+
+    GridFsAssetResource(final GridFSDBFile file) {
+        this.file = file;
+    }
+
+    @Override
+    public InputStream getInputStream() {
+        return this.file.getInputStream();
+    }
+
+    @Override
+    public long contentLength() {
+        return this.file.getLength();
+    }
+
+    @Override
+    public long lastModified() {
+        return Optional.ofNullable(this.file.getUploadDate()).map(Date::getTime).orElse(-1L);
+    }
+
+    @Override
+    public String getFilename() {
+        return this.file.getFilename();
+    }
+
+    @Override
+    public String getDescription() {
+        return String.format("GridFS file [%s]", this.file.getFilename());
+    }
+
+    /**
+     * @return A strong entity tag computed from the MD5 checksum GridFS stores
+     * alongside the file, null if there's no checksum
+     */
+    @Override
+    public String getEtag() {
+        return this.file.getMD5() == null ? null : '"' + this.file.getMD5() + '"';
+    }
+
+    @Override
+    public String getContentType() {
+        return this.file.getContentType();
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright 2018 EuregJUG.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.euregjug.site.config;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+
+/**
+ * Configures the caches. Each cache is created from its own Guava cache
+ * specification, all other caches (for example the one used by wro4j) use the
+ * default specification. In the cloud profile, selected caches are backed by
+ * a shared Redis tier.
+ */
+@Configuration
+@ConfigurationProperties("euregjug.caches")
+public class CacheConfig {
+
+    /**
+     * Specification for caches that are not configured explicitly.
+     */
+    private String defaultSpec = "maximumSize=1000,recordStats";
+
+    /**
+     * Specifications per cache name. A {@code maximumWeight} is interpreted
+     * as the estimated size of all entries in bytes.
+     */
+    private Map<String, String> specs = new HashMap<>();
+
+    /**
+     * Names of the caches that are shared between instances through Redis in
+     * the cloud profile.
+     */
+    private List<String> shared = new ArrayList<>();
+
+    /**
+     * Expiration of shared entries in seconds.
+     */
+    private long sharedExpiration = 604_800;
+
+    public String getDefaultSpec() {
+        return defaultSpec;
+    }
+
+    public void setDefaultSpec(final String defaultSpec) {
+        this.defaultSpec = defaultSpec;
+    }
+
+    public Map<String, String> getSpecs() {
+        return specs;
+    }
+
+    public void setSpecs(final Map<String, String> specs) {
+        this.specs = specs;
+    }
+
+    public List<String> getShared() {
+        return shared;
+    }
+
+    public void setShared(final List<String> shared) {
+        this.shared = shared;
+    }
+
+    public long getSharedExpiration() {
+        return sharedExpiration;
+    }
+
+    public void setSharedExpiration(final long sharedExpiration) {
+        this.sharedExpiration = sharedExpiration;
+    }
+
+    @Bean
+    public SpecBasedGuavaCacheManager cacheManager(final ObjectProvider<RedisCacheTier> redisCacheTier) {
+        final SpecBasedGuavaCacheManager rv = new SpecBasedGuavaCacheManager(this.defaultSpec, this.specs);
+        final RedisCacheTier tier = redisCacheTier.getIfAvailable();
+        if (tier != null) {
+            rv.setCacheDecorator(tier::decorate);
+        }
+        return rv;
+    }
+
+    @Bean
+    public PublicMetrics cacheStatisticsMetrics(final SpecBasedGuavaCacheManager cacheManager) {
+        return cacheManager::metrics;
+    }
+
+    @Configuration
+    @Profile("cloud")
+    static class RedisCacheTierConfig {
+
+        @Bean
+        public RedisCacheTier redisCacheTier(final RedisConnectionFactory redisConnectionFactory, final CacheConfig cacheConfig) {
+            return new RedisCacheTier(redisConnectionFactory, cacheConfig.getShared(), cacheConfig.getSharedExpiration());
+        }
+
+        @Bean
+        public RedisMessageListenerContainer cacheInvalidationListenerContainer(final RedisConnectionFactory redisConnectionFactory, final RedisCacheTier redisCacheTier) {
+            final RedisMessageListenerContainer rv = new RedisMessageListenerContainer();
+            rv.setConnectionFactory(redisConnectionFactory);
+            rv.addMessageListener(redisCacheTier, new ChannelTopic(RedisCacheTier.CHANNEL));
+            return rv;
+        }
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright 2018 EuregJUG.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.euregjug.site.config;
+
+import com.google.common.cache.Weigher;
+import eu.euregjug.site.support.Weighable;
+import java.util.Collection;
+
+/**
+ * Estimates the memory footprint of cache entries in bytes. The estimate
+ * doesn't have to be exact, it must only grow with the size of the content so
+ * that a bound in bytes is meaningful. Values other than strings, byte arrays
+ * and simple values are only estimated if they are {@link Weighable}.
+ */
+final class CacheEntryWeigher implements Weigher<Object, Object> {
+
+    /**
+     * Weight of values whose size cannot be estimated.
+     */
+    static final int DEFAULT_WEIGHT = 1024;
+
+    private static final int ENTRY_OVERHEAD = 32;
+
+    private static final int OBJECT_OVERHEAD = 16;
+
+    private static final int STRING_OVERHEAD = 40;
+
+    @Override
+    public int weigh(final Object key, final Object value) {
+        return (int) Math.min(Integer.MAX_VALUE, ENTRY_OVERHEAD + estimate(key) + estimate(value));
+    }
+
+    static long estimate(final Object object) {
+        long rv;
+        if (object == null) {
+            rv = 0;
+        } else if (object instanceof CharSequence) {
+            rv = STRING_OVERHEAD + 2L * ((CharSequence) object).length();
+        } else if (object instanceof byte[]) {
+            rv = OBJECT_OVERHEAD + ((byte[]) object).length;
+        } else if (object instanceof Number || object instanceof Boolean || object instanceof Enum) {
+            rv = OBJECT_OVERHEAD;
+        } else if (object instanceof Collection) {
+            rv = OBJECT_OVERHEAD + ((Collection<?>) object).stream().mapToLong(CacheEntryWeigher::estimate).sum();
+        } else if (object instanceof Weighable) {
+            rv = OBJECT_OVERHEAD + estimate(((Weighable) object).weighedParts());
+        } else {
+            rv = DEFAULT_WEIGHT;
+        }
+        return rv;
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright 2018 EuregJUG.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.euregjug.site.config;
+
+import eu.euregjug.site.posts.Post;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+import org.springframework.data.redis.serializer.JdkSerializationRedisSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+
+/**
+ * Serializes rendered posts into a compact, deflated binary format. All
+ * other values are serialized with Java serialization. The first byte of
+ * each value identifies the format.
+ */
+final class CompactRedisSerializer implements RedisSerializer<Object> {
+
+    private static final byte TYPE_SERIALIZED = 0;
+
+    private static final byte TYPE_POST = 1;
+
+    private final JdkSerializationRedisSerializer fallback = new JdkSerializationRedisSerializer();
+
+    @Override
+    public byte[] serialize(final Object value) {
+        if (value == null) {
+            return new byte[0];
+        }
+
+        final ByteArrayOutputStream rv = new ByteArrayOutputStream();
+        if (value instanceof Post) {
+            rv.write(TYPE_POST);
+            final Post post = (Post) value;
+            try (DataOutputStream out = new DataOutputStream(new DeflaterOutputStream(rv))) {
+                out.writeLong(post.getPublishedOn().toEpochDay());
+                writeString(out, post.getSlug());
+                writeString(out, post.getTitle());
+                writeString(out, post.getContent());
+            } catch (IOException e) {
+                throw new SerializationException("Could not serialize post", e);
+            }
+        } else {
+            rv.write(TYPE_SERIALIZED);
+            final byte[] serialized = this.fallback.serialize(value);
+            rv.write(serialized, 0, serialized.length);
+        }
+        return rv.toByteArray();
+    }
+
+    @Override
+    public Object deserialize(final byte[] bytes) {
+        if (bytes == null || bytes.length == 0) {
+            return null;
+        }
+
+        Object rv;
+        if (bytes[0] == TYPE_POST) {
+            try (DataInputStream in = new DataInputStream(new InflaterInputStream(new ByteArrayInputStream(bytes, 1, bytes.length - 1)))) {
+                final LocalDate publishedOn = LocalDate.ofEpochDay(in.readLong());
+                rv = new Post(java.sql.Date.valueOf(publishedOn), readString(in), readString(in), readString(in));
+            } catch (IOException e) {
+                throw new SerializationException("Could not deserialize post", e);
+            }
+        } else if (bytes[0] == TYPE_SERIALIZED) {
+            rv = this.fallback.deserialize(Arrays.copyOfRange(bytes, 1, bytes.length));
+        } else {
+            throw new SerializationException(String.format("Unknown format %d", bytes[0]));
+        }
+        return rv;
+    }
+
+    static void writeString(final DataOutputStream out, final String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+        } else {
+            final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    static String readString(final DataInputStream in) throws IOException {
+        final int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        final byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
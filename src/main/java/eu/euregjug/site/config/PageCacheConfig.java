@@ -0,0 +1,115 @@
+/*
+ * Copyright 2018 EuregJUG.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.euregjug.site.config;
+
+import eu.euregjug.site.links.LinkRepository;
+import eu.euregjug.site.posts.PostRepository;
+import eu.euregjug.site.web.PageCache;
+import eu.euregjug.site.web.PageCacheFilter;
+import java.util.ArrayList;
+import java.util.List;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.cache.CacheManager;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.LocaleResolver;
+
+/**
+ * Configures the cache for complete pages. The size and expiry of the cache
+ * are configured through {@code euregjug.caches.specs.pages}.
+ */
+@Configuration
+@ConfigurationProperties("euregjug.page-cache")
+@ConditionalOnProperty(name = "euregjug.page-cache.enabled", havingValue = "true", matchIfMissing = true)
+public class PageCacheConfig {
+
+    /**
+     * Flag, if pages are cached.
+     */
+    private boolean enabled = true;
+
+    /**
+     * Paths of pages that don't depend on any data and are therefore cached
+     * until they expire.
+     */
+    private List<String> staticPages = new ArrayList<>();
+
+    /**
+     * Path prefixes of responses that are never cached, for example because
+     * they are streamed.
+     */
+    private List<String> excludedPaths = new ArrayList<>();
+
+    /**
+     * Query parameters that are read by cached pages and are therefore part
+     * of the key. All other parameters are ignored.
+     */
+    private List<String> keyParameters = new ArrayList<>();
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(final boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public List<String> getStaticPages() {
+        return staticPages;
+    }
+
+    public void setStaticPages(final List<String> staticPages) {
+        this.staticPages = staticPages;
+    }
+
+    public List<String> getExcludedPaths() {
+        return excludedPaths;
+    }
+
+    public void setExcludedPaths(final List<String> excludedPaths) {
+        this.excludedPaths = excludedPaths;
+    }
+
+    public List<String> getKeyParameters() {
+        return keyParameters;
+    }
+
+    public void setKeyParameters(final List<String> keyParameters) {
+        this.keyParameters = keyParameters;
+    }
+
+    @Bean
+    public PageCache pageCache(final CacheManager cacheManager, final PostRepository postRepository, final LinkRepository linkRepository) {
+        return new PageCache(cacheManager.getCache(PageCache.CACHE_NAME), postRepository, linkRepository);
+    }
+
+    /**
+     * The page cache runs after Spring Security, so that cached pages get the
+     * same security headers as freshly rendered pages.
+     *
+     * @param pageCache
+     * @param localeResolver
+     * @return
+     */
+    @Bean
+    public FilterRegistrationBean pageCacheFilter(final PageCache pageCache, final LocaleResolver localeResolver) {
+        final FilterRegistrationBean rv = new FilterRegistrationBean(new PageCacheFilter(pageCache, localeResolver, this.staticPages, this.excludedPaths, this.keyParameters));
+        rv.setOrder(0);
+        return rv;
+    }
+}
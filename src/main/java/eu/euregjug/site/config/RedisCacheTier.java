@@ -0,0 +1,132 @@
+/*
+ * Copyright 2018 EuregJUG.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.euregjug.site.config;
+
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.cache.Cache;
+import org.springframework.data.redis.cache.RedisCache;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.serializer.GenericToStringSerializer;
+
+/**
+ * Puts a shared Redis tier behind selected local caches and keeps the near
+ * caches of all instances consistent: Every change is published on
+ * {@link #CHANNEL}, all other instances evict the changed entry locally.
+ */
+@Slf4j
+public final class RedisCacheTier implements MessageListener {
+
+    /**
+     * Channel on which invalidations are published.
+     */
+    public static final String CHANNEL = "euregjug:caches:invalidations";
+
+    /**
+     * A changed cache entry.
+     */
+    @Getter
+    @RequiredArgsConstructor
+    static final class Invalidation implements Serializable {
+
+        private static final long serialVersionUID = -2406372637380618521L;
+
+        private final String nodeId;
+
+        private final String cacheName;
+
+        private final Object key;
+    }
+
+    private final String nodeId = UUID.randomUUID().toString();
+
+    private final RedisTemplate<Object, Object> redisTemplate;
+
+    private final Set<String> sharedCacheNames;
+
+    private final long expiration;
+
+    private final Map<String, TwoLevelCache> caches = new ConcurrentHashMap<>();
+
+    /**
+     * Creates a new Redis tier.
+     *
+     * @param redisConnectionFactory
+     * @param sharedCacheNames Names of the caches that are shared, all other
+     * caches stay local
+     * @param expiration Expiration of shared entries in seconds
+     */
+    public RedisCacheTier(final RedisConnectionFactory redisConnectionFactory, final Collection<String> sharedCacheNames, final long expiration) {
+        this.redisTemplate = new RedisTemplate<>();
+        this.redisTemplate.setConnectionFactory(redisConnectionFactory);
+        this.redisTemplate.setKeySerializer(new GenericToStringSerializer<>(Object.class));
+        this.redisTemplate.setValueSerializer(new CompactRedisSerializer());
+        this.redisTemplate.afterPropertiesSet();
+        this.sharedCacheNames = new HashSet<>(sharedCacheNames);
+        this.expiration = expiration;
+    }
+
+    /**
+     * @param local
+     * @return A two level cache if the given cache is shared, the local cache
+     * otherwise
+     */
+    public Cache decorate(final Cache local) {
+        if (!this.sharedCacheNames.contains(local.getName())) {
+            return local;
+        }
+        final String name = local.getName();
+        final RedisCache remote = new RedisCache(name, (name + ":").getBytes(StandardCharsets.UTF_8), this.redisTemplate, this.expiration, true);
+        final TwoLevelCache rv = new TwoLevelCache(local, remote, this::publish);
+        this.caches.put(name, rv);
+        log.debug("Sharing cache {} via Redis", name);
+        return rv;
+    }
+
+    void publish(final String cacheName, final Object key) {
+        this.redisTemplate.convertAndSend(CHANNEL, new Invalidation(this.nodeId, cacheName, key));
+    }
+
+    @Override
+    public void onMessage(final Message message, final byte[] pattern) {
+        final Object body = this.redisTemplate.getValueSerializer().deserialize(message.getBody());
+        if (!(body instanceof Invalidation)) {
+            return;
+        }
+        final Invalidation invalidation = (Invalidation) body;
+        final TwoLevelCache cache = this.caches.get(invalidation.getCacheName());
+        if (cache == null || this.nodeId.equals(invalidation.getNodeId())) {
+            return;
+        }
+        if (invalidation.getKey() == null) {
+            cache.clearLocal();
+        } else {
+            cache.evictLocal(invalidation.getKey());
+        }
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright 2018 EuregJUG.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.euregjug.site.config;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.UnaryOperator;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.cache.Cache;
+import org.springframework.cache.guava.GuavaCache;
+import org.springframework.cache.guava.GuavaCacheManager;
+
+/**
+ * A {@link GuavaCacheManager} that creates each cache from its own
+ * specification. Caches bounded by {@code maximumWeight} are weighed by the
+ * estimated size of their entries in bytes. Caches can be decorated, for
+ * example with a shared tier.
+ */
+public final class SpecBasedGuavaCacheManager extends GuavaCacheManager {
+
+    private final String defaultSpec;
+
+    private final Map<String, String> specs;
+
+    private UnaryOperator<Cache> cacheDecorator = UnaryOperator.identity();
+
+    public SpecBasedGuavaCacheManager(final String defaultSpec, final Map<String, String> specs) {
+        this.defaultSpec = defaultSpec;
+        this.specs = new HashMap<>(specs);
+    }
+
+    public void setCacheDecorator(final UnaryOperator<Cache> cacheDecorator) {
+        this.cacheDecorator = cacheDecorator;
+    }
+
+    @Override
+    protected Cache createGuavaCache(final String name) {
+        return this.cacheDecorator.apply(super.createGuavaCache(name));
+    }
+
+    @Override
+    protected com.google.common.cache.Cache<Object, Object> createNativeGuavaCache(final String name) {
+        return newCacheBuilder(this.specs.getOrDefault(name, this.defaultSpec)).build();
+    }
+
+    static CacheBuilder<Object, Object> newCacheBuilder(final String spec) {
+        final CacheBuilder<Object, Object> rv = CacheBuilder.from(spec);
+        return spec.contains("maximumWeight") ? rv.weigher(new CacheEntryWeigher()) : rv;
+    }
+
+    /**
+     * @return Hits, misses and evictions of all Guava caches created so far,
+     * decorated caches are unwrapped
+     */
+    public Collection<Metric<?>> metrics() {
+        final List<Metric<?>> rv = new ArrayList<>();
+        for (String name : getCacheNames()) {
+            Cache cache = getCache(name);
+            if (cache instanceof TwoLevelCache) {
+                cache = ((TwoLevelCache) cache).getLocal();
+            }
+            if (!(cache instanceof GuavaCache)) {
+                continue;
+            }
+            final CacheStats stats = ((GuavaCache) cache).getNativeCache().stats();
+            final String prefix = "cache." + name + ".";
+            rv.add(new Metric<>(prefix + "hits", stats.hitCount()));
+            rv.add(new Metric<>(prefix + "misses", stats.missCount()));
+            rv.add(new Metric<>(prefix + "evictions", stats.evictionCount()));
+        }
+        return rv;
+    }
+}
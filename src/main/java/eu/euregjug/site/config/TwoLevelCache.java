@@ -0,0 +1,198 @@
+/*
+ * Copyright 2018 EuregJUG.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.euregjug.site.config;
+
+import java.util.concurrent.Callable;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.cache.Cache;
+
+/**
+ * A cache consisting of an in-process near cache and a remote cache shared
+ * between instances. Reads are served from the near cache and fall back to
+ * the remote cache. Writes go to both tiers with a single write to the remote
+ * cache. Writes, evictions and clears are announced to the other instances
+ * after the remote cache has been changed, so that they evict the entry from
+ * their near caches and read the new value. Filling an entry that is missing
+ * from the remote cache after loading it is not announced, as no other
+ * instance can have a different value for it that is younger than the
+ * expiration of the remote cache. The remote cache is optional in the sense
+ * that failures are logged and the near cache keeps working.
+ */
+@Slf4j
+public final class TwoLevelCache implements Cache {
+
+    /**
+     * Announces changed entries to other instances.
+     */
+    @FunctionalInterface
+    public interface InvalidationPublisher {
+
+        /**
+         * @param cacheName
+         * @param key The changed key or null if the whole cache has been
+         * cleared
+         */
+        void publish(String cacheName, Object key);
+    }
+
+    private final Cache local;
+
+    private final Cache remote;
+
+    private final InvalidationPublisher invalidationPublisher;
+
+    public TwoLevelCache(final Cache local, final Cache remote, final InvalidationPublisher invalidationPublisher) {
+        this.local = local;
+        this.remote = remote;
+        this.invalidationPublisher = invalidationPublisher;
+    }
+
+    @Override
+    public String getName() {
+        return this.local.getName();
+    }
+
+    @Override
+    public Object getNativeCache() {
+        return this.local.getNativeCache();
+    }
+
+    public Cache getLocal() {
+        return this.local;
+    }
+
+    @Override
+    public ValueWrapper get(final Object key) {
+        ValueWrapper rv = this.local.get(key);
+        if (rv == null) {
+            rv = getRemote(key);
+            if (rv != null) {
+                this.local.put(key, rv.get());
+            }
+        }
+        return rv;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(final Object key, final Class<T> type) {
+        final ValueWrapper valueWrapper = get(key);
+        final Object rv = valueWrapper == null ? null : valueWrapper.get();
+        if (rv != null && type != null && !type.isInstance(rv)) {
+            throw new IllegalStateException(String.format("Cached value is not of required type [%s]: %s", type.getName(), rv));
+        }
+        return (T) rv;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(final Object key, final Callable<T> valueLoader) {
+        return this.local.get(key, () -> {
+            final ValueWrapper remoteValue = getRemote(key);
+            if (remoteValue != null) {
+                return (T) remoteValue.get();
+            }
+            final T rv = valueLoader.call();
+            putRemote(key, rv);
+            return rv;
+        });
+    }
+
+    @Override
+    public void put(final Object key, final Object value) {
+        this.local.put(key, value);
+        putRemote(key, value);
+        publish(key);
+    }
+
+    @Override
+    public ValueWrapper putIfAbsent(final Object key, final Object value) {
+        ValueWrapper rv;
+        try {
+            rv = this.remote.putIfAbsent(key, value);
+        } catch (RuntimeException e) {
+            log.warn("Could not write to remote cache {}: {}", getName(), e.getMessage());
+            return this.local.putIfAbsent(key, value);
+        }
+        this.local.put(key, rv == null ? value : rv.get());
+        return rv;
+    }
+
+    @Override
+    public void evict(final Object key) {
+        this.local.evict(key);
+        try {
+            this.remote.evict(key);
+        } catch (RuntimeException e) {
+            log.warn("Could not evict from remote cache {}: {}", getName(), e.getMessage());
+        }
+        publish(key);
+    }
+
+    @Override
+    public void clear() {
+        this.local.clear();
+        try {
+            this.remote.clear();
+        } catch (RuntimeException e) {
+            log.warn("Could not clear remote cache {}: {}", getName(), e.getMessage());
+        }
+        publish(null);
+    }
+
+    /**
+     * Evicts the given key from the near cache only. Called when another
+     * instance changed the entry.
+     *
+     * @param key
+     */
+    public void evictLocal(final Object key) {
+        this.local.evict(key);
+    }
+
+    /**
+     * Clears the near cache only. Called when another instance cleared the
+     * cache.
+     */
+    public void clearLocal() {
+        this.local.clear();
+    }
+
+    ValueWrapper getRemote(final Object key) {
+        try {
+            return this.remote.get(key);
+        } catch (RuntimeException e) {
+            log.warn("Could not read from remote cache {}: {}", getName(), e.getMessage());
+            return null;
+        }
+    }
+
+    void putRemote(final Object key, final Object value) {
+        try {
+            this.remote.put(key, value);
+        } catch (RuntimeException e) {
+            log.warn("Could not write to remote cache {}: {}", getName(), e.getMessage());
+        }
+    }
+
+    void publish(final Object key) {
+        try {
+            this.invalidationPublisher.publish(getName(), key);
+        } catch (RuntimeException e) {
+            log.warn("Could not publish invalidation for cache {}: {}", getName(), e.getMessage());
+        }
+    }
+}
@@ -23,6 +23,7 @@ import java.util.List;
 import java.util.Optional;
 import javax.validation.Valid;
 import lombok.RequiredArgsConstructor;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.http.HttpStatus;
@@ -54,12 +55,16 @@ class EventApiController {
 
     private final RegistrationRepository registrationRepository;
 
+    private final ApplicationEventPublisher applicationEventPublisher;
+
     @RequestMapping(method = POST)
     @PreAuthorize("isAuthenticated()")
     @ResponseStatus(CREATED)
     public EventEntity create(@Valid @RequestBody final EventEntity newEvent) {
         newEvent.setStatus(Optional.ofNullable(newEvent.getStatus()).orElse(Status.open));
-        return this.eventRepository.save(newEvent);
+        final EventEntity rv = this.eventRepository.save(newEvent);
+        this.applicationEventPublisher.publishEvent(new EventChangedEvent(rv.getId()));
+        return rv;
     }
 
     /**
@@ -77,6 +82,7 @@ class EventApiController {
                 .orElseThrow(ResourceNotFoundException::new);
         this.registrationRepository.deleteByEvent(event);
         this.eventRepository.delete(event);
+        this.applicationEventPublisher.publishEvent(new EventChangedEvent(id));
     }
 
     /**
@@ -99,6 +105,7 @@ class EventApiController {
             throw new ResourceNotFoundException();
         }
         eventEntity.setPost(postEntity);
+        this.applicationEventPublisher.publishEvent(new EventChangedEvent(id));
         return eventEntity;
     }
 
@@ -127,6 +134,7 @@ class EventApiController {
         if (updatedEvent.getStatus() != null) {
             eventEntity.setStatus(updatedEvent.getStatus());
         }
+        this.applicationEventPublisher.publishEvent(new EventChangedEvent(id));
         return eventEntity;
     }
 }
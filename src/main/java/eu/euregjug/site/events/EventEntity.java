@@ -170,6 +170,15 @@ public class EventEntity implements Serializable {
     @Getter
     private Calendar createdAt;
 
+    /**
+     * Last update to this event.
+     */
+    @Column(name = "updated_at", nullable = false)
+    @Temporal(TemporalType.TIMESTAMP)
+    @JsonIgnore
+    @Getter
+    private Calendar updatedAt;
+
     /**
      * Status of this event.
      */
@@ -208,6 +217,7 @@ public class EventEntity implements Serializable {
         if (this.createdAt == null) {
             this.createdAt = Calendar.getInstance();
         }
+        this.updatedAt = Calendar.getInstance();
     }
 
     /**
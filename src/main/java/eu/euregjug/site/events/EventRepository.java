@@ -15,12 +15,18 @@
  */
 package eu.euregjug.site.events;
 
+import eu.euregjug.site.support.ModificationStamp;
+import java.util.Calendar;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
+import javax.persistence.QueryHint;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.Repository;
+import org.springframework.data.repository.query.Param;
 import org.springframework.transaction.annotation.Transactional;
 
 /**
@@ -49,6 +55,30 @@ public interface EventRepository extends Repository<EventEntity, Integer> {
     @Transactional(readOnly = true)
     List<EventEntity> findUpcomingEvents();
 
+    /**
+     * Streams id, date, creation date, duration, name, speaker, description
+     * and location of all events held in the given range, oldest first. Only
+     * the columns needed for a calendar are selected and no entities are
+     * attached to the persistence context, so that arbitrary long ranges can
+     * be read. The range is served by the index of the unique constraint on
+     * {@code (held_on, name)}. The stream must be consumed inside a
+     * transaction and should be closed afterwards.
+     *
+     * @param from Inclusive lower bound
+     * @param to Exclusive upper bound
+     * @return
+     */
+    @Query(value
+            = " Select e.id, e.heldOn, e.createdAt, e.duration, e.name, e.speaker, e.description, e.location"
+            + "   from EventEntity e"
+            + "  where e.heldOn >= :from"
+            + "    and e.heldOn < :to"
+            + "  order by e.heldOn asc "
+    )
+    @Transactional(readOnly = true)
+    @QueryHints(@QueryHint(name = "org.hibernate.fetchSize", value = "25"))
+    Stream<Object[]> streamCalendarEntriesHeldBetween(@Param("from") Calendar from, @Param("to") Calendar to);
+
     /**
      * @param id
      * @return Event with the given Id or an empty optional
@@ -77,4 +107,11 @@ public interface EventRepository extends Repository<EventEntity, Integer> {
      */
     @Query("Select e from EventEntity e where e.heldOn < current_timestamp() and e.numberOfRegistrations is null")
     List<EventEntity> findAllExpiredWithoutStatistics();
+
+    /**
+     * @return Last modification and number of all events
+     */
+    @Transactional(readOnly = true)
+    @Query("Select new eu.euregjug.site.support.ModificationStamp(max(e.updatedAt), count(e)) from EventEntity e")
+    ModificationStamp getModificationStamp();
 }
@@ -18,6 +18,7 @@ package eu.euregjug.site.links;
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import java.io.Serializable;
+import java.util.Calendar;
 import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.EnumType;
@@ -25,7 +26,11 @@ import javax.persistence.Enumerated;
 import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
+import javax.persistence.PrePersist;
+import javax.persistence.PreUpdate;
 import javax.persistence.Table;
+import javax.persistence.Temporal;
+import javax.persistence.TemporalType;
 import javax.validation.constraints.NotNull;
 import javax.validation.constraints.Size;
 import lombok.AccessLevel;
@@ -108,8 +113,23 @@ public class LinkEntity implements Serializable {
     @Getter @Setter
     private String localImageResource;
 
+    /**
+     * Last update to this link.
+     */
+    @Column(name = "updated_at", nullable = false)
+    @Temporal(TemporalType.TIMESTAMP)
+    @JsonIgnore
+    @Getter
+    private Calendar updatedAt;
+
     public LinkEntity(final String target, final String title) {
         this.target = target;
         this.title = title;
     }
+
+    @PrePersist
+    @PreUpdate
+    void updateUpdatedAt() {
+        this.updatedAt = Calendar.getInstance();
+    }
 }
@@ -15,8 +15,11 @@
  */
 package eu.euregjug.site.links;
 
+import eu.euregjug.site.support.ModificationStamp;
 import java.util.List;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 /**
  * @author Michael J. Simons, 2015-12-27
@@ -24,4 +27,11 @@ import org.springframework.data.repository.Repository;
 public interface LinkRepository extends Repository<LinkEntity, Integer> {
 
     List<LinkEntity> findAllByOrderByTypeAscSortColAscTitleAsc();
+
+    /**
+     * @return Last modification and number of all links
+     */
+    @Transactional(readOnly = true)
+    @Query("Select new eu.euregjug.site.support.ModificationStamp(max(l.updatedAt), count(l)) from LinkEntity l")
+    ModificationStamp getModificationStamp();
 }
@@ -0,0 +1,52 @@
+/*
+ * Copyright 2018 EuregJUG.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.euregjug.site.posts;
+
+import java.time.LocalDate;
+import java.util.Calendar;
+import java.util.Comparator;
+import java.util.Date;
+import lombok.Getter;
+
+/**
+ * A published post in the archive together with its sort keys. Selected as
+ * projection by {@link PostRepository#findAllArchiveEntriesByStatus(PostEntity.Status)}.
+ */
+@Getter
+public final class ArchivedPost {
+
+    static final Comparator<ArchivedPost> NEWEST_FIRST = Comparator
+            .comparing((ArchivedPost archivedPost) -> archivedPost.post.getPublishedOn())
+            .thenComparingLong(ArchivedPost::getCreatedAt)
+            .thenComparingInt(ArchivedPost::getId)
+            .reversed();
+
+    private final int id;
+
+    private final long createdAt;
+
+    private final Post post;
+
+    public ArchivedPost(final Integer id, final Date publishedOn, final Calendar createdAt, final String slug, final String title) {
+        this.id = id;
+        this.createdAt = createdAt.getTimeInMillis();
+        this.post = new Post(publishedOn, slug, title);
+    }
+
+    LocalDate getMonth() {
+        return this.post.getPublishedOn().withDayOfMonth(1);
+    }
+}
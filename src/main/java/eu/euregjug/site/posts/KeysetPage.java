@@ -0,0 +1,75 @@
+/*
+ * Copyright 2018 EuregJUG.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.euregjug.site.posts;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.Function;
+import lombok.Getter;
+
+import static java.util.stream.Collectors.toList;
+
+/**
+ * A page of posts selected by keyset pagination. A keyset page doesn't know
+ * its number or the total number of pages, but only the cursors of the
+ * adjacent pages.
+ *
+ * @param <T> Type of the content
+ */
+@Getter
+public final class KeysetPage<T> implements Iterable<T> {
+
+    private final List<T> content;
+
+    /**
+     * Cursor for selecting the newer entries or null if this is the first
+     * page.
+     */
+    private final PostCursor previous;
+
+    /**
+     * Cursor for selecting the older entries or null if this is the last
+     * page.
+     */
+    private final PostCursor next;
+
+    public KeysetPage(final List<T> content, final PostCursor previous, final PostCursor next) {
+        this.content = content;
+        this.previous = previous;
+        this.next = next;
+    }
+
+    public boolean hasContent() {
+        return !this.content.isEmpty();
+    }
+
+    public boolean hasPrevious() {
+        return this.previous != null;
+    }
+
+    public boolean hasNext() {
+        return this.next != null;
+    }
+
+    @Override
+    public Iterator<T> iterator() {
+        return this.content.iterator();
+    }
+
+    public <R> KeysetPage<R> map(final Function<? super T, ? extends R> mapper) {
+        return new KeysetPage<>(this.content.stream().map(mapper).collect(toList()), this.previous, this.next);
+    }
+}
@@ -15,9 +15,12 @@
  */
 package eu.euregjug.site.posts;
 
+import eu.euregjug.site.support.Weighable;
 import java.io.Serializable;
 import java.time.LocalDate;
 import java.time.ZoneId;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Date;
 import lombok.Getter;
 
@@ -25,7 +28,7 @@ import lombok.Getter;
  * @author Michael J. Simons, 2015-12-28
  */
 @Getter
-public final class Post implements Serializable {
+public final class Post implements Serializable, Weighable {
 
     private static final long serialVersionUID = 5598037121835514804L;
 
@@ -44,12 +47,28 @@ public final class Post implements Serializable {
         this.content = content;
     }
 
+    /**
+     * Creates a post without content, used in projections of lists of posts.
+     *
+     * @param publishedOn
+     * @param slug
+     * @param title
+     */
+    public Post(final Date publishedOn, final String slug, final String title) {
+        this(publishedOn, slug, title, null);
+    }
+
     /**
      * Maps an entity to a post without rendering the content.
      *
      * @param postEntity
      */
     public Post(final PostEntity postEntity) {
-        this(postEntity.getPublishedOn(), postEntity.getSlug(), postEntity.getTitle(), null);
+        this(postEntity.getPublishedOn(), postEntity.getSlug(), postEntity.getTitle());
+    }
+
+    @Override
+    public Collection<?> weighedParts() {
+        return Arrays.asList(this.slug, this.title, this.content);
     }
 }
@@ -22,7 +22,7 @@ import java.util.Locale;
 import java.util.Optional;
 import javax.validation.Valid;
 import lombok.RequiredArgsConstructor;
-import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.http.HttpStatus;
@@ -52,13 +52,17 @@ class PostApiController {
 
     private final PostIndexService postIndexService;
 
+    private final ApplicationEventPublisher applicationEventPublisher;
+
     @RequestMapping(method = POST)
     @PreAuthorize("isAuthenticated()")
     @ResponseStatus(CREATED)
     public PostEntity create(@Valid @RequestBody final PostEntity newPost) {
         newPost.setLocale(Optional.ofNullable(newPost.getLocale()).orElseGet(() -> new Locale("en", "US")));
         newPost.setStatus(Optional.ofNullable(newPost.getStatus()).orElse(Status.draft));
-        return this.postRepository.save(newPost);
+        final PostEntity rv = this.postRepository.save(newPost);
+        this.applicationEventPublisher.publishEvent(new PostChangedEvent(rv));
+        return rv;
     }
 
     @RequestMapping(method = GET)
@@ -74,7 +78,6 @@ class PostApiController {
     @RequestMapping(path = "/{id:\\d+}", method = PUT)
     @PreAuthorize("isAuthenticated()")
     @Transactional
-    @CacheEvict(cacheNames = "renderedPosts", key = "#id")
     public PostEntity update(@PathVariable final Integer id, @Valid @RequestBody final PostEntity updatedPost) {
         final PostEntity postEntity =  this.postRepository.findOne(id).orElseThrow(ResourceNotFoundException::new);
         postEntity.setContent(updatedPost.getContent());
@@ -86,6 +89,7 @@ class PostApiController {
         if (updatedPost.getStatus() != null) {
             postEntity.setStatus(updatedPost.getStatus());
         }
+        this.applicationEventPublisher.publishEvent(new PostChangedEvent(postEntity));
         return postEntity;
     }
 
@@ -0,0 +1,189 @@
+/*
+ * Copyright 2018 EuregJUG.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.euregjug.site.posts;
+
+import eu.euregjug.site.posts.PostEntity.Status;
+import java.time.LocalDate;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import static java.util.Comparator.reverseOrder;
+import static java.util.stream.Collectors.toList;
+
+/**
+ * An in-memory index of all published posts grouped by month, newest first.
+ * The index is built on first access and then kept up to date through
+ * {@link PostChangedEvent}s. Those are only published on the instance where
+ * the change happened, so the index is built again after it expired. Readers
+ * always get an immutable snapshot and only touch the database when the index
+ * is built.
+ */
+@Service
+@Slf4j
+public class PostArchiveService {
+
+    /**
+     * An immutable view of the archive.
+     */
+    static final class Snapshot {
+
+        private final SortedMap<LocalDate, List<Post>> months;
+
+        private final SortedMap<LocalDate, Integer> counts;
+
+        private final long builtAt;
+
+        Snapshot(final SortedMap<LocalDate, List<Post>> months, final long builtAt) {
+            final SortedMap<LocalDate, Integer> newCounts = new TreeMap<>(reverseOrder());
+            months.forEach((month, posts) -> newCounts.put(month, posts.size()));
+            this.months = Collections.unmodifiableSortedMap(months);
+            this.counts = Collections.unmodifiableSortedMap(newCounts);
+            this.builtAt = builtAt;
+        }
+    }
+
+    private final PostRepository postRepository;
+
+    private final long expiration;
+
+    private final Object lock = new Object();
+
+    private final Map<Integer, ArchivedPost> postsById = new HashMap<>();
+
+    private final Map<LocalDate, NavigableSet<ArchivedPost>> postsByMonth = new HashMap<>();
+
+    private volatile Snapshot snapshot;
+
+    /**
+     * Creates a new archive.
+     *
+     * @param postRepository
+     * @param expiration Time in seconds after which the index is built again
+     */
+    public PostArchiveService(
+            final PostRepository postRepository,
+            @Value("${euregjug.posts.archive-expiration:300}") final long expiration
+    ) {
+        this.postRepository = postRepository;
+        this.expiration = TimeUnit.SECONDS.toMillis(expiration);
+    }
+
+    /**
+     * @return All published posts without content, grouped by month, newest
+     * first
+     */
+    public SortedMap<LocalDate, List<Post>> getMonths() {
+        return getSnapshot().months;
+    }
+
+    /**
+     * @return The number of published posts per month, newest first
+     */
+    public SortedMap<LocalDate, Integer> getCounts() {
+        return getSnapshot().counts;
+    }
+
+    Snapshot getSnapshot() {
+        Snapshot rv = this.snapshot;
+        if (isExpired(rv)) {
+            synchronized (this.lock) {
+                rv = this.snapshot;
+                if (isExpired(rv)) {
+                    rv = build();
+                }
+            }
+        }
+        return rv;
+    }
+
+    boolean isExpired(final Snapshot candidate) {
+        return candidate == null || System.currentTimeMillis() - candidate.builtAt >= this.expiration;
+    }
+
+    Snapshot build() {
+        this.postsById.clear();
+        this.postsByMonth.clear();
+        final List<ArchivedPost> archivedPosts = this.postRepository.findAllArchiveEntriesByStatus(Status.published);
+        archivedPosts.forEach(this::add);
+
+        final SortedMap<LocalDate, List<Post>> months = new TreeMap<>(reverseOrder());
+        this.postsByMonth.forEach((month, posts) -> months.put(month, toPosts(posts)));
+        this.snapshot = new Snapshot(months, System.currentTimeMillis());
+        log.debug("Built archive of {} posts in {} months", archivedPosts.size(), months.size());
+        return this.snapshot;
+    }
+
+    /**
+     * Updates the archive after a post has been created or changed. Only the
+     * months of the old and the new version of the post are rebuilt.
+     *
+     * @param event
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onPostChanged(final PostChangedEvent event) {
+        synchronized (this.lock) {
+            if (this.snapshot == null) {
+                return;
+            }
+
+            final ArchivedPost oldVersion = this.postsById.remove(event.getId());
+            if (oldVersion != null) {
+                this.postsByMonth.get(oldVersion.getMonth()).remove(oldVersion);
+            }
+            final ArchivedPost newVersion = event.isPublished()
+                    ? new ArchivedPost(event.getId(), event.getPublishedOn(), event.getCreatedAt(), event.getSlug(), event.getTitle())
+                    : null;
+            if (newVersion != null) {
+                add(newVersion);
+            }
+
+            final SortedMap<LocalDate, List<Post>> months = new TreeMap<>(this.snapshot.months);
+            for (ArchivedPost changed : new ArchivedPost[]{oldVersion, newVersion}) {
+                if (changed == null) {
+                    continue;
+                }
+                final NavigableSet<ArchivedPost> postsInMonth = this.postsByMonth.get(changed.getMonth());
+                if (postsInMonth.isEmpty()) {
+                    this.postsByMonth.remove(changed.getMonth());
+                    months.remove(changed.getMonth());
+                } else {
+                    months.put(changed.getMonth(), toPosts(postsInMonth));
+                }
+            }
+            this.snapshot = new Snapshot(months, this.snapshot.builtAt);
+        }
+    }
+
+    void add(final ArchivedPost archivedPost) {
+        this.postsById.put(archivedPost.getId(), archivedPost);
+        this.postsByMonth.computeIfAbsent(archivedPost.getMonth(), month -> new TreeSet<>(ArchivedPost.NEWEST_FIRST)).add(archivedPost);
+    }
+
+    static List<Post> toPosts(final NavigableSet<ArchivedPost> archivedPosts) {
+        return Collections.unmodifiableList(archivedPosts.stream().map(ArchivedPost::getPost).collect(toList()));
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright 2018 EuregJUG.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.euregjug.site.posts;
+
+import java.util.Calendar;
+import java.util.Date;
+import lombok.Getter;
+
+/**
+ * Published whenever a post has been created or changed. Carries the state of
+ * the post after the change, so that listeners don't have to select the post
+ * again. Slug and publication date of a post are never changed, so its
+ * permalink stays the same.
+ */
+@Getter
+public final class PostChangedEvent {
+
+    /**
+     * Id of the post that changed.
+     */
+    private final Integer id;
+
+    private final boolean published;
+
+    private final Date publishedOn;
+
+    private final Calendar createdAt;
+
+    private final String slug;
+
+    private final String title;
+
+    public PostChangedEvent(final PostEntity post) {
+        this.id = post.getId();
+        this.published = post.isPublished();
+        this.publishedOn = post.getPublishedOn();
+        this.createdAt = post.getCreatedAt();
+        this.slug = post.getSlug();
+        this.title = post.getTitle();
+    }
+
+    /**
+     * @return A cursor pointing to the changed post
+     */
+    public PostCursor getCursor() {
+        return PostCursor.of(this.publishedOn, this.createdAt, this.id);
+    }
+}
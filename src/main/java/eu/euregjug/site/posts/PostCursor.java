@@ -0,0 +1,93 @@
+/*
+ * Copyright 2018 EuregJUG.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.euregjug.site.posts;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+import java.util.Calendar;
+import java.util.Date;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+
+/**
+ * Points to a post in the list of published posts, which are ordered by
+ * publication date, creation date and id. Used for keyset pagination: A page
+ * is selected relative to the post a cursor points to and not by an offset.
+ * The string representation of a cursor is used as token in links.
+ */
+@Getter
+@EqualsAndHashCode
+public final class PostCursor {
+
+    private final LocalDate publishedOn;
+
+    private final long createdAt;
+
+    private final int id;
+
+    PostCursor(final LocalDate publishedOn, final long createdAt, final int id) {
+        this.publishedOn = publishedOn;
+        this.createdAt = createdAt;
+        this.id = id;
+    }
+
+    static PostCursor of(final PostEntity post) {
+        return of(post.getPublishedOn(), post.getCreatedAt(), post.getId());
+    }
+
+    static PostCursor of(final Date publishedOn, final Calendar createdAt, final int id) {
+        return new PostCursor(
+                publishedOn instanceof java.sql.Date ? ((java.sql.Date) publishedOn).toLocalDate() : publishedOn.toInstant().atZone(ZoneId.systemDefault()).toLocalDate(),
+                createdAt.getTimeInMillis(),
+                id
+        );
+    }
+
+    /**
+     * Parses a token created by {@link #toString()}.
+     *
+     * @param token
+     * @return The cursor represented by the token
+     * @throws IllegalArgumentException if the token is not a valid cursor
+     */
+    public static PostCursor parse(final String token) {
+        final String[] parts = token.split("\\.");
+        if (parts.length != 3) {
+            throw new IllegalArgumentException(String.format("Invalid cursor '%s'", token));
+        }
+        try {
+            return new PostCursor(LocalDate.parse(parts[0]), Long.parseLong(parts[1]), Integer.parseInt(parts[2]));
+        } catch (DateTimeParseException | NumberFormatException e) {
+            throw new IllegalArgumentException(String.format("Invalid cursor '%s'", token), e);
+        }
+    }
+
+    Date getPublishedOnAsDate() {
+        return Date.from(this.publishedOn.atStartOfDay(ZoneId.systemDefault()).toInstant());
+    }
+
+    Calendar getCreatedAtAsCalendar() {
+        final Calendar rv = Calendar.getInstance();
+        rv.setTimeInMillis(this.createdAt);
+        return rv;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s.%d.%d", this.publishedOn, this.createdAt, this.id);
+    }
+}
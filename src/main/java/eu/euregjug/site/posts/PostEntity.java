@@ -37,6 +37,8 @@ import javax.persistence.Id;
 import javax.persistence.Lob;
 import javax.persistence.NamedAttributeNode;
 import javax.persistence.NamedEntityGraph;
+import javax.persistence.NamedNativeQueries;
+import javax.persistence.NamedNativeQuery;
 import javax.persistence.NamedQueries;
 import javax.persistence.NamedQuery;
 import javax.persistence.PrePersist;
@@ -80,23 +82,50 @@ import org.hibernate.validator.constraints.NotBlank;
             @NamedAttributeNode("title")}
 )
 @NamedQueries({
-        // Named query for older posts relative to the current
-        @NamedQuery(name = "PostEntity.getPrevious",
+        // Selects published posts by id without their content
+        @NamedQuery(name = "PostEntity.findPublishedProjectionsById",
                 query
-                = "Select p1 from PostEntity p1, PostEntity p2 "
-                + " where p2.id = :id "
-                + "   and p1.id <> p2.id "
-                + "   and (p1.publishedOn < p2.publishedOn or (p1.publishedOn = p2.publishedOn and p1.createdAt < p2.createdAt)) "
-                + " order by p1.publishedOn desc, p1.createdAt desc "
+                = "Select new eu.euregjug.site.posts.Post(p.publishedOn, p.slug, p.title) from PostEntity p "
+                + " where p.status = :status "
+                + "   and p.id in :ids "
+                + " order by p.publishedOn desc, p.createdAt desc "
         ),
-        // Named query for newer posts relative to the current
-        @NamedQuery(name = "PostEntity.getNext",
+        // Named queries for keyset pagination over published posts
+        @NamedQuery(name = "PostEntity.findPublished",
                 query
-                = "Select p1 from PostEntity p1, PostEntity p2 "
-                + " where p2.id = :id "
-                + "   and p1.id <> p2.id "
-                + "   and (p1.publishedOn > p2.publishedOn or (p1.publishedOn = p2.publishedOn and p1.createdAt > p2.createdAt)) "
-                + " order by p1.publishedOn asc, p1.createdAt asc "
+                = "Select p from PostEntity p "
+                + " where p.status = :status "
+                + " order by p.publishedOn desc, p.createdAt desc, p.id desc "
+        ),
+        @NamedQuery(name = "PostEntity.findPublishedAfter",
+                query
+                = "Select p from PostEntity p "
+                + " where p.status = :status "
+                + "   and (p.publishedOn < :publishedOn or (p.publishedOn = :publishedOn and (p.createdAt < :createdAt or (p.createdAt = :createdAt and p.id < :id)))) "
+                + " order by p.publishedOn desc, p.createdAt desc, p.id desc "
+        ),
+        @NamedQuery(name = "PostEntity.findPublishedBefore",
+                query
+                = "Select p from PostEntity p "
+                + " where p.status = :status "
+                + "   and (p.publishedOn > :publishedOn or (p.publishedOn = :publishedOn and (p.createdAt > :createdAt or (p.createdAt = :createdAt and p.id > :id)))) "
+                + " order by p.publishedOn asc, p.createdAt asc, p.id asc "
+        )
+})
+@NamedNativeQueries({
+        // Selects the older and the newer neighbour of a published post in
+        // one round trip without loading their content
+        @NamedNativeQuery(name = "PostEntity.getNeighbours",
+                query
+                = "(Select 'p' as neighbour, published_on, slug, title from posts "
+                + "  where status = :status "
+                + "    and (published_on < :publishedOn or (published_on = :publishedOn and (created_at < :createdAt or (created_at = :createdAt and id < :id)))) "
+                + "  order by published_on desc, created_at desc, id desc limit 1) "
+                + "union all "
+                + "(Select 'n' as neighbour, published_on, slug, title from posts "
+                + "  where status = :status "
+                + "    and (published_on > :publishedOn or (published_on = :publishedOn and (created_at > :createdAt or (created_at = :createdAt and id > :id)))) "
+                + "  order by published_on asc, created_at asc, id asc limit 1)"
         )
 })
 @JsonInclude(Include.NON_EMPTY)
@@ -209,6 +238,34 @@ public class PostEntity implements Serializable {
     @Getter @Setter
     private Status status;
 
+    /**
+     * The rendered content of this post. Only valid as long as
+     * {@link #contentHash} and {@link #rendererVersion} match the current
+     * content and renderer.
+     */
+    @Column(name = "rendered_content")
+    @Lob
+    @Basic(fetch = FetchType.EAGER)
+    @JsonIgnore
+    @Getter
+    private String renderedContent;
+
+    /**
+     * Hash of format and content this post was rendered from.
+     */
+    @Column(name = "content_hash", length = 64)
+    @JsonIgnore
+    @Getter
+    private String contentHash;
+
+    /**
+     * Version of the renderer this post was rendered with.
+     */
+    @Column(name = "renderer_version", length = 64)
+    @JsonIgnore
+    @Getter
+    private String rendererVersion;
+
     public PostEntity(final Date publishedOn, final String slug, final String title, final String content) {
         this.publishedOn = publishedOn;
         this.slug = slug;
@@ -239,6 +296,12 @@ public class PostEntity implements Serializable {
         this.updatedAt = Calendar.getInstance();
     }
 
+    void setRendition(final String newRenderedContent, final String newContentHash, final String newRendererVersion) {
+        this.renderedContent = newRenderedContent;
+        this.contentHash = newContentHash;
+        this.rendererVersion = newRendererVersion;
+    }
+
     @JsonIgnore
     public boolean isPublished() {
         return this.status == Status.published;
@@ -0,0 +1,48 @@
+/*
+ * Copyright 2018 EuregJUG.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.euregjug.site.posts;
+
+import java.util.Optional;
+
+/**
+ * The published posts before and after a given post. The neighbours contain
+ * only what is needed to link them, their content is always null.
+ */
+public final class PostNeighbours {
+
+    private final Post previous;
+
+    private final Post next;
+
+    public PostNeighbours(final Post previous, final Post next) {
+        this.previous = previous;
+        this.next = next;
+    }
+
+    /**
+     * @return The next older post
+     */
+    public Optional<Post> getPrevious() {
+        return Optional.ofNullable(this.previous);
+    }
+
+    /**
+     * @return The next newer post
+     */
+    public Optional<Post> getNext() {
+        return Optional.ofNullable(this.next);
+    }
+}
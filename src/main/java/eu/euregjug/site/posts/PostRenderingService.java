@@ -16,12 +16,35 @@
 package eu.euregjug.site.posts;
 
 import eu.euregjug.site.posts.PostEntity.Format;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import javax.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
 import org.asciidoctor.Asciidoctor;
 import org.asciidoctor.Options;
 import org.asciidoctor.OptionsBuilder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.cache.annotation.CachePut;
 import org.springframework.cache.annotation.Cacheable;
+import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 import org.springframework.stereotype.Service;
+import org.springframework.web.bind.annotation.ResponseStatus;
 
 /**
  * A post rendering service that supports only AsciiDoc at the moment.
@@ -32,41 +55,312 @@ import org.springframework.stereotype.Service;
 @Slf4j
 public class PostRenderingService {
 
+    /**
+     * Version of the renderer stored alongside persisted renditions. Must be
+     * changed whenever Asciidoctor or the render options change, so that all
+     * stored renditions are considered stale.
+     */
+    static final String RENDERER_VERSION = "asciidoctorj-1.5.6";
+
+    /**
+     * Content shown in place of a post that could not be rendered. It is
+     * neither cached nor persisted, so that the post is rendered again on
+     * the next request.
+     */
+    public static final String RENDERING_FAILED = "<strong>Could not render content.</strong>";
+
     @FunctionalInterface
     interface Renderer {
 
         String render(String content);
     }
 
+    /**
+     * Thrown when no renderer could be checked out of the pool in time. Not
+     * rendering at all is better than caching an error message for a post
+     * that is perfectly fine.
+     */
+    @ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+    public static class RendererUnavailableException extends RuntimeException {
+
+        private static final long serialVersionUID = 3614021475640376468L;
+
+        public RendererUnavailableException(final String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * Renders AsciiDoc through a fixed size pool of {@link Asciidoctor}
+     * instances. Creating an instance is expensive (it boots a JRuby
+     * runtime), so the instances are created one after another on a
+     * background thread and become available for checkout as soon as they are
+     * ready. Every instance created is tracked until it has been destroyed:
+     * On shutdown idle instances are destroyed immediately, instances that
+     * are checked out or still being created are destroyed as soon as they
+     * are returned or ready.
+     */
     static class AsciiDocRenderer implements Renderer {
 
-        private final Asciidoctor asciidoctor = Asciidoctor.Factory.create();
+        private final BlockingQueue<Asciidoctor> pool = new LinkedBlockingQueue<>();
+
         private final Options options = OptionsBuilder.options().inPlace(false).get();
 
+        private final ExecutorService poolInitializer = Executors.newSingleThreadExecutor(new CustomizableThreadFactory("asciidoctor-pool-"));
+
+        private final long checkoutTimeout;
+
+        private final Supplier<Asciidoctor> factory;
+
+        /**
+         * All instances that have been created and not yet destroyed, guarded
+         * by itself together with {@link #closed}.
+         */
+        private final Set<Asciidoctor> instances = new HashSet<>();
+
+        private boolean closed;
+
+        private final LongAdder renders = new LongAdder();
+
+        private final LongAdder timeouts = new LongAdder();
+
+        private final LongAdder waitTime = new LongAdder();
+
+        private final LongAdder renderTime = new LongAdder();
+
+        AsciiDocRenderer(final int poolSize, final long checkoutTimeout) {
+            this(poolSize, checkoutTimeout, Asciidoctor.Factory::create);
+        }
+
+        AsciiDocRenderer(final int poolSize, final long checkoutTimeout, final Supplier<Asciidoctor> factory) {
+            if (poolSize < 1) {
+                throw new IllegalArgumentException("Pool size must be at least 1");
+            }
+            this.checkoutTimeout = checkoutTimeout;
+            this.factory = factory;
+            for (int i = 0; i < poolSize; ++i) {
+                this.poolInitializer.execute(() -> {
+                    final Asciidoctor asciidoctor = this.factory.get();
+                    synchronized (this.instances) {
+                        if (!this.closed) {
+                            this.instances.add(asciidoctor);
+                            log.debug("Created Asciidoctor instance {} of {}", this.instances.size(), poolSize);
+                        }
+                    }
+                    checkin(asciidoctor);
+                });
+            }
+            this.poolInitializer.shutdown();
+        }
+
         @Override
         public String render(final String content) {
+            final long checkoutStarted = System.nanoTime();
+            final Asciidoctor asciidoctor = checkout();
+            final long renderStarted = System.nanoTime();
+            this.waitTime.add(renderStarted - checkoutStarted);
+
             String rv;
             try {
                 rv = asciidoctor.render(content, options);
             } catch (Exception e) {
                 log.error("Could not render AsciiDoc content!", e);
-                rv = "<strong>Could not render content.</strong>";
+                rv = RENDERING_FAILED;
+            } finally {
+                this.renderTime.add(System.nanoTime() - renderStarted);
+                this.renders.increment();
+                checkin(asciidoctor);
             }
             return rv;
         }
+
+        Asciidoctor checkout() {
+            Asciidoctor rv = null;
+            try {
+                rv = this.pool.poll(this.checkoutTimeout, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            if (rv == null) {
+                this.timeouts.increment();
+                throw new RendererUnavailableException(String.format("No Asciidoctor instance available after %dms", this.checkoutTimeout));
+            }
+            return rv;
+        }
+
+        /**
+         * Returns an instance to the pool or destroys it if the pool has been
+         * shut down.
+         *
+         * @param asciidoctor The instance to return
+         */
+        void checkin(final Asciidoctor asciidoctor) {
+            synchronized (this.instances) {
+                if (!this.closed) {
+                    this.pool.offer(asciidoctor);
+                    return;
+                }
+                this.instances.remove(asciidoctor);
+            }
+            asciidoctor.shutdown();
+        }
+
+        List<Metric<?>> metrics() {
+            final long numberOfRenders = this.renders.sum();
+            return Arrays.asList(
+                    new Metric<>("posts.rendering.pool.size", size()),
+                    new Metric<>("posts.rendering.pool.available", this.pool.size()),
+                    new Metric<>("posts.rendering.pool.timeouts", this.timeouts.sum()),
+                    new Metric<>("posts.rendering.renders", numberOfRenders),
+                    new Metric<>("posts.rendering.waitTime.mean", mean(this.waitTime.sum(), numberOfRenders)),
+                    new Metric<>("posts.rendering.renderTime.mean", mean(this.renderTime.sum(), numberOfRenders))
+            );
+        }
+
+        static double mean(final long totalNanos, final long count) {
+            return count == 0 ? 0.0 : TimeUnit.NANOSECONDS.toMicros(totalNanos) / 1000.0 / count;
+        }
+
+        /**
+         * @return The number of instances that have been created and not yet
+         * destroyed
+         */
+        int size() {
+            synchronized (this.instances) {
+                return this.instances.size();
+            }
+        }
+
+        void shutdown() {
+            this.poolInitializer.shutdownNow();
+            final List<Asciidoctor> idleInstances = new ArrayList<>();
+            synchronized (this.instances) {
+                this.closed = true;
+                this.pool.drainTo(idleInstances);
+                this.instances.removeAll(idleInstances);
+            }
+            idleInstances.forEach(Asciidoctor::shutdown);
+        }
     }
 
-    private final Renderer renderer = new AsciiDocRenderer();
+    /**
+     * Keeps failed renditions out of the cache.
+     */
+    private static final String RENDERING_FAILED_CONDITION = "#result.content == T(eu.euregjug.site.posts.PostRenderingService).RENDERING_FAILED";
 
-    @Cacheable(cacheNames = "renderedPosts", key = "#post.id")
+    private final AsciiDocRenderer renderer;
+
+    /**
+     * Creates a new rendering service.
+     *
+     * @param poolSize Number of Asciidoctor instances that can render
+     * concurrently
+     * @param checkoutTimeout Maximum time in milliseconds a request waits for
+     * a free instance
+     */
+    public PostRenderingService(
+            @Value("${euregjug.rendering.pool-size:2}") final int poolSize,
+            @Value("${euregjug.rendering.checkout-timeout:30000}") final long checkoutTimeout
+    ) {
+        this.renderer = new AsciiDocRenderer(poolSize, checkoutTimeout);
+    }
+
+    /**
+     * Renders the given post. A persisted rendition is used as long as it
+     * is current.
+     *
+     * @param post
+     * @return The rendered post
+     */
+    @Cacheable(cacheNames = "renderedPosts", key = "#post.id", unless = RENDERING_FAILED_CONDITION)
     public Post render(final PostEntity post) {
-        String renderedContent;
+        return toPost(post);
+    }
+
+    /**
+     * Renders the given post like {@link #render(PostEntity)} does and
+     * replaces the cached rendition with the result.
+     *
+     * @param post
+     * @return The rendered post
+     */
+    @CachePut(cacheNames = "renderedPosts", key = "#post.id", unless = RENDERING_FAILED_CONDITION)
+    public Post refresh(final PostEntity post) {
+        return toPost(post);
+    }
+
+    Post toPost(final PostEntity post) {
+        final String renderedContent = hasCurrentRendition(post) ? post.getRenderedContent() : renderContent(post);
+        return new Post(post.getPublishedOn(), post.getSlug(), post.getTitle(), renderedContent);
+    }
+
+    /**
+     * Renders the post and stores the result on the entity if its rendition
+     * is missing or stale. The entity must be saved afterwards. A failed
+     * rendition is not stored, so that the post is rendered again later.
+     *
+     * @param post
+     * @return True if the rendition has been updated
+     */
+    public boolean updateRendition(final PostEntity post) {
+        if (hasCurrentRendition(post)) {
+            return false;
+        }
+        final String renderedContent = renderContent(post);
+        if (RENDERING_FAILED.equals(renderedContent)) {
+            log.warn("Not storing failed rendition of post {}", post.getId());
+            return false;
+        }
+        post.setRendition(renderedContent, hash(post), RENDERER_VERSION);
+        return true;
+    }
+
+    boolean hasCurrentRendition(final PostEntity post) {
+        return post.getRenderedContent() != null
+                && RENDERER_VERSION.equals(post.getRendererVersion())
+                && hash(post).equals(post.getContentHash());
+    }
+
+    String renderContent(final PostEntity post) {
+        String rv;
         if (post.getFormat() != Format.asciidoc) {
-            renderedContent = "<strong>Could not render content.</strong>";
+            rv = RENDERING_FAILED;
         } else {
-            renderedContent = renderer.render(post.getContent());
+            rv = renderer.render(post.getContent());
         }
+        return rv;
+    }
 
-        return new Post(post.getPublishedOn(), post.getSlug(), post.getTitle(), renderedContent);
+    /**
+     * @param post
+     * @return Hex encoded SHA-256 of format and content of the given post
+     */
+    static String hash(final PostEntity post) {
+        final MessageDigest messageDigest;
+        try {
+            messageDigest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        messageDigest.update(String.valueOf(post.getFormat()).getBytes(StandardCharsets.UTF_8));
+        messageDigest.update((byte) 0);
+        messageDigest.update(String.valueOf(post.getContent()).getBytes(StandardCharsets.UTF_8));
+        final StringBuilder rv = new StringBuilder(64);
+        for (byte b : messageDigest.digest()) {
+            rv.append(String.format("%02x", b));
+        }
+        return rv.toString();
+    }
+
+    /**
+     * @return Pool size, wait and render times of the AsciiDoc renderer
+     */
+    public Collection<Metric<?>> getMetrics() {
+        return this.renderer.metrics();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        this.renderer.shutdown();
     }
 }
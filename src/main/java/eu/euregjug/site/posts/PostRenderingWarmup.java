@@ -0,0 +1,165 @@
+/*
+ * Copyright 2018 EuregJUG.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.euregjug.site.posts;
+
+import eu.euregjug.site.posts.PostEntity.Status;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.boot.actuate.info.Info;
+import org.springframework.boot.actuate.info.InfoContributor;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+/**
+ * Renders all published posts once the application is ready, so that the
+ * first visitors after a restart or deploy don't pay the rendering costs. The
+ * application reports itself as out of service until the warmup is done.
+ * Posts without a current rendition are rendered and their rendition is
+ * persisted on the way.
+ */
+@Component
+@Slf4j
+final class PostRenderingWarmup implements HealthIndicator, InfoContributor {
+
+    /**
+     * State of the warmup.
+     */
+    enum State {
+
+        disabled, pending, running, finished, failed
+    }
+
+    private final PostRepository postRepository;
+
+    private final PostRenderingService postRenderingService;
+
+    private final int parallelism;
+
+    private final AtomicInteger rendered = new AtomicInteger();
+
+    private final AtomicInteger failed = new AtomicInteger();
+
+    private final AtomicInteger backfilled = new AtomicInteger();
+
+    private volatile State state;
+
+    private volatile long total;
+
+    private volatile long duration;
+
+    PostRenderingWarmup(
+            final PostRepository postRepository,
+            final PostRenderingService postRenderingService,
+            @Value("${euregjug.rendering.warmup.enabled:true}") final boolean enabled,
+            @Value("${euregjug.rendering.warmup.parallelism:0}") final int parallelism
+    ) {
+        this.postRepository = postRepository;
+        this.postRenderingService = postRenderingService;
+        final int cores = Runtime.getRuntime().availableProcessors();
+        this.parallelism = parallelism < 1 ? cores : Math.min(parallelism, cores);
+        this.state = enabled ? State.pending : State.disabled;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (this.state == State.pending) {
+            new CustomizableThreadFactory("post-rendering-warmup").newThread(this::warmup).start();
+        }
+    }
+
+    void warmup() {
+        this.state = State.running;
+        final long started = System.currentTimeMillis();
+        final ExecutorService workers = Executors.newFixedThreadPool(this.parallelism, new CustomizableThreadFactory("post-rendering-warmup-"));
+        final Semaphore inFlight = new Semaphore(this.parallelism);
+        try {
+            this.total = this.postRepository.countByStatus(Status.published);
+            log.info("Rendering {} published posts with {} threads", this.total, this.parallelism);
+            // The posts are detached before they are handed to the workers
+            this.postRepository.forEachPublished(post -> {
+                inFlight.acquireUninterruptibly();
+                workers.execute(() -> {
+                    try {
+                        if (this.postRenderingService.updateRendition(post)) {
+                            this.postRepository.updateRendition(post.getId(), post.getRenderedContent(), post.getContentHash(), post.getRendererVersion());
+                            this.backfilled.incrementAndGet();
+                        }
+                        this.postRenderingService.render(post);
+                        this.rendered.incrementAndGet();
+                    } catch (Exception e) {
+                        log.warn("Could not render post {}: {}", post.getId(), e.getMessage());
+                        this.failed.incrementAndGet();
+                    } finally {
+                        inFlight.release();
+                    }
+                });
+            });
+            inFlight.acquireUninterruptibly(this.parallelism);
+            this.state = State.finished;
+        } catch (Exception e) {
+            log.error("Could not warmup rendered posts", e);
+            this.state = State.failed;
+        } finally {
+            workers.shutdown();
+            this.duration = System.currentTimeMillis() - started;
+        }
+        log.info("Rendered {} of {} posts in {}ms ({} failed)", this.rendered.get(), this.total, this.duration, this.failed.get());
+    }
+
+    State getState() {
+        return this.state;
+    }
+
+    Map<String, Object> getDetails() {
+        final Map<String, Object> rv = new LinkedHashMap<>();
+        rv.put("state", this.state);
+        rv.put("total", this.total);
+        rv.put("rendered", this.rendered.get());
+        rv.put("failed", this.failed.get());
+        rv.put("backfilled", this.backfilled.get());
+        rv.put("duration", this.duration);
+        return rv;
+    }
+
+    /**
+     * A warmup that is still in progress keeps the application out of
+     * service. A failed warmup doesn't: The posts will be rendered on demand
+     * as before.
+     *
+     * @return
+     */
+    @Override
+    public Health health() {
+        final Health.Builder builder = this.state == State.pending || this.state == State.running ? Health.outOfService() : Health.up();
+        getDetails().forEach(builder::withDetail);
+        return builder.build();
+    }
+
+    @Override
+    public void contribute(final Info.Builder builder) {
+        builder.withDetail("postRenderingWarmup", getDetails());
+    }
+}
@@ -0,0 +1,35 @@
+/*
+ * Copyright 2018 EuregJUG.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.euregjug.site.posts;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Published after the rendition of a changed post has been swapped into the
+ * cache. Everything that contains rendered posts must be invalidated on this
+ * event and not on the {@link PostChangedEvent} itself, otherwise requests
+ * arriving before the new rendition is ready would cache the old one again.
+ */
+@Getter
+@RequiredArgsConstructor
+public final class PostRenditionRefreshedEvent {
+
+    /**
+     * The change that caused the refresh.
+     */
+    private final PostChangedEvent postChangedEvent;
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright 2018 EuregJUG.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.euregjug.site.posts;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+/**
+ * Renders changed posts in the background. Changes are processed one after
+ * another on the {@code renderExecutor}. Readers keep getting the previously
+ * cached rendition of a post until the new one has been rendered and swapped
+ * into the cache, which is announced with a
+ * {@link PostRenditionRefreshedEvent}.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class PostRenditionService {
+
+    private final PostRepository postRepository;
+
+    private final PostRenderingService postRenderingService;
+
+    private final ApplicationEventPublisher applicationEventPublisher;
+
+    /**
+     * Reloads the changed post after the change has been committed, renders
+     * and persists it if necessary and replaces the cached rendition. The
+     * refresh is announced even if it failed, so that caches of pages and
+     * feeds don't keep the old version of the post.
+     *
+     * @param event
+     */
+    @Async("renderExecutor")
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onPostChanged(final PostChangedEvent event) {
+        try {
+            this.postRepository.findOne(event.getId()).ifPresent(post -> {
+                if (this.postRenderingService.updateRendition(post)) {
+                    this.postRepository.updateRendition(post.getId(), post.getRenderedContent(), post.getContentHash(), post.getRendererVersion());
+                }
+                this.postRenderingService.refresh(post);
+                log.debug("Refreshed rendition of post {}", post.getId());
+            });
+        } catch (Exception e) {
+            log.warn("Could not refresh rendition of post {}: {}", event.getId(), e.getMessage());
+        } finally {
+            this.applicationEventPublisher.publishEvent(new PostRenditionRefreshedEvent(event));
+        }
+    }
+}
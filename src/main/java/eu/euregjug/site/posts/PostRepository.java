@@ -16,13 +16,16 @@
 package eu.euregjug.site.posts;
 
 import eu.euregjug.site.posts.PostEntity.Status;
+import eu.euregjug.site.support.ModificationStamp;
 import java.util.Date;
 import java.util.List;
 import java.util.Optional;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
-import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.Repository;
+import org.springframework.data.repository.query.Param;
 import org.springframework.transaction.annotation.Transactional;
 
 /**
@@ -38,6 +41,30 @@ public interface PostRepository extends Repository<PostEntity, Integer>, PostRep
      */
     PostEntity save(PostEntity entity);
 
+    /**
+     * Stores the rendition of a post without touching its content or update
+     * timestamp.
+     *
+     * @param id
+     * @param renderedContent
+     * @param contentHash
+     * @param rendererVersion
+     * @return Number of updated posts
+     */
+    @Modifying(clearAutomatically = true)
+    @Transactional
+    @Query(""
+            + "Update PostEntity p "
+            + "   set p.renderedContent = :renderedContent, p.contentHash = :contentHash, p.rendererVersion = :rendererVersion "
+            + " where p.id = :id"
+    )
+    int updateRendition(
+            @Param("id") Integer id,
+            @Param("renderedContent") String renderedContent,
+            @Param("contentHash") String contentHash,
+            @Param("rendererVersion") String rendererVersion
+    );
+
     /**
      * @param id
      * @return Post with the given Id or an empty optional
@@ -56,14 +83,22 @@ public interface PostRepository extends Repository<PostEntity, Integer>, PostRep
     Optional<PostEntity> findByPublishedOnAndSlug(Date publishedOn, String slug);
 
     /**
-     * Selects a "page" of posts with a given status.
+     * Selects id, publication date, creation date, slug and title of all
+     * posts with a given status for building the archive.
      *
      * @param status status as selection criteria
-     * @param pageable
      * @return
      */
     @Transactional(readOnly = true)
-    Page<PostEntity> findAllByStatus(Status status, Pageable pageable);
+    @Query("Select new eu.euregjug.site.posts.ArchivedPost(p.id, p.publishedOn, p.createdAt, p.slug, p.title) from PostEntity p where p.status = :status")
+    List<ArchivedPost> findAllArchiveEntriesByStatus(@Param("status") Status status);
+
+    /**
+     * @param status status as selection criteria
+     * @return The number of posts with the given status
+     */
+    @Transactional(readOnly = true)
+    long countByStatus(Status status);
 
     /**
      * Selects a "page" of posts.
@@ -75,11 +110,9 @@ public interface PostRepository extends Repository<PostEntity, Integer>, PostRep
     Page<PostEntity> findAll(Pageable pageable);
 
     /**
-     * Selects all posts sorted by the specified sort.
-     *
-     * @param sort
-     * @return
+     * @return Last modification and number of all posts
      */
     @Transactional(readOnly = true)
-    List<PostEntity> findAll(Sort sort);
+    @Query("Select new eu.euregjug.site.support.ModificationStamp(max(p.updatedAt), count(p)) from PostEntity p")
+    ModificationStamp getModificationStamp();
 }
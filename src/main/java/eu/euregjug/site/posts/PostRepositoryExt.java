@@ -16,15 +16,62 @@
 package eu.euregjug.site.posts;
 
 import java.util.List;
-import java.util.Optional;
+import java.util.function.Consumer;
 
 /**
  * @author Michael J. Simons, 2015-12-29
  */
 public interface PostRepositoryExt {
-    Optional<PostEntity> getPrevious(PostEntity post);
+    /**
+     * Selects the published posts before and after the given post in one
+     * query.
+     *
+     * @param post
+     * @return The neighbours of the given post
+     */
+    PostNeighbours getNeighbours(PostEntity post);
+
+    /**
+     * Selects the published posts before and after the position the given
+     * cursor points to, for example the position of a post before it
+     * changed.
+     *
+     * @param cursor
+     * @return The neighbours of the given position
+     */
+    PostNeighbours getNeighbours(PostCursor cursor);
 
-    Optional<PostEntity> getNext(PostEntity post);
+    /**
+     * Selects a page of published posts, newest first, that are older than
+     * the post the cursor points to. Neither uses an offset nor counts the
+     * posts.
+     *
+     * @param cursor The cursor to start after, null for the newest posts
+     * @param size Size of the page
+     * @return A page of published posts
+     */
+    KeysetPage<PostEntity> findPublishedAfter(PostCursor cursor, int size);
+
+    /**
+     * Selects a page of published posts, newest first, that are newer than
+     * the post the cursor points to. If there are not enough newer posts,
+     * the page of the newest posts is returned.
+     *
+     * @param cursor The cursor to end before
+     * @param size Size of the page
+     * @return A page of published posts
+     */
+    KeysetPage<PostEntity> findPublishedBefore(PostCursor cursor, int size);
+
+    /**
+     * Passes all published posts, newest first, to the given action. The
+     * posts are read through a database cursor and detached before the
+     * action, so that the memory needed doesn't depend on the number of posts
+     * and the action may hand the posts to other threads.
+     *
+     * @param action The action to perform on each published post
+     */
+    void forEachPublished(Consumer<PostEntity> action);
 
     /**
      * Searchs for posts by keyword.
@@ -33,4 +80,14 @@ public interface PostRepositoryExt {
      * @return A list of posts that matches on the given keyword
      */
     List<PostEntity> searchByKeyword(String keyword);
+
+    /**
+     * Searches for published posts by keyword. Only the ids of the matching
+     * posts are taken from the index, the posts are selected without their
+     * content.
+     *
+     * @param keyword
+     * @return A list of published posts without content, newest first
+     */
+    List<Post> searchPublishedByKeyword(String keyword);
 }
@@ -15,21 +15,39 @@
  */
 package eu.euregjug.site.posts;
 
+import eu.euregjug.site.posts.PostEntity.Status;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
 import java.util.List;
-import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 import javax.persistence.EntityManager;
-import javax.persistence.NoResultException;
+import javax.persistence.TemporalType;
+import javax.persistence.TypedQuery;
+import org.apache.lucene.search.Query;
+import org.hibernate.Session;
+import org.hibernate.search.engine.ProjectionConstants;
 import org.hibernate.search.jpa.FullTextEntityManager;
 import org.hibernate.search.jpa.Search;
 import org.hibernate.search.query.dsl.QueryBuilder;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
+import static java.util.stream.Collectors.toList;
+
 /**
  *
  * @author Michael J. Simons, 2015-12-29
  */
 public class PostRepositoryImpl implements PostRepositoryExt {
 
+    /**
+     * Number of rows fetched at once when posts are read through a cursor.
+     */
+    private static final int FETCH_SIZE = 25;
+
     private final EntityManager entityManager;
 
     public PostRepositoryImpl(final EntityManager entityManager) {
@@ -38,45 +56,138 @@ public class PostRepositoryImpl implements PostRepositoryExt {
 
     @Override
     @Transactional(readOnly = true)
-    public Optional<PostEntity> getPrevious(final PostEntity post) {
-        return getRelatedPost("PostEntity.getPrevious", post);
+    public PostNeighbours getNeighbours(final PostEntity post) {
+        return getNeighbours(PostCursor.of(post));
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public PostNeighbours getNeighbours(final PostCursor cursor) {
+        @SuppressWarnings("unchecked")
+        final List<Object[]> rows = entityManager.createNamedQuery("PostEntity.getNeighbours")
+                .setParameter("status", Status.published.name())
+                .setParameter("publishedOn", cursor.getPublishedOnAsDate(), TemporalType.DATE)
+                .setParameter("createdAt", cursor.getCreatedAtAsCalendar(), TemporalType.TIMESTAMP)
+                .setParameter("id", cursor.getId())
+                .getResultList();
+
+        Post previous = null;
+        Post next = null;
+        for (Object[] row : rows) {
+            final Post neighbour = new Post((Date) row[1], (String) row[2], (String) row[3], null);
+            if ("p".equals(String.valueOf(row[0]))) {
+                previous = neighbour;
+            } else {
+                next = neighbour;
+            }
+        }
+        return new PostNeighbours(previous, next);
     }
 
     @Override
     @Transactional(readOnly = true)
-    public Optional<PostEntity> getNext(final PostEntity post) {
-        return getRelatedPost("PostEntity.getNext", post);
+    public KeysetPage<PostEntity> findPublishedAfter(final PostCursor cursor, final int size) {
+        final TypedQuery<PostEntity> query = cursor == null
+                ? entityManager.createNamedQuery("PostEntity.findPublished", PostEntity.class)
+                : withCursor(entityManager.createNamedQuery("PostEntity.findPublishedAfter", PostEntity.class), cursor);
+        final List<PostEntity> posts = query
+                .setParameter("status", Status.published)
+                .setMaxResults(size + 1)
+                .getResultList();
+
+        final boolean hasNext = posts.size() > size;
+        final List<PostEntity> content = hasNext ? posts.subList(0, size) : posts;
+        return new KeysetPage<>(
+                content,
+                cursor == null || content.isEmpty() ? null : PostCursor.of(content.get(0)),
+                hasNext ? PostCursor.of(content.get(size - 1)) : null
+        );
     }
 
-    Optional<PostEntity> getRelatedPost(final String query, final PostEntity post) {
-        Optional<PostEntity> rv;
-        try {
-            rv = Optional.of(
-                    entityManager.createNamedQuery(query, PostEntity.class)
-                    .setParameter("id", post.getId())
-                    .setMaxResults(1)
-                    .getSingleResult()
-            );
-        } catch (@SuppressWarnings({"squid:S1166"}) NoResultException e) {
-            // The only reason the query call is implemented manually
-            // is the fact the I cannot use @Query and limiting
-            // the result set in a database agnostic way
-            // (for example through the method name (findXXX) or an annotation)
-            rv = Optional.empty();
+    @Override
+    @Transactional(readOnly = true)
+    public KeysetPage<PostEntity> findPublishedBefore(final PostCursor cursor, final int size) {
+        final List<PostEntity> posts = withCursor(entityManager.createNamedQuery("PostEntity.findPublishedBefore", PostEntity.class), cursor)
+                .setParameter("status", Status.published)
+                .setMaxResults(size + 1)
+                .getResultList();
+
+        if (posts.size() <= size) {
+            return findPublishedAfter(null, size);
+        }
+        final List<PostEntity> content = new ArrayList<>(posts.subList(0, size));
+        Collections.reverse(content);
+        return new KeysetPage<>(content, PostCursor.of(content.get(0)), PostCursor.of(content.get(size - 1)));
+    }
+
+    /**
+     * Runs in a transaction of its own, so that clearing the persistence
+     * context never discards changes of a caller.
+     *
+     * @param action
+     */
+    @Override
+    @Transactional(readOnly = true, propagation = Propagation.REQUIRES_NEW)
+    public void forEachPublished(final Consumer<PostEntity> action) {
+        final org.hibernate.query.Query<PostEntity> query = entityManager.unwrap(Session.class).createNamedQuery("PostEntity.findPublished", PostEntity.class)
+                .setParameter("status", Status.published)
+                .setFetchSize(FETCH_SIZE)
+                .setReadOnly(true);
+        final AtomicInteger count = new AtomicInteger();
+        try (Stream<PostEntity> posts = query.stream()) {
+            posts.forEach(post -> {
+                entityManager.detach(post);
+                action.accept(post);
+                if (count.incrementAndGet() % FETCH_SIZE == 0) {
+                    entityManager.clear();
+                }
+            });
         }
-        return rv;
+    }
+
+    static TypedQuery<PostEntity> withCursor(final TypedQuery<PostEntity> query, final PostCursor cursor) {
+        return query
+                .setParameter("publishedOn", cursor.getPublishedOnAsDate(), TemporalType.DATE)
+                .setParameter("createdAt", cursor.getCreatedAtAsCalendar(), TemporalType.TIMESTAMP)
+                .setParameter("id", cursor.getId());
     }
 
     @Override
     @Transactional(readOnly = true)
     public List<PostEntity> searchByKeyword(final String keyword) {
         final FullTextEntityManager fullTextEntityManager = Search.getFullTextEntityManager(entityManager);
+        // Full text queries are not generic, but return only the entities of
+        // the given class
+        @SuppressWarnings("unchecked")
+        final List<PostEntity> rv = fullTextEntityManager
+                .createFullTextQuery(createKeywordQuery(fullTextEntityManager, keyword), PostEntity.class).getResultList();
+        return rv;
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public List<Post> searchPublishedByKeyword(final String keyword) {
+        final FullTextEntityManager fullTextEntityManager = Search.getFullTextEntityManager(entityManager);
+        @SuppressWarnings("unchecked")
+        final List<Object[]> ids = fullTextEntityManager
+                .createFullTextQuery(createKeywordQuery(fullTextEntityManager, keyword), PostEntity.class)
+                .setProjection(ProjectionConstants.ID)
+                .getResultList();
+        if (ids.isEmpty()) {
+            return Collections.emptyList();
+        }
+        return entityManager.createNamedQuery("PostEntity.findPublishedProjectionsById", Post.class)
+                .setParameter("status", Status.published)
+                .setParameter("ids", ids.stream().map(row -> row[0]).collect(toList()))
+                .getResultList();
+    }
+
+    static Query createKeywordQuery(final FullTextEntityManager fullTextEntityManager, final String keyword) {
         final QueryBuilder queryBuilder = fullTextEntityManager.getSearchFactory().buildQueryBuilder().forEntity(PostEntity.class).get();
-        return fullTextEntityManager
-                .createFullTextQuery(queryBuilder.simpleQueryString()
+        return queryBuilder.simpleQueryString()
                 .onFields("content")
                 .withAndAsDefaultOperator()
                 .matching(keyword)
-                .createQuery(), PostEntity.class).getResultList();
+                .createQuery();
     }
 }
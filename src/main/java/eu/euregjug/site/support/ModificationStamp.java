@@ -0,0 +1,53 @@
+/*
+ * Copyright 2018 EuregJUG.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.euregjug.site.support;
+
+import java.util.Calendar;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+
+/**
+ * Time of the last modification and number of the rows of a table. Cheap to
+ * select and changes whenever a row is added, changed or removed, so that it
+ * can be used to derive validators for conditional requests.
+ */
+@Getter
+@EqualsAndHashCode
+public final class ModificationStamp {
+
+    /**
+     * Stamp of an empty table.
+     */
+    public static final ModificationStamp EMPTY = new ModificationStamp(null, 0L);
+
+    /**
+     * Time of the last modification in milliseconds since the epoch, 0 for
+     * empty tables.
+     */
+    private final long lastModified;
+
+    private final long count;
+
+    public ModificationStamp(final Calendar lastModified, final Long count) {
+        this.lastModified = lastModified == null ? 0 : lastModified.getTimeInMillis();
+        this.count = count == null ? 0 : count;
+    }
+
+    @Override
+    public String toString() {
+        return this.lastModified + "-" + this.count;
+    }
+}
@@ -0,0 +1,32 @@
+/*
+ * Copyright 2018 EuregJUG.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.euregjug.site.support;
+
+import java.util.Collection;
+
+/**
+ * Implemented by values whose size can be estimated by the sizes of their
+ * parts, so that caches can be bounded in bytes without knowing the concrete
+ * types they contain.
+ */
+public interface Weighable {
+
+    /**
+     * @return The parts that make up the bulk of this value, for example
+     * strings, byte arrays or collections thereof
+     */
+    Collection<?> weighedParts();
+}
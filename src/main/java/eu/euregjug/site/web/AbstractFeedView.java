@@ -0,0 +1,351 @@
+/*
+ * Copyright 2018 EuregJUG.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.euregjug.site.web;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import eu.euregjug.site.posts.KeysetPage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import org.springframework.context.MessageSource;
+import org.springframework.web.servlet.support.RequestContextUtils;
+import org.springframework.web.servlet.view.AbstractView;
+
+/**
+ * Base class of all feed views. A feed is assembled from serialized parts:
+ * The head of the feed is serialized once per locale and base url, an entry
+ * once per format and base url. Only the parts depending on the page, like
+ * dates and links to adjacent pages, are serialized on each request.
+ * <br>
+ * Instead of a page of entries, the model may contain an
+ * {@link EntrySource} of all entries. The feed is then written entry by entry
+ * while the entries are read.
+ */
+abstract class AbstractFeedView extends AbstractView {
+
+    /**
+     * Name of the model attribute containing the page of
+     * {@link FeedEntry feed entries} or the source of all entries.
+     */
+    static final String MODEL_ATTRIBUTE = "entries";
+
+    static final String GENERATOR = "https://github.com/EuregJUG-Maas-Rhine/site";
+
+    static final String AUTHOR = "euregjug.eu";
+
+    static final ZoneId UTC = ZoneId.of("UTC");
+
+    static final byte[] EMPTY = new byte[0];
+
+    /**
+     * Woodstox checks that a document has only one root element by default,
+     * which fragments don't have.
+     */
+    private static final String PROPERTY_VALIDATE_STRUCTURE = "com.ctc.wstx.outputValidateStructure";
+
+    private static final XMLOutputFactory XML_OUTPUT_FACTORY = createXmlOutputFactory();
+
+    /**
+     * Number of heads kept in memory, enough for all locales requested
+     * through a few host names.
+     */
+    private static final int MAXIMUM_NUMBER_OF_HEADS = 16;
+
+    /**
+     * Base url, title and description of the feed.
+     */
+    @Getter
+    @RequiredArgsConstructor
+    static final class Metadata {
+
+        private final String baseUrl;
+
+        private final String title;
+
+        private final String description;
+    }
+
+    /**
+     * Date and links of a page of the feed.
+     */
+    @Getter
+    @RequiredArgsConstructor
+    static final class Page {
+
+        /**
+         * Publication date of the newest entry, null if there are no entries.
+         */
+        private final LocalDate updated;
+
+        private final String selfHref;
+
+        private final String previousHref;
+
+        private final String nextHref;
+    }
+
+    /**
+     * Provides all entries of a feed, one after another.
+     */
+    @FunctionalInterface
+    interface EntrySource {
+
+        void forEach(Consumer<FeedEntry> action);
+    }
+
+    @FunctionalInterface
+    interface XmlSerializer {
+
+        void serialize(XMLStreamWriter writer) throws XMLStreamException;
+    }
+
+    private final MessageSource messageSource;
+
+    /**
+     * Serialized heads by locale and base url.
+     */
+    private final Cache<String, byte[]> heads = CacheBuilder.newBuilder().maximumSize(MAXIMUM_NUMBER_OF_HEADS).build();
+
+    AbstractFeedView(final MessageSource messageSource, final String contentType) {
+        this.messageSource = messageSource;
+        super.setContentType(contentType);
+    }
+
+    /**
+     * @param metadata
+     * @return The serialized start of the feed, up to the first entry
+     */
+    abstract byte[] serializeHead(Metadata metadata);
+
+    /**
+     * @param page
+     * @return The serialized parts of the feed that depend on the page
+     */
+    abstract byte[] serializePage(Page page);
+
+    /**
+     * @param entry
+     * @param baseUrl
+     * @return A serialized entry
+     */
+    abstract byte[] serializeEntry(FeedEntry entry, String baseUrl);
+
+    /**
+     * @return Bytes written between two entries
+     */
+    abstract byte[] getSeparator();
+
+    /**
+     * @return The serialized end of the feed
+     */
+    abstract byte[] getFooter();
+
+    /**
+     * @return Extension under which the feed is available
+     */
+    abstract String getExtension();
+
+    /**
+     * Assembles the feed for a page of entries. The parts need to be written
+     * in order.
+     *
+     * @param entries The entries on this page
+     * @param locale Locale of the title and description of the feed
+     * @param baseUrl Absolute url of the site without trailing slash
+     * @param selfHref Absolute url of this page of the feed
+     * @return The serialized parts of the feed
+     */
+    List<byte[]> getFeed(final KeysetPage<FeedEntry> entries, final Locale locale, final String baseUrl, final String selfHref) {
+        final String self = baseUrl + "/feed." + getExtension();
+        final List<byte[]> rv = new ArrayList<>(2 * entries.getContent().size() + 2);
+        rv.add(getHead(locale, baseUrl));
+        rv.add(serializePage(new Page(
+                entries.hasContent() ? entries.getContent().get(0).getPublishedOn() : null,
+                selfHref,
+                entries.hasPrevious() ? self + "?before=" + entries.getPrevious() : null,
+                entries.hasNext() ? self + "?after=" + entries.getNext() : null
+        )));
+        final byte[] separator = getSeparator();
+        for (FeedEntry entry : entries) {
+            if (rv.size() > 2 && separator.length > 0) {
+                rv.add(separator);
+            }
+            rv.add(getSerialized(entry, baseUrl));
+        }
+        rv.add(getFooter());
+        return rv;
+    }
+
+    /**
+     * Writes a feed of all entries of the given source. The head of the feed
+     * is written together with the first entry, as it contains the
+     * publication date of that entry.
+     *
+     * @param source The source of all entries
+     * @param locale Locale of the title and description of the feed
+     * @param baseUrl Absolute url of the site without trailing slash
+     * @param selfHref Absolute url of the feed
+     * @param out Stream to write the feed to
+     * @throws IOException
+     */
+    void writeFeed(final EntrySource source, final Locale locale, final String baseUrl, final String selfHref, final OutputStream out) throws IOException {
+        final byte[] separator = getSeparator();
+        final AtomicBoolean first = new AtomicBoolean(true);
+        try {
+            source.forEach(entry -> {
+                try {
+                    if (first.getAndSet(false)) {
+                        out.write(getHead(locale, baseUrl));
+                        out.write(serializePage(new Page(entry.getPublishedOn(), selfHref, null, null)));
+                    } else {
+                        out.write(separator);
+                    }
+                    out.write(getSerialized(entry, baseUrl));
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        if (first.get()) {
+            out.write(getHead(locale, baseUrl));
+            out.write(serializePage(new Page(null, selfHref, null, null)));
+        }
+        out.write(getFooter());
+    }
+
+    byte[] getHead(final Locale locale, final String baseUrl) {
+        final String key = locale.toLanguageTag() + '|' + baseUrl;
+        byte[] rv = this.heads.getIfPresent(key);
+        if (rv == null) {
+            rv = serializeHead(new Metadata(
+                    baseUrl,
+                    String.format("%s - %s", getMessage("siteTitle", locale), getMessage("siteSubTitle", locale)),
+                    getMessage("feedDescription", locale)
+            ));
+            this.heads.put(key, rv);
+        }
+        return rv;
+    }
+
+    byte[] getSerialized(final FeedEntry entry, final String baseUrl) {
+        return entry.getSerialized(getExtension() + '|' + baseUrl, () -> serializeEntry(entry, baseUrl));
+    }
+
+    String getMessage(final String code, final Locale locale) {
+        return this.messageSource.getMessage(code, null, locale);
+    }
+
+    @Override
+    protected void renderMergedOutputModel(final Map<String, Object> model, final HttpServletRequest request, final HttpServletResponse response) throws IOException {
+        final Object entries = model.get(MODEL_ATTRIBUTE);
+        final String baseUrl = getBaseUrl(request);
+
+        super.setResponseContentType(request, response);
+        response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+        final OutputStream out = response.getOutputStream();
+        if (entries instanceof KeysetPage) {
+            // The model attribute is only ever set by the IndexController
+            @SuppressWarnings("unchecked")
+            final KeysetPage<FeedEntry> page = (KeysetPage<FeedEntry>) entries;
+            final List<byte[]> feed = getFeed(page, RequestContextUtils.getLocale(request), baseUrl, getSelfHref(baseUrl + "/feed." + getExtension(), request));
+            response.setContentLength(feed.stream().mapToInt(part -> part.length).sum());
+            for (byte[] part : feed) {
+                out.write(part);
+            }
+        } else {
+            writeFeed((EntrySource) entries, RequestContextUtils.getLocale(request), baseUrl, baseUrl + "/feed/archive." + getExtension(), out);
+        }
+        response.flushBuffer();
+    }
+
+    static String getBaseUrl(final HttpServletRequest request) {
+        final int port = request.getServerPort();
+        final StringBuilder rv = new StringBuilder(64)
+                .append(request.isSecure() ? "https" : "http")
+                .append("://")
+                .append(request.getServerName());
+        if (!Arrays.asList(80, 443).contains(port)) {
+            rv.append(':').append(port);
+        }
+        return rv.append(request.getContextPath()).toString();
+    }
+
+    static String getSelfHref(final String self, final HttpServletRequest request) {
+        String rv = self;
+        for (String cursor : Arrays.asList("after", "before")) {
+            final String token = request.getParameter(cursor);
+            if (token != null) {
+                rv = String.format("%s?%s=%s", self, cursor, token);
+                break;
+            }
+        }
+        return rv;
+    }
+
+    static XMLOutputFactory createXmlOutputFactory() {
+        final XMLOutputFactory rv = XMLOutputFactory.newFactory();
+        if (rv.isPropertySupported(PROPERTY_VALIDATE_STRUCTURE)) {
+            rv.setProperty(PROPERTY_VALIDATE_STRUCTURE, false);
+        }
+        return rv;
+    }
+
+    static byte[] serializeXml(final XmlSerializer serializer) {
+        final ByteArrayOutputStream rv = new ByteArrayOutputStream(1024);
+        try {
+            final XMLStreamWriter writer = XML_OUTPUT_FACTORY.createXMLStreamWriter(rv, "UTF-8");
+            serializer.serialize(writer);
+            // Completes a pending start tag. The writer is not closed on
+            // purpose, as closing would end all open elements
+            writer.writeCharacters("");
+            writer.flush();
+        } catch (XMLStreamException e) {
+            throw new IllegalStateException(e);
+        }
+        return rv.toByteArray();
+    }
+
+    static void element(final XMLStreamWriter w, final String name, final String value) throws XMLStreamException {
+        w.writeStartElement(name);
+        w.writeCharacters(value);
+        w.writeEndElement();
+    }
+
+    static byte[] bytes(final String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
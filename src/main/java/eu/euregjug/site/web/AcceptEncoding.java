@@ -0,0 +1,51 @@
+/*
+ * Copyright 2018 EuregJUG.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.euregjug.site.web;
+
+/**
+ * Parses the Accept-Encoding header of requests whose responses are sent
+ * compressed by the application itself.
+ */
+final class AcceptEncoding {
+
+    private AcceptEncoding() {
+    }
+
+    /**
+     * @param acceptEncoding Value of the Accept-Encoding header
+     * @return True if gzip is accepted, either explicitly or through a
+     * wildcard, and not refused with a quality of zero
+     */
+    static boolean acceptsGzip(final String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        boolean wildcard = false;
+        for (String coding : acceptEncoding.split(",")) {
+            final String[] parts = coding.trim().split("\\s*;\\s*");
+            boolean accepted = true;
+            for (int i = 1; i < parts.length; ++i) {
+                accepted &= !parts[i].matches("q=0(\\.0*)?");
+            }
+            if ("gzip".equalsIgnoreCase(parts[0])) {
+                return accepted;
+            } else if ("*".equals(parts[0])) {
+                wildcard = accepted;
+            }
+        }
+        return wildcard;
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright 2018 EuregJUG.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.euregjug.site.web;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+import org.springframework.context.MessageSource;
+import org.springframework.stereotype.Component;
+
+/**
+ * Writes a page of the feed as Atom 1.0.
+ */
+@Component("feed.atom")
+final class AtomFeedView extends AbstractFeedView {
+
+    static final String CONTENT_TYPE = "application/atom+xml";
+
+    static final String NAMESPACE_ATOM = "http://www.w3.org/2005/Atom";
+
+    private static final byte[] FOOTER = bytes("</feed>");
+
+    AtomFeedView(final MessageSource messageSource) {
+        super(messageSource, CONTENT_TYPE);
+    }
+
+    @Override
+    byte[] serializeHead(final Metadata metadata) {
+        return serializeXml(w -> {
+            w.writeStartDocument("UTF-8", "1.0");
+            w.writeStartElement("feed");
+            w.writeDefaultNamespace(NAMESPACE_ATOM);
+            element(w, "title", metadata.getTitle());
+            element(w, "subtitle", metadata.getDescription());
+            element(w, "id", metadata.getBaseUrl() + "/");
+            link(w, "alternate", "text/html", metadata.getBaseUrl());
+            w.writeStartElement("generator");
+            w.writeAttribute("uri", GENERATOR);
+            w.writeCharacters("EuregJUG");
+            w.writeEndElement();
+            w.writeStartElement("author");
+            element(w, "name", AUTHOR);
+            w.writeEndElement();
+        });
+    }
+
+    @Override
+    byte[] serializePage(final Page page) {
+        return serializeXml(w -> {
+            // The feed must have an updated element, even without entries
+            element(w, "updated", formatDate(page.getUpdated() == null ? LocalDate.of(1970, 1, 1) : page.getUpdated()));
+            link(w, "self", CONTENT_TYPE, page.getSelfHref());
+            if (page.getPreviousHref() != null) {
+                link(w, "previous", CONTENT_TYPE, page.getPreviousHref());
+            }
+            if (page.getNextHref() != null) {
+                link(w, "next", CONTENT_TYPE, page.getNextHref());
+            }
+        });
+    }
+
+    @Override
+    byte[] serializeEntry(final FeedEntry entry, final String baseUrl) {
+        final String link = baseUrl + entry.getPermalink();
+        final String date = formatDate(entry.getPublishedOn());
+        return serializeXml(w -> {
+            w.writeStartElement("entry");
+            element(w, "title", entry.getTitle());
+            element(w, "id", link);
+            link(w, "alternate", "text/html", link);
+            element(w, "published", date);
+            element(w, "updated", date);
+            w.writeStartElement("content");
+            w.writeAttribute("type", "html");
+            w.writeCharacters(String.valueOf(entry.getContent()));
+            w.writeEndElement();
+            w.writeEndElement();
+        });
+    }
+
+    @Override
+    byte[] getSeparator() {
+        return EMPTY;
+    }
+
+    @Override
+    byte[] getFooter() {
+        return FOOTER;
+    }
+
+    @Override
+    String getExtension() {
+        return "atom";
+    }
+
+    static void link(final XMLStreamWriter w, final String rel, final String type, final String href) throws XMLStreamException {
+        w.writeEmptyElement("link");
+        w.writeAttribute("rel", rel);
+        w.writeAttribute("type", type);
+        w.writeAttribute("href", href);
+    }
+
+    static String formatDate(final LocalDate date) {
+        return DateTimeFormatter.ISO_INSTANT.format(date.atStartOfDay(UTC));
+    }
+}
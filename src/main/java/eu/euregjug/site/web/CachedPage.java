@@ -0,0 +1,63 @@
+/*
+ * Copyright 2018 EuregJUG.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.euregjug.site.web;
+
+import eu.euregjug.site.support.Weighable;
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Set;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * A rendered page together with the tags of the data it depends on.
+ */
+@Getter
+@RequiredArgsConstructor
+public final class CachedPage implements Serializable, Weighable {
+
+    private static final long serialVersionUID = 2263425376306153217L;
+
+    private final String contentType;
+
+    private final String contentLanguage;
+
+    private final byte[] body;
+
+    /**
+     * Entity tag of the page, may be null.
+     */
+    private final String etag;
+
+    /**
+     * Time of the last modification of the page, -1 if unknown.
+     */
+    private final long lastModified;
+
+    private final Set<String> tags;
+
+    /**
+     * Value of the invalidation sequence when rendering of this page
+     * started.
+     */
+    private final long sequence;
+
+    @Override
+    public Collection<?> weighedParts() {
+        return Arrays.asList(this.contentType, this.body, this.tags);
+    }
+}
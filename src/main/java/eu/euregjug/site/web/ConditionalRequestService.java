@@ -0,0 +1,173 @@
+/*
+ * Copyright 2018 EuregJUG.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.euregjug.site.web;
+
+import eu.euregjug.site.events.EventRepository;
+import eu.euregjug.site.links.LinkRepository;
+import eu.euregjug.site.posts.PostRenditionRefreshedEvent;
+import eu.euregjug.site.posts.PostRepository;
+import eu.euregjug.site.support.ModificationStamp;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Supplier;
+import javax.servlet.http.HttpServletRequest;
+import org.springframework.context.event.EventListener;
+import org.springframework.context.i18n.LocaleContextHolder;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Service;
+import org.springframework.util.DigestUtils;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.support.RequestContextUtils;
+
+/**
+ * Derives validators for pages from the modification stamps of the content
+ * they show. The stamps are selected with one aggregate query per table, so
+ * that a request can be answered with 304 before anything is loaded or
+ * rendered.
+ */
+@Service
+class ConditionalRequestService {
+
+    /**
+     * The content a page can depend on.
+     */
+    enum Content {
+
+        posts, events, links
+    }
+
+    /**
+     * How the representation of a page varies between clients.
+     */
+    enum Representation {
+
+        /**
+         * Pages that are localized and may be negotiated by the Accept
+         * header. A date cannot tell their representations apart, so they
+         * are validated by entity tag only.
+         */
+        page,
+        /**
+         * Calendars, which are the same for all clients but may be sent
+         * compressed. They are validated by date and by a weak entity tag
+         * shared by all encodings.
+         */
+        calendar
+    }
+
+    private final PostRepository postRepository;
+
+    private final EventRepository eventRepository;
+
+    private final LinkRepository linkRepository;
+
+    /**
+     * Templates may change with every deployment, so validators are only
+     * valid for the lifetime of an instance.
+     */
+    private final long startedAt = System.currentTimeMillis();
+
+    /**
+     * Posts are rendered after their change has been committed, so pages
+     * with posts change again once the new rendition is available.
+     */
+    private volatile long renditionRefreshedAt;
+
+    ConditionalRequestService(final PostRepository postRepository, final EventRepository eventRepository, final LinkRepository linkRepository) {
+        this.postRepository = postRepository;
+        this.eventRepository = eventRepository;
+        this.linkRepository = linkRepository;
+    }
+
+    /**
+     * Checks the validators of the given request against the current state
+     * of the given content and sets the validators on the response. The list
+     * of upcoming events changes every day, so pages with events change at
+     * midnight at the latest. Requests carrying flash attributes after a
+     * redirect are never answered with 304, as the page shows those
+     * attributes.
+     *
+     * @param request The current request
+     * @param representation How the requested page varies between clients
+     * @param contents The content the requested page depends on
+     * @return True if the request has been answered with 304
+     */
+    boolean checkNotModified(final WebRequest request, final Representation representation, final Content... contents) {
+        if (hasFlashAttributes(request)) {
+            return false;
+        }
+        final StringBuilder version = new StringBuilder(Long.toString(this.startedAt, Character.MAX_RADIX));
+        if (representation == Representation.page) {
+            version
+                    .append('|').append(LocaleContextHolder.getLocale().toLanguageTag())
+                    .append('|').append(request.getHeader(HttpHeaders.ACCEPT));
+        }
+        long lastModified = this.startedAt;
+        for (Content content : contents) {
+            final ModificationStamp stamp = getModificationStamp(content);
+            version.append('|').append(content).append(':').append(stamp);
+            lastModified = Math.max(lastModified, stamp.getLastModified());
+            if (content == Content.posts) {
+                version.append('|').append(this.renditionRefreshedAt);
+                lastModified = Math.max(lastModified, this.renditionRefreshedAt);
+            }
+            if (content == Content.events) {
+                final LocalDate today = LocalDate.now();
+                version.append('|').append(today);
+                lastModified = Math.max(lastModified, today.atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli());
+            }
+        }
+        final String etag = "\"" + DigestUtils.md5DigestAsHex(version.toString().getBytes(StandardCharsets.UTF_8)) + "\"";
+        if (representation == Representation.page) {
+            return request.checkNotModified(etag);
+        }
+        return request.checkNotModified("W/" + etag, lastModified);
+    }
+
+    static boolean hasFlashAttributes(final WebRequest request) {
+        final HttpServletRequest servletRequest = request instanceof NativeWebRequest ? ((NativeWebRequest) request).getNativeRequest(HttpServletRequest.class) : null;
+        if (servletRequest == null) {
+            return false;
+        }
+        final Map<String, ?> flashMap = RequestContextUtils.getInputFlashMap(servletRequest);
+        return flashMap != null && !flashMap.isEmpty();
+    }
+
+    @EventListener
+    public void onPostRenditionRefreshed(final PostRenditionRefreshedEvent event) {
+        this.renditionRefreshedAt = System.currentTimeMillis();
+    }
+
+    ModificationStamp getModificationStamp(final Content content) {
+        final Supplier<ModificationStamp> query;
+        switch (content) {
+            case posts:
+                query = this.postRepository::getModificationStamp;
+                break;
+            case events:
+                query = this.eventRepository::getModificationStamp;
+                break;
+            default:
+                query = this.linkRepository::getModificationStamp;
+                break;
+        }
+        return Optional.ofNullable(query.get()).orElse(ModificationStamp.EMPTY);
+    }
+}
@@ -0,0 +1,342 @@
+/*
+ * Copyright 2018 EuregJUG.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.euregjug.site.web;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import eu.euregjug.site.events.EventChangedEvent;
+import eu.euregjug.site.events.EventEntity;
+import eu.euregjug.site.events.EventRepository;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.temporal.ChronoUnit;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.GregorianCalendar;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+/**
+ * Assembles the calendar of upcoming events from cached, serialized VEVENT
+ * fragments. The fragment of an event is only serialized again after the
+ * event changed, the complete calendar after any event changed or when the
+ * day changed, as that changes the list of upcoming events.
+ * <br>
+ * The registration url is derived from the request, so both caches are
+ * bounded in size and expire after a while, which also picks up changes made
+ * through other instances.
+ * <br>
+ * Calendars of arbitrary date ranges are not cached but streamed row by row
+ * from the database into the response.
+ */
+@Service
+class EventCalendarService {
+
+    /**
+     * A complete calendar, plain and compressed with gzip.
+     */
+    @Getter
+    @RequiredArgsConstructor
+    static final class RenderedCalendar {
+
+        private final LocalDate renderedOn;
+
+        /**
+         * Generation of the events this calendar has been assembled from.
+         */
+        private final long generation;
+
+        private final byte[] content;
+
+        private final byte[] gzippedContent;
+    }
+
+    /**
+     * The parts of an event that end up in a calendar.
+     */
+    @Getter
+    @RequiredArgsConstructor
+    static final class CalendarEntry {
+
+        private final Integer id;
+
+        private final Instant heldOn;
+
+        private final Instant createdAt;
+
+        private final Integer duration;
+
+        private final String name;
+
+        private final String speaker;
+
+        private final String description;
+
+        private final String location;
+
+        static CalendarEntry of(final EventEntity event) {
+            return new CalendarEntry(
+                    event.getId(), event.getHeldOn().toInstant(), event.getCreatedAt().toInstant(),
+                    event.getDuration(), event.getName(), event.getSpeaker(), event.getDescription(), event.getLocation()
+            );
+        }
+
+        /**
+         * @param row A row as selected by
+         * {@link EventRepository#streamCalendarEntriesHeldBetween(java.util.Calendar, java.util.Calendar)}
+         * @return
+         */
+        static CalendarEntry of(final Object[] row) {
+            return new CalendarEntry(
+                    (Integer) row[0], toInstant(row[1]), toInstant(row[2]),
+                    (Integer) row[3], (String) row[4], (String) row[5], (String) row[6], (String) row[7]
+            );
+        }
+
+        static Instant toInstant(final Object value) {
+            return value instanceof Calendar ? ((Calendar) value).toInstant() : ((Date) value).toInstant();
+        }
+    }
+
+    @FunctionalInterface
+    interface Serializer {
+
+        void serialize(ICalendarWriter writer) throws IOException;
+    }
+
+    private static final String LOCATION_SEPARATOR = ", ";
+
+    private static final byte[] HEADER = serialize(EventCalendarService::writeHeader);
+
+    private static final byte[] FOOTER = serialize(EventCalendarService::writeFooter);
+
+    private static final int MAXIMUM_NUMBER_OF_CALENDARS = 8;
+
+    private static final int MAXIMUM_NUMBER_OF_FRAGMENTS = 512;
+
+    private final EventRepository eventRepository;
+
+    /**
+     * Serialized events by id, modification date and registration url. An
+     * event that changed gets a new key, so that a fragment serialized
+     * during the change is never used again.
+     */
+    private final Cache<List<Object>, byte[]> fragments;
+
+    /**
+     * Complete calendars by registration url.
+     */
+    private final Cache<String, RenderedCalendar> calendars;
+
+    /**
+     * Incremented on every change, calendars of an older generation are not
+     * used any more.
+     */
+    private final AtomicLong generation = new AtomicLong();
+
+    /**
+     * Creates a new calendar service.
+     *
+     * @param eventRepository
+     * @param expiration Time in seconds after which cached calendars and
+     * fragments are assembled again
+     */
+    EventCalendarService(
+            final EventRepository eventRepository,
+            @Value("${euregjug.events.calendar-expiration:300}") final long expiration
+    ) {
+        this.eventRepository = eventRepository;
+        this.fragments = CacheBuilder.newBuilder().maximumSize(MAXIMUM_NUMBER_OF_FRAGMENTS).expireAfterWrite(expiration, TimeUnit.SECONDS).build();
+        this.calendars = CacheBuilder.newBuilder().maximumSize(MAXIMUM_NUMBER_OF_CALENDARS).expireAfterWrite(expiration, TimeUnit.SECONDS).build();
+    }
+
+    /**
+     * @param registrationUrl Base url of the registration pages, the id of
+     * an event is appended
+     * @return The calendar of all upcoming events
+     */
+    RenderedCalendar getCalendar(final String registrationUrl) {
+        final LocalDate today = LocalDate.now();
+        final long startedAt = this.generation.get();
+        final RenderedCalendar cached = this.calendars.getIfPresent(registrationUrl);
+        if (cached != null && cached.getRenderedOn().equals(today) && cached.getGeneration() == startedAt) {
+            return cached;
+        }
+
+        final List<EventEntity> events = this.eventRepository.findUpcomingEvents();
+        final ByteArrayOutputStream content = new ByteArrayOutputStream(HEADER.length + FOOTER.length + 1024 * events.size());
+        content.write(HEADER, 0, HEADER.length);
+        for (EventEntity event : events) {
+            final byte[] fragment = getFragment(event, registrationUrl);
+            content.write(fragment, 0, fragment.length);
+        }
+        content.write(FOOTER, 0, FOOTER.length);
+
+        final RenderedCalendar rv = new RenderedCalendar(today, startedAt, content.toByteArray(), gzip(content.toByteArray()));
+        this.calendars.put(registrationUrl, rv);
+        return rv;
+    }
+
+    /**
+     * @param event
+     * @param registrationUrl Base url of the registration pages, the id of
+     * an event is appended
+     * @return A calendar containing only the given event
+     */
+    RenderedCalendar getCalendar(final EventEntity event, final String registrationUrl) {
+        final byte[] fragment = getFragment(event, registrationUrl);
+        final ByteArrayOutputStream content = new ByteArrayOutputStream(HEADER.length + fragment.length + FOOTER.length);
+        content.write(HEADER, 0, HEADER.length);
+        content.write(fragment, 0, fragment.length);
+        content.write(FOOTER, 0, FOOTER.length);
+        return new RenderedCalendar(LocalDate.now(), this.generation.get(), content.toByteArray(), gzip(content.toByteArray()));
+    }
+
+    /**
+     * Writes a calendar of all events held between {@code from} and
+     * {@code to} (both inclusive) to {@code out}. The events are read and
+     * written one at a time, only the buffer of the writer is held in memory.
+     *
+     * @param from First day of the range
+     * @param to Last day of the range
+     * @param registrationUrl Base url of the registration pages, the id of
+     * an event is appended
+     * @param out Stream to write the calendar to, will not be closed
+     * @throws IOException
+     */
+    @Transactional(readOnly = true)
+    public void writeCalendar(final LocalDate from, final LocalDate to, final String registrationUrl, final OutputStream out) throws IOException {
+        final ICalendarWriter writer = new ICalendarWriter(out);
+        writeHeader(writer);
+        try (Stream<Object[]> rows = this.eventRepository.streamCalendarEntriesHeldBetween(startOf(from), startOf(to.plusDays(1)))) {
+            for (Object[] row : (Iterable<Object[]>) rows::iterator) {
+                writeEvent(writer, CalendarEntry.of(row), registrationUrl);
+            }
+        }
+        writeFooter(writer);
+        writer.flush();
+    }
+
+    byte[] getFragment(final EventEntity event, final String registrationUrl) {
+        final Calendar updatedAt = event.getUpdatedAt();
+        final List<Object> key = Arrays.asList(event.getId(), updatedAt == null ? null : updatedAt.getTimeInMillis(), registrationUrl);
+        byte[] rv = this.fragments.getIfPresent(key);
+        if (rv == null) {
+            rv = serialize(w -> writeEvent(w, CalendarEntry.of(event), registrationUrl));
+            this.fragments.put(key, rv);
+        }
+        return rv;
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onEventChanged(final EventChangedEvent event) {
+        this.generation.incrementAndGet();
+        this.fragments.asMap().keySet().removeIf(key -> event.getId().equals(key.get(0)));
+        this.calendars.invalidateAll();
+    }
+
+    static Calendar startOf(final LocalDate day) {
+        return GregorianCalendar.from(day.atStartOfDay(ZoneId.systemDefault()));
+    }
+
+    static void writeHeader(final ICalendarWriter w) throws IOException {
+        w
+                .property("BEGIN", "VCALENDAR")
+                .property("VERSION", "2.0")
+                .property("PRODID", "http://www.euregjug.eu/events");
+    }
+
+    static void writeFooter(final ICalendarWriter w) throws IOException {
+        w.property("END", "VCALENDAR");
+    }
+
+    static void writeEvent(final ICalendarWriter w, final CalendarEntry event, final String registrationUrl) throws IOException {
+        final Instant heldOn = event.getHeldOn();
+        w
+                .property("BEGIN", "VEVENT")
+                .property("UID", event.getId() + "@euregjug.eu")
+                .property("ORGANIZER", "EuregJUG")
+                .utcDateTime("DTSTAMP", event.getCreatedAt())
+                .utcDateTime("DTSTART", heldOn)
+                .utcDateTime("DTEND", heldOn.plus(Optional.ofNullable(event.getDuration()).orElse(120), ChronoUnit.MINUTES));
+        if (event.getSpeaker() == null) {
+            w.text("SUMMARY", event.getName());
+        } else {
+            w.text("SUMMARY", event.getName(), " (", event.getSpeaker(), ")");
+        }
+        w
+                .text("DESCRIPTION", event.getDescription())
+                .property("URL", registrationUrl + event.getId());
+        if (event.getLocation() != null) {
+            w.text("LOCATION", joinLines(event.getLocation()));
+        }
+        w.property("END", "VEVENT");
+    }
+
+    /**
+     * Joins the non empty lines of a multiline location with a comma.
+     *
+     * @param location
+     * @return The location as separate parts to be escaped
+     */
+    static CharSequence[] joinLines(final String location) {
+        final String[] lines = location.split("[\\r\\n]+");
+        final CharSequence[] rv = new CharSequence[Math.max(0, 2 * lines.length - 1)];
+        for (int i = 0; i < lines.length; ++i) {
+            if (i > 0) {
+                rv[2 * i - 1] = LOCATION_SEPARATOR;
+            }
+            rv[2 * i] = lines[i];
+        }
+        return rv;
+    }
+
+    static byte[] serialize(final Serializer serializer) {
+        final ByteArrayOutputStream rv = new ByteArrayOutputStream(1024);
+        try (ICalendarWriter writer = new ICalendarWriter(rv)) {
+            serializer.serialize(writer);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return rv.toByteArray();
+    }
+
+    static byte[] gzip(final byte[] content) {
+        final ByteArrayOutputStream rv = new ByteArrayOutputStream(content.length / 4 + 64);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(rv)) {
+            gzip.write(content);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return rv.toByteArray();
+    }
+}
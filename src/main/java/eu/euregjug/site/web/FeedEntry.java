@@ -0,0 +1,101 @@
+/*
+ * Copyright 2018 EuregJUG.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.euregjug.site.web;
+
+import eu.euregjug.site.posts.Post;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+import lombok.AccessLevel;
+import lombok.Getter;
+
+/**
+ * A rendered post as it appears in all feeds. The serialized forms of an
+ * entry are stored alongside it, so that each format serializes an entry only
+ * once per base url. The base url is taken from the request, so only a
+ * limited number of serialized forms is stored.
+ */
+@Getter
+final class FeedEntry {
+
+    /**
+     * Enough for all formats requested through a few host names.
+     */
+    static final int MAXIMUM_NUMBER_OF_SERIALIZED_FORMS = 8;
+
+    private static final DateTimeFormatter PERMALINK_DATE_FORMATTER = DateTimeFormatter.ofPattern("/y/M/d", Locale.ENGLISH);
+
+    /**
+     * Permalink of the post relative to the base url of the site.
+     */
+    private final String permalink;
+
+    private final LocalDate publishedOn;
+
+    private final String title;
+
+    /**
+     * The rendered content of the post.
+     */
+    private final String content;
+
+    @Getter(AccessLevel.NONE)
+    private final Map<String, byte[]> serialized = new ConcurrentHashMap<>();
+
+    FeedEntry(final Post post) {
+        this.permalink = getPermalink(post);
+        this.publishedOn = post.getPublishedOn();
+        this.title = post.getTitle();
+        this.content = post.getContent();
+    }
+
+    /**
+     * @param post
+     * @return The permalink of the given post relative to the base url
+     */
+    static String getPermalink(final Post post) {
+        return PERMALINK_DATE_FORMATTER.format(post.getPublishedOn()) + '/' + post.getSlug();
+    }
+
+    /**
+     * @param post
+     * @return True if this entry has been created from the same version of
+     * the given post
+     */
+    boolean isFor(final Post post) {
+        return this.publishedOn.equals(post.getPublishedOn())
+                && this.title.equals(post.getTitle())
+                && Objects.equals(this.content, post.getContent());
+    }
+
+    /**
+     * @param key Format and base url
+     * @param serializer Used to serialize the entry if there is no serialized
+     * form for the given key yet
+     * @return The serialized entry, stored only if there is room left
+     */
+    byte[] getSerialized(final String key, final Supplier<byte[]> serializer) {
+        byte[] rv = this.serialized.get(key);
+        if (rv == null) {
+            rv = this.serialized.size() < MAXIMUM_NUMBER_OF_SERIALIZED_FORMS ? this.serialized.computeIfAbsent(key, k -> serializer.get()) : serializer.get();
+        }
+        return rv;
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright 2018 EuregJUG.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.euregjug.site.web;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import eu.euregjug.site.posts.KeysetPage;
+import eu.euregjug.site.posts.Post;
+import eu.euregjug.site.posts.PostCursor;
+import eu.euregjug.site.posts.PostEntity;
+import eu.euregjug.site.posts.PostRenderingService;
+import eu.euregjug.site.posts.PostRenditionRefreshedEvent;
+import eu.euregjug.site.posts.PostRepository;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+/**
+ * Provides the model shared by all feed formats: Pages of rendered posts as
+ * {@link FeedEntry feed entries}. Pages are selected and rendered only once
+ * for all formats until a post changes or they expire, which picks up changes
+ * made through other instances. The entries of all published posts are
+ * provided one after another for exporting the whole feed.
+ */
+@Service
+class FeedService {
+
+    static final int ENTRIES_PER_PAGE = 5;
+
+    /**
+     * Number of pages kept in memory. Most readers only ever request the
+     * first page.
+     */
+    private static final int MAXIMUM_NUMBER_OF_PAGES = 64;
+
+    private final PostRepository postRepository;
+
+    private final PostRenderingService postRenderingService;
+
+    /**
+     * Pages of entries by cursors.
+     */
+    private final Cache<String, KeysetPage<FeedEntry>> pages;
+
+    /**
+     * Entries by permalink.
+     */
+    private final Cache<String, FeedEntry> entries;
+
+    /**
+     * Incremented on every change, so that pages selected during a change
+     * are not cached.
+     */
+    private final AtomicLong generation = new AtomicLong();
+
+    /**
+     * Creates a new feed service.
+     *
+     * @param postRepository
+     * @param postRenderingService
+     * @param expiration Time in seconds after which pages are selected again
+     */
+    FeedService(
+            final PostRepository postRepository,
+            final PostRenderingService postRenderingService,
+            @Value("${euregjug.feeds.expiration:300}") final long expiration
+    ) {
+        this.postRepository = postRepository;
+        this.postRenderingService = postRenderingService;
+        this.pages = CacheBuilder.newBuilder().maximumSize(MAXIMUM_NUMBER_OF_PAGES).expireAfterWrite(expiration, TimeUnit.SECONDS).build();
+        this.entries = CacheBuilder.newBuilder().maximumSize(MAXIMUM_NUMBER_OF_PAGES * ENTRIES_PER_PAGE).expireAfterWrite(expiration, TimeUnit.SECONDS).build();
+    }
+
+    /**
+     * Selects a page of entries like the index does: {@code after} selects
+     * the posts older than the cursor, {@code before} the posts newer than
+     * the cursor.
+     *
+     * @param after
+     * @param before
+     * @return A page of feed entries
+     */
+    KeysetPage<FeedEntry> getEntries(final PostCursor after, final PostCursor before) {
+        final String key = after + "|" + before;
+        KeysetPage<FeedEntry> rv = this.pages.getIfPresent(key);
+        if (rv == null) {
+            final long startedAt = this.generation.get();
+            final KeysetPage<PostEntity> posts = before == null
+                    ? this.postRepository.findPublishedAfter(after, ENTRIES_PER_PAGE)
+                    : this.postRepository.findPublishedBefore(before, ENTRIES_PER_PAGE);
+            rv = posts.map(this.postRenderingService::render).map(this::getEntry);
+            if (this.generation.get() == startedAt) {
+                this.pages.put(key, rv);
+            }
+        }
+        return rv;
+    }
+
+    /**
+     * Passes entries for all published posts, newest first, to the given
+     * action. Entries already known from the pages are reused, all others are
+     * not kept, so that the memory needed doesn't depend on the number of
+     * posts.
+     *
+     * @param action
+     */
+    void forEachEntry(final Consumer<FeedEntry> action) {
+        this.postRepository.forEachPublished(postEntity -> {
+            final Post post = this.postRenderingService.render(postEntity);
+            final FeedEntry entry = this.entries.getIfPresent(FeedEntry.getPermalink(post));
+            action.accept(entry != null && entry.isFor(post) ? entry : new FeedEntry(post));
+        });
+    }
+
+    FeedEntry getEntry(final Post post) {
+        return this.entries.asMap().compute(
+                FeedEntry.getPermalink(post),
+                (permalink, entry) -> entry == null || !entry.isFor(post) ? new FeedEntry(post) : entry
+        );
+    }
+
+    /**
+     * Drops all pages and entries once the new rendition of a changed post is
+     * in the cache.
+     *
+     * @param event
+     */
+    @EventListener
+    public void onPostRenditionRefreshed(final PostRenditionRefreshedEvent event) {
+        this.generation.incrementAndGet();
+        this.pages.invalidateAll();
+        this.entries.invalidateAll();
+    }
+}
@@ -0,0 +1,242 @@
+/*
+ * Copyright 2018 EuregJUG.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.euregjug.site.web;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+
+/**
+ * Writes iCalendar (RFC 5545) content lines directly as UTF-8 to a stream.
+ * Lines are folded after 75 octets without splitting multi-byte characters,
+ * text values are escaped. The writer uses one buffer for the whole stream
+ * and doesn't create intermediate strings.
+ */
+final class ICalendarWriter implements Closeable {
+
+    /**
+     * Maximum length of a line in octets, excluding the line break.
+     */
+    static final int MAX_LINE_LENGTH = 75;
+
+    private static final byte[] LINE_BREAK = {'\r', '\n'};
+
+    private static final byte[] FOLD = {'\r', '\n', ' '};
+
+    private final OutputStream out;
+
+    private final byte[] buffer = new byte[8192];
+
+    private int position;
+
+    private int lineLength;
+
+    ICalendarWriter(final OutputStream out) {
+        this.out = out;
+    }
+
+    /**
+     * Writes a property whose value must not be escaped.
+     *
+     * @param name
+     * @param value
+     * @return This writer
+     * @throws IOException
+     */
+    ICalendarWriter property(final String name, final CharSequence value) throws IOException {
+        startProperty(name);
+        for (int i = 0; i < value.length(); ++i) {
+            append(value.charAt(i));
+        }
+        return endLine();
+    }
+
+    /**
+     * Writes a property with a value of type text. Backslashes, semicolons,
+     * commas and line breaks are escaped.
+     *
+     * @param name
+     * @param value
+     * @return This writer
+     * @throws IOException
+     */
+    ICalendarWriter text(final String name, final CharSequence value) throws IOException {
+        startProperty(name);
+        return appendText(value).endLine();
+    }
+
+    /**
+     * Writes a property with a value of type text. The value is composed of
+     * several parts, which are escaped individually.
+     *
+     * @param name
+     * @param values
+     * @return This writer
+     * @throws IOException
+     */
+    ICalendarWriter text(final String name, final CharSequence... values) throws IOException {
+        startProperty(name);
+        for (CharSequence value : values) {
+            appendText(value);
+        }
+        return endLine();
+    }
+
+    /**
+     * Writes a property with a value of type date-time in UTC.
+     *
+     * @param name
+     * @param instant
+     * @return This writer
+     * @throws IOException
+     */
+    ICalendarWriter utcDateTime(final String name, final Instant instant) throws IOException {
+        final LocalDateTime dateTime = LocalDateTime.ofInstant(instant, ZoneOffset.UTC);
+        startProperty(name);
+        appendDigits(dateTime.getYear(), 4);
+        appendDigits(dateTime.getMonthValue(), 2);
+        appendDigits(dateTime.getDayOfMonth(), 2);
+        append('T');
+        appendDigits(dateTime.getHour(), 2);
+        appendDigits(dateTime.getMinute(), 2);
+        appendDigits(dateTime.getSecond(), 2);
+        append('Z');
+        return endLine();
+    }
+
+    private void startProperty(final String name) throws IOException {
+        for (int i = 0; i < name.length(); ++i) {
+            append(name.charAt(i));
+        }
+        append(':');
+    }
+
+    private ICalendarWriter appendText(final CharSequence value) throws IOException {
+        for (int i = 0; i < value.length(); ++i) {
+            final char c = value.charAt(i);
+            switch (c) {
+                case '\\':
+                case ';':
+                case ',':
+                    append('\\');
+                    append(c);
+                    break;
+                case '\r':
+                    if (i + 1 < value.length() && value.charAt(i + 1) == '\n') {
+                        ++i;
+                    }
+                    append('\\');
+                    append('n');
+                    break;
+                case '\n':
+                    append('\\');
+                    append('n');
+                    break;
+                default:
+                    if (Character.isHighSurrogate(c) && i + 1 < value.length()) {
+                        appendCodePoint(Character.toCodePoint(c, value.charAt(++i)));
+                    } else {
+                        append(c);
+                    }
+            }
+        }
+        return this;
+    }
+
+    private void appendDigits(final int value, final int digits) throws IOException {
+        int divisor = 1;
+        for (int i = 1; i < digits; ++i) {
+            divisor *= 10;
+        }
+        for (int remainder = value; divisor > 0; divisor /= 10) {
+            append((char) ('0' + remainder / divisor % 10));
+        }
+    }
+
+    private void append(final char c) throws IOException {
+        appendCodePoint(Character.isSurrogate(c) ? '?' : c);
+    }
+
+    private void appendCodePoint(final int codePoint) throws IOException {
+        final int octets;
+        if (codePoint < 0x80) {
+            octets = 1;
+        } else if (codePoint < 0x800) {
+            octets = 2;
+        } else if (codePoint < 0x10000) {
+            octets = 3;
+        } else {
+            octets = 4;
+        }
+        if (this.lineLength + octets > MAX_LINE_LENGTH) {
+            write(FOLD);
+            this.lineLength = 1;
+        }
+        ensureCapacity(octets);
+        if (octets == 1) {
+            this.buffer[this.position++] = (byte) codePoint;
+        } else if (octets == 2) {
+            this.buffer[this.position++] = (byte) (0xC0 | codePoint >> 6);
+            this.buffer[this.position++] = (byte) (0x80 | codePoint & 0x3F);
+        } else if (octets == 3) {
+            this.buffer[this.position++] = (byte) (0xE0 | codePoint >> 12);
+            this.buffer[this.position++] = (byte) (0x80 | codePoint >> 6 & 0x3F);
+            this.buffer[this.position++] = (byte) (0x80 | codePoint & 0x3F);
+        } else {
+            this.buffer[this.position++] = (byte) (0xF0 | codePoint >> 18);
+            this.buffer[this.position++] = (byte) (0x80 | codePoint >> 12 & 0x3F);
+            this.buffer[this.position++] = (byte) (0x80 | codePoint >> 6 & 0x3F);
+            this.buffer[this.position++] = (byte) (0x80 | codePoint & 0x3F);
+        }
+        this.lineLength += octets;
+    }
+
+    private ICalendarWriter endLine() throws IOException {
+        write(LINE_BREAK);
+        this.lineLength = 0;
+        return this;
+    }
+
+    private void write(final byte[] bytes) throws IOException {
+        ensureCapacity(bytes.length);
+        System.arraycopy(bytes, 0, this.buffer, this.position, bytes.length);
+        this.position += bytes.length;
+    }
+
+    private void ensureCapacity(final int octets) throws IOException {
+        if (this.position + octets > this.buffer.length) {
+            drain();
+        }
+    }
+
+    private void drain() throws IOException {
+        this.out.write(this.buffer, 0, this.position);
+        this.position = 0;
+    }
+
+    void flush() throws IOException {
+        drain();
+        this.out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        flush();
+    }
+}
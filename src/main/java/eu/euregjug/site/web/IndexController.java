@@ -24,11 +24,17 @@ import eu.euregjug.site.events.RegistrationService;
 import eu.euregjug.site.events.RegistrationService.InvalidRegistrationException;
 import eu.euregjug.site.links.LinkEntity;
 import eu.euregjug.site.links.LinkRepository;
+import eu.euregjug.site.posts.KeysetPage;
 import eu.euregjug.site.posts.Post;
+import eu.euregjug.site.posts.PostArchiveService;
+import eu.euregjug.site.posts.PostCursor;
 import eu.euregjug.site.posts.PostEntity;
-import eu.euregjug.site.posts.PostEntity.Status;
+import eu.euregjug.site.posts.PostNeighbours;
 import eu.euregjug.site.posts.PostRenderingService;
 import eu.euregjug.site.posts.PostRepository;
+import eu.euregjug.site.support.ResourceNotFoundException;
+import eu.euregjug.site.web.ConditionalRequestService.Content;
+import eu.euregjug.site.web.ConditionalRequestService.Representation;
 import java.time.DateTimeException;
 import java.time.LocalDate;
 import java.time.ZoneId;
@@ -41,16 +47,19 @@ import java.util.Optional;
 import java.util.TreeMap;
 import javax.servlet.http.HttpServletRequest;
 import javax.validation.Valid;
-import org.springframework.data.domain.PageRequest;
-import org.springframework.data.domain.Sort;
-import org.springframework.data.domain.Sort.Direction;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.format.annotation.DateTimeFormat.ISO;
+import org.springframework.http.server.ServletServerHttpRequest;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.validation.BindingResult;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import org.springframework.web.servlet.mvc.support.RedirectAttributes;
+import org.springframework.web.util.UriComponentsBuilder;
 
 import static java.util.Comparator.reverseOrder;
 import static java.util.stream.Collectors.toList;
@@ -80,6 +89,22 @@ class IndexController {
 
     private static final String ATTRIBUTE_EVENT = "event";
 
+    private static final String ATTRIBUTE_CALENDAR = "calendar";
+
+    private static final String VIEW_EVENTS = "events";
+
+    private static final int POSTS_PER_PAGE = 5;
+
+    /**
+     * Lower bound of calendar ranges without a start.
+     */
+    private static final LocalDate FIRST_DAY = LocalDate.of(1970, 1, 1);
+
+    /**
+     * Upper bound of calendar ranges without an end.
+     */
+    private static final LocalDate LAST_DAY = LocalDate.of(9999, 12, 31);
+
     private final EventRepository eventRepository;
 
     private final RegistrationService registrationService;
@@ -90,20 +115,94 @@ class IndexController {
 
     private final PostRenderingService postRenderingService;
 
+    private final PostArchiveService postArchiveService;
+
     private final RecaptchaValidator recaptchaValidator;
 
+    private final ConditionalRequestService conditionalRequestService;
+
+    private final EventCalendarService eventCalendarService;
+
+    private final FeedService feedService;
+
+    /**
+     * Shows a page of published posts. Pages are selected through cursor
+     * tokens: {@code after} selects the posts older than the cursor,
+     * {@code before} the posts newer than the cursor.
+     *
+     * @param after
+     * @param before
+     * @param model
+     * @param webRequest
+     * @return
+     */
     @RequestMapping({"", "/", "/feed"})
     public String index(
-            @RequestParam(required = false, defaultValue = "0") final Integer page,
-            final Model model
+            @RequestParam(required = false) final String after,
+            @RequestParam(required = false) final String before,
+            final Model model,
+            final WebRequest webRequest
     ) {
+        if (this.conditionalRequestService.checkNotModified(webRequest, Representation.page, Content.posts, Content.events, Content.links)) {
+            return null;
+        }
+        PageCache.tag(PageCache.TAG_POSTS, PageCache.TAG_EVENTS, PageCache.TAG_LINKS);
+        final KeysetPage<PostEntity> posts = before == null
+                ? this.postRepository.findPublishedAfter(after == null ? null : PostCursor.parse(after), POSTS_PER_PAGE)
+                : this.postRepository.findPublishedBefore(PostCursor.parse(before), POSTS_PER_PAGE);
         model
                 .addAttribute("upcomingEvents", this.eventRepository.findUpcomingEvents())
                 .addAttribute("links", this.linkRepository.findAllByOrderByTypeAscSortColAscTitleAsc().stream().collect(groupingBy(LinkEntity::getType)))
-                .addAttribute(ATTRIBUTE_POSTS, this.postRepository.findAllByStatus(Status.published, new PageRequest(page, 5, Direction.DESC, "publishedOn", "createdAt")).map(postRenderingService::render));
+                .addAttribute(ATTRIBUTE_POSTS, posts.map(postRenderingService::render));
         return "index";
     }
 
+    /**
+     * Shows a page of the feed as RSS, Atom or JSON Feed. Pages are selected
+     * like the pages of the index.
+     *
+     * @param after
+     * @param before
+     * @param model
+     * @param webRequest
+     * @return
+     */
+    @RequestMapping(value = "/feed", produces = {RssFeedView.CONTENT_TYPE, AtomFeedView.CONTENT_TYPE, JsonFeedView.CONTENT_TYPE})
+    public String feed(
+            @RequestParam(required = false) final String after,
+            @RequestParam(required = false) final String before,
+            final Model model,
+            final WebRequest webRequest
+    ) {
+        if (this.conditionalRequestService.checkNotModified(webRequest, Representation.page, Content.posts)) {
+            return null;
+        }
+        PageCache.tag(PageCache.TAG_POSTS);
+        model.addAttribute(AbstractFeedView.MODEL_ATTRIBUTE, this.feedService.getEntries(
+                after == null ? null : PostCursor.parse(after),
+                before == null ? null : PostCursor.parse(before)
+        ));
+        return "feed";
+    }
+
+    /**
+     * Exports all published posts as a single RSS, Atom or JSON feed. The
+     * feed is written while the posts are read and is therefore neither
+     * buffered nor cached.
+     *
+     * @param model
+     * @param webRequest
+     * @return
+     */
+    @RequestMapping(value = "/feed/archive", produces = {RssFeedView.CONTENT_TYPE, AtomFeedView.CONTENT_TYPE, JsonFeedView.CONTENT_TYPE})
+    public String feedArchive(final Model model, final WebRequest webRequest) {
+        if (this.conditionalRequestService.checkNotModified(webRequest, Representation.page, Content.posts)) {
+            return null;
+        }
+        model.addAttribute(AbstractFeedView.MODEL_ATTRIBUTE, (AbstractFeedView.EntrySource) this.feedService::forEachEntry);
+        return "feed";
+    }
+
     @RequestMapping({
         "/{year:\\d+}/{month:\\d+}/{day:\\d+}/{slug}",
         "/posts/{year:\\d+}-{month:\\d+}-{day:\\d+}-{slug}"
@@ -113,8 +212,12 @@ class IndexController {
             @PathVariable final Integer month,
             @PathVariable final Integer day,
             @PathVariable final String slug,
-            final Model model
+            final Model model,
+            final WebRequest webRequest
     ) {
+        if (this.conditionalRequestService.checkNotModified(webRequest, Representation.page, Content.posts)) {
+            return null;
+        }
 
         String rv = "redirect:/";
         try {
@@ -122,10 +225,13 @@ class IndexController {
             final Optional<PostEntity> post = this.postRepository
                     .findByPublishedOnAndSlug(publishedOn, slug)
                     .filter(PostEntity::isPublished);
+            final PostNeighbours neighbours = this.postRepository.getNeighbours(post.get());
+            final Post renderedPost = postRenderingService.render(post.get());
+            PageCache.tag(PageCache.postTag(renderedPost));
             model
-                    .addAttribute("previousPost", post.flatMap(this.postRepository::getPrevious))
-                    .addAttribute(ATTRIBUTE_POST, post.map(postRenderingService::render).get())
-                    .addAttribute("nextPost", post.flatMap(this.postRepository::getNext));
+                    .addAttribute("previousPost", neighbours.getPrevious())
+                    .addAttribute(ATTRIBUTE_POST, renderedPost)
+                    .addAttribute("nextPost", neighbours.getNext());
             rv = VIEW_POST;
 
         } catch (DateTimeException | NoSuchElementException e) {
@@ -135,28 +241,19 @@ class IndexController {
     }
 
     @RequestMapping({"/archive", "/archives"})
-    public String archive(final Model model) {
-        model.addAttribute(ATTRIBUTE_POSTS,
-                this.postRepository
-                .findAll(new Sort(Direction.DESC, "publishedOn")).stream()
-                .filter(PostEntity::isPublished)
-                .map(Post::new)
-                .collect(groupingBy(
-                        post -> post.getPublishedOn().withDayOfMonth(1),
-                        () -> new TreeMap<LocalDate, List<Post>>(reverseOrder()),
-                        toList()
-                )
-                )
-        );
+    public String archive(final Model model, final WebRequest webRequest) {
+        if (this.conditionalRequestService.checkNotModified(webRequest, Representation.page, Content.posts)) {
+            return null;
+        }
+        PageCache.tag(PageCache.TAG_POSTS);
+        model.addAttribute(ATTRIBUTE_POSTS, this.postArchiveService.getMonths());
         return "archive";
     }
 
     @RequestMapping("/search")
     public String search(@RequestParam final String q, final Model model) {
         final TreeMap<LocalDate, List<Post>> posts = this.postRepository
-                .searchByKeyword(q).stream()
-                .filter(PostEntity::isPublished)
-                .map(Post::new)
+                .searchPublishedByKeyword(q).stream()
                 .collect(groupingBy(
                         post -> post.getPublishedOn().withDayOfMonth(1),
                         () -> new TreeMap<LocalDate, List<Post>>(reverseOrder()),
@@ -171,10 +268,62 @@ class IndexController {
         return "archive";
     }
 
+    /**
+     * Shows a calendar of all upcoming events. If {@code from} or {@code to}
+     * is given, the calendar contains all events held in that range instead,
+     * regardless of their status. Those calendars are streamed from the
+     * database.
+     *
+     * @param from First day of the range (inclusive)
+     * @param to Last day of the range (inclusive)
+     * @param model
+     * @param webRequest
+     * @param request
+     * @return
+     */
     @RequestMapping(value = "/events", produces = "text/calendar")
-    public String events(final Model model) {
-        model.addAttribute("events", this.eventRepository.findUpcomingEvents());
-        return "events";
+    public String events(
+            @RequestParam(required = false) @DateTimeFormat(iso = ISO.DATE) final LocalDate from,
+            @RequestParam(required = false) @DateTimeFormat(iso = ISO.DATE) final LocalDate to,
+            final Model model,
+            final WebRequest webRequest,
+            final HttpServletRequest request
+    ) {
+        if (from != null && to != null && from.isAfter(to)) {
+            throw new IllegalArgumentException(String.format("Invalid range %s to %s", from, to));
+        }
+        if (this.conditionalRequestService.checkNotModified(webRequest, Representation.calendar, Content.events)) {
+            return null;
+        }
+        final String registrationUrl = getRegistrationUrl(request);
+        if (from == null && to == null) {
+            model.addAttribute(ATTRIBUTE_CALENDAR, this.eventCalendarService.getCalendar(registrationUrl));
+        } else {
+            final LocalDate first = Optional.ofNullable(from).orElse(FIRST_DAY);
+            final LocalDate last = Optional.ofNullable(to).orElse(LAST_DAY);
+            final StreamingResponseBody calendar = out -> this.eventCalendarService.writeCalendar(first, last, registrationUrl, out);
+            model.addAttribute(ATTRIBUTE_CALENDAR, calendar);
+        }
+        return VIEW_EVENTS;
+    }
+
+    @RequestMapping(value = "/events/{eventId:\\d+}", produces = "text/calendar")
+    public String event(
+            @PathVariable final Integer eventId,
+            final Model model,
+            final WebRequest webRequest,
+            final HttpServletRequest request
+    ) {
+        if (this.conditionalRequestService.checkNotModified(webRequest, Representation.calendar, Content.events)) {
+            return null;
+        }
+        final EventEntity event = this.eventRepository.findOne(eventId).orElseThrow(ResourceNotFoundException::new);
+        model.addAttribute(ATTRIBUTE_CALENDAR, this.eventCalendarService.getCalendar(event, getRegistrationUrl(request)));
+        return VIEW_EVENTS;
+    }
+
+    static String getRegistrationUrl(final HttpServletRequest request) {
+        return UriComponentsBuilder.fromHttpRequest(new ServletServerHttpRequest(request)).replacePath("/register/").replaceQuery(null).toUriString();
     }
 
     @RequestMapping(value = "/register/{eventId}", method = GET)
@@ -0,0 +1,130 @@
+/*
+ * Copyright 2018 EuregJUG.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.euregjug.site.web;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.io.JsonStringEncoder;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.format.DateTimeFormatter;
+import org.springframework.context.MessageSource;
+import org.springframework.stereotype.Component;
+
+/**
+ * Writes a page of the feed as <a href="https://jsonfeed.org/version/1">JSON
+ * Feed</a>. JSON Feed has no link to the previous page, only to the next.
+ */
+@Component("feed.json")
+final class JsonFeedView extends AbstractFeedView {
+
+    /**
+     * JSON Feed version 1 allows plain JSON, which is what the json extension
+     * is mapped to.
+     */
+    static final String CONTENT_TYPE = "application/json";
+
+    static final String VERSION = "https://jsonfeed.org/version/1";
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private static final byte[] SEPARATOR = bytes(",");
+
+    private static final byte[] FOOTER = bytes("]}");
+
+    @FunctionalInterface
+    interface JsonSerializer {
+
+        void serialize(JsonGenerator generator) throws IOException;
+    }
+
+    JsonFeedView(final MessageSource messageSource) {
+        super(messageSource, CONTENT_TYPE);
+    }
+
+    @Override
+    byte[] serializeHead(final Metadata metadata) {
+        return serializeJson(g -> {
+            g.writeStartObject();
+            g.writeStringField("version", VERSION);
+            g.writeStringField("title", metadata.getTitle());
+            g.writeStringField("home_page_url", metadata.getBaseUrl() + "/");
+            g.writeStringField("description", metadata.getDescription());
+            g.writeObjectFieldStart("author");
+            g.writeStringField("name", AUTHOR);
+            g.writeEndObject();
+        });
+    }
+
+    @Override
+    byte[] serializePage(final Page page) {
+        final StringBuilder rv = new StringBuilder(256);
+        rv.append(",\"feed_url\":").append(quote(page.getSelfHref()));
+        if (page.getNextHref() != null) {
+            rv.append(",\"next_url\":").append(quote(page.getNextHref()));
+        }
+        rv.append(",\"items\":[");
+        return bytes(rv.toString());
+    }
+
+    @Override
+    byte[] serializeEntry(final FeedEntry entry, final String baseUrl) {
+        final String link = baseUrl + entry.getPermalink();
+        return serializeJson(g -> {
+            g.writeStartObject();
+            g.writeStringField("id", link);
+            g.writeStringField("url", link);
+            g.writeStringField("title", entry.getTitle());
+            g.writeStringField("content_html", String.valueOf(entry.getContent()));
+            g.writeStringField("date_published", DateTimeFormatter.ISO_INSTANT.format(entry.getPublishedOn().atStartOfDay(UTC)));
+            g.writeEndObject();
+        });
+    }
+
+    @Override
+    byte[] getSeparator() {
+        return SEPARATOR;
+    }
+
+    @Override
+    byte[] getFooter() {
+        return FOOTER;
+    }
+
+    @Override
+    String getExtension() {
+        return "json";
+    }
+
+    static String quote(final String value) {
+        return '"' + new String(JsonStringEncoder.getInstance().quoteAsString(value)) + '"';
+    }
+
+    static byte[] serializeJson(final JsonSerializer serializer) {
+        final ByteArrayOutputStream rv = new ByteArrayOutputStream(1024);
+        try {
+            final JsonGenerator generator = JSON_FACTORY.createGenerator(rv, JsonEncoding.UTF8);
+            serializer.serialize(generator);
+            // Not closed on purpose, as closing would end all open objects
+            generator.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return rv.toByteArray();
+    }
+}
@@ -0,0 +1,221 @@
+/*
+ * Copyright 2018 EuregJUG.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.euregjug.site.web;
+
+import eu.euregjug.site.events.EventChangedEvent;
+import eu.euregjug.site.links.LinkRepository;
+import eu.euregjug.site.posts.Post;
+import eu.euregjug.site.posts.PostChangedEvent;
+import eu.euregjug.site.posts.PostCursor;
+import eu.euregjug.site.posts.PostNeighbours;
+import eu.euregjug.site.posts.PostRenditionRefreshedEvent;
+import eu.euregjug.site.posts.PostRepository;
+import eu.euregjug.site.support.ModificationStamp;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.servlet.ServletRequest;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.cache.Cache;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+
+/**
+ * Stores complete pages for anonymous visitors. Each page is tagged with the
+ * data it depends on. Invalidating a tag doesn't search for pages, it only
+ * records the current value of a global sequence for that tag: A page is
+ * stale when one of its tags has been invalidated after its rendering
+ * started.
+ */
+@Slf4j
+public final class PageCache {
+
+    /**
+     * Name of the cache holding the pages.
+     */
+    public static final String CACHE_NAME = "pages";
+
+    /**
+     * Tag of pages that list posts.
+     */
+    public static final String TAG_POSTS = "posts";
+
+    /**
+     * Tag of pages that list events.
+     */
+    public static final String TAG_EVENTS = "events";
+
+    /**
+     * Tag of pages that list links.
+     */
+    public static final String TAG_LINKS = "links";
+
+    private static final String ATTRIBUTE_TAGS = PageCache.class.getName() + ".TAGS";
+
+    private final Cache cache;
+
+    private final PostRepository postRepository;
+
+    private final LinkRepository linkRepository;
+
+    private final AtomicLong sequence = new AtomicLong();
+
+    private final ConcurrentMap<String, Long> invalidatedTags = new ConcurrentHashMap<>();
+
+    /**
+     * Links are maintained directly in the database, their stamp is checked
+     * periodically instead.
+     */
+    private volatile ModificationStamp linksStamp;
+
+    public PageCache(final Cache cache, final PostRepository postRepository, final LinkRepository linkRepository) {
+        this.cache = cache;
+        this.postRepository = postRepository;
+        this.linkRepository = linkRepository;
+    }
+
+    /**
+     * Tags the page rendered for the current request. Does nothing outside a
+     * request.
+     *
+     * @param tags Tags of the data the page depends on
+     */
+    public static void tag(final String... tags) {
+        final RequestAttributes requestAttributes = RequestContextHolder.getRequestAttributes();
+        if (requestAttributes == null) {
+            return;
+        }
+        @SuppressWarnings("unchecked")
+        Set<String> currentTags = (Set<String>) requestAttributes.getAttribute(ATTRIBUTE_TAGS, RequestAttributes.SCOPE_REQUEST);
+        if (currentTags == null) {
+            currentTags = new HashSet<>();
+            requestAttributes.setAttribute(ATTRIBUTE_TAGS, currentTags, RequestAttributes.SCOPE_REQUEST);
+        }
+        Collections.addAll(currentTags, tags);
+    }
+
+    /**
+     * @param post
+     * @return The tag of the permalink page of the given post
+     */
+    public static String postTag(final Post post) {
+        return "post:" + post.getPublishedOn() + "/" + post.getSlug();
+    }
+
+    /**
+     * @param publishedOn
+     * @param slug
+     * @return The tag of the permalink page of the post with the given date
+     * and slug
+     */
+    public static String postTag(final Date publishedOn, final String slug) {
+        return postTag(new Post(publishedOn, slug, null));
+    }
+
+    @SuppressWarnings("unchecked")
+    static Set<String> getTags(final ServletRequest request) {
+        return Optional.ofNullable((Set<String>) request.getAttribute(ATTRIBUTE_TAGS)).orElseGet(Collections::emptySet);
+    }
+
+    /**
+     * @return The sequence to pass to a page whose rendering starts now
+     */
+    long currentSequence() {
+        return this.sequence.get();
+    }
+
+    CachedPage get(final String key) {
+        final CachedPage rv = this.cache.get(key, CachedPage.class);
+        if (rv == null || !isStale(rv)) {
+            return rv;
+        }
+        this.cache.evict(key);
+        return null;
+    }
+
+    void put(final String key, final CachedPage page) {
+        if (!isStale(page)) {
+            this.cache.put(key, page);
+        }
+    }
+
+    boolean isStale(final CachedPage page) {
+        return page.getTags().stream().anyMatch(tag -> this.invalidatedTags.getOrDefault(tag, -1L) > page.getSequence());
+    }
+
+    /**
+     * Invalidates all pages with at least one of the given tags.
+     *
+     * @param tags
+     */
+    public void invalidate(final String... tags) {
+        final long invalidatedAt = this.sequence.incrementAndGet();
+        for (String tag : tags) {
+            this.invalidatedTags.put(tag, invalidatedAt);
+        }
+        log.debug("Invalidated pages tagged with {}", (Object) tags);
+    }
+
+    /**
+     * Invalidates all lists of posts, the permalink of the changed post and
+     * the permalinks of its neighbours, as they link to the changed post.
+     * Pages are invalidated only once the new rendition is in the cache.
+     *
+     * @param event
+     */
+    @EventListener
+    public void onPostRenditionRefreshed(final PostRenditionRefreshedEvent event) {
+        final PostChangedEvent change = event.getPostChangedEvent();
+        final Set<String> tags = new HashSet<>();
+        tags.add(TAG_POSTS);
+        tags.add(postTag(change.getPublishedOn(), change.getSlug()));
+        addNeighbourTags(tags, change.getCursor());
+        invalidate(tags.toArray(new String[tags.size()]));
+    }
+
+    private void addNeighbourTags(final Set<String> tags, final PostCursor cursor) {
+        final PostNeighbours neighbours = this.postRepository.getNeighbours(cursor);
+        neighbours.getPrevious().map(PageCache::postTag).ifPresent(tags::add);
+        neighbours.getNext().map(PageCache::postTag).ifPresent(tags::add);
+    }
+
+    /**
+     * Invalidates all pages listing links when the stamp of the links
+     * changed since the last check.
+     */
+    @Scheduled(fixedDelayString = "${euregjug.page-cache.links-check-interval:60000}")
+    public void checkLinks() {
+        final ModificationStamp currentStamp = this.linkRepository.getModificationStamp();
+        final ModificationStamp lastStamp = this.linksStamp;
+        this.linksStamp = currentStamp;
+        if (lastStamp != null && !lastStamp.equals(currentStamp)) {
+            invalidate(TAG_LINKS);
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onEventChanged(final EventChangedEvent event) {
+        invalidate(TAG_EVENTS);
+    }
+}
@@ -0,0 +1,245 @@
+/*
+ * Copyright 2018 EuregJUG.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.euregjug.site.web;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.InvalidMediaTypeException;
+import org.springframework.http.MediaType;
+import org.springframework.util.StringUtils;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.servlet.LocaleResolver;
+import org.springframework.web.util.ContentCachingResponseWrapper;
+
+/**
+ * Serves pages for anonymous visitors from the {@link PageCache}. Only
+ * successful GET requests without session, credentials or locale change are
+ * cached, and only if the page has been tagged or is a static page. Responses
+ * that set a cookie, create a session or are already encoded are never
+ * cached. Validators of cached pages are stored with them, so that
+ * conditional requests can be answered with 304 from the cache as well.
+ * <br>
+ * Requests below one of the excluded paths are not filtered at all, so that
+ * their responses can be streamed instead of being buffered.
+ * <br>
+ * Pages are keyed by path, the query parameters pages actually read, the
+ * resolved locale and the representation the server produces for the
+ * accepted media types, so that clients cannot fill the cache with variants
+ * of the same page.
+ */
+public final class PageCacheFilter extends OncePerRequestFilter {
+
+    /**
+     * Tag of static pages, which is never invalidated.
+     */
+    static final String TAG_STATIC = "static";
+
+    /**
+     * Representations of cacheable pages in the order they are preferred for
+     * wildcard media types.
+     */
+    static final List<MediaType> REPRESENTATIONS = Collections.unmodifiableList(Arrays.asList(
+            MediaType.TEXT_HTML,
+            MediaType.valueOf(RssFeedView.CONTENT_TYPE),
+            MediaType.valueOf(AtomFeedView.CONTENT_TYPE),
+            MediaType.valueOf(JsonFeedView.CONTENT_TYPE)
+    ));
+
+    /**
+     * Records whether the response tried to set a cookie.
+     */
+    static final class PageCachingResponseWrapper extends ContentCachingResponseWrapper {
+
+        private boolean cookieSet;
+
+        PageCachingResponseWrapper(final HttpServletResponse response) {
+            super(response);
+        }
+
+        @Override
+        public void addCookie(final Cookie cookie) {
+            this.cookieSet = true;
+            super.addCookie(cookie);
+        }
+
+        boolean isCookieSet() {
+            return this.cookieSet || containsHeader(HttpHeaders.SET_COOKIE);
+        }
+    }
+
+    private final PageCache pageCache;
+
+    private final LocaleResolver localeResolver;
+
+    private final Set<String> staticPages;
+
+    private final Collection<String> excludedPaths;
+
+    private final List<String> keyParameters;
+
+    public PageCacheFilter(
+            final PageCache pageCache,
+            final LocaleResolver localeResolver,
+            final Collection<String> staticPages,
+            final Collection<String> excludedPaths,
+            final Collection<String> keyParameters
+    ) {
+        this.pageCache = pageCache;
+        this.localeResolver = localeResolver;
+        this.staticPages = new HashSet<>(staticPages);
+        this.excludedPaths = new ArrayList<>(excludedPaths);
+        this.keyParameters = new ArrayList<>(new TreeSet<>(keyParameters));
+    }
+
+    @Override
+    protected boolean shouldNotFilter(final HttpServletRequest request) {
+        final String path = request.getServletPath();
+        return this.excludedPaths.stream().anyMatch(path::startsWith);
+    }
+
+    @Override
+    protected void doFilterInternal(final HttpServletRequest request, final HttpServletResponse response, final FilterChain filterChain) throws ServletException, IOException {
+        if (!isCacheable(request)) {
+            filterChain.doFilter(request, response);
+            return;
+        }
+
+        final String key = key(request);
+        if (key == null) {
+            filterChain.doFilter(request, response);
+            return;
+        }
+        final CachedPage cachedPage = this.pageCache.get(key);
+        if (cachedPage != null) {
+            if (new ServletWebRequest(request, response).checkNotModified(cachedPage.getEtag(), cachedPage.getLastModified())) {
+                return;
+            }
+            response.setContentType(cachedPage.getContentType());
+            if (cachedPage.getContentLanguage() != null) {
+                response.setHeader(HttpHeaders.CONTENT_LANGUAGE, cachedPage.getContentLanguage());
+            }
+            response.setContentLength(cachedPage.getBody().length);
+            response.getOutputStream().write(cachedPage.getBody());
+            return;
+        }
+
+        final long sequence = this.pageCache.currentSequence();
+        final PageCachingResponseWrapper responseWrapper = new PageCachingResponseWrapper(response);
+        try {
+            filterChain.doFilter(request, responseWrapper);
+            final Set<String> tags = new HashSet<>(PageCache.getTags(request));
+            if (this.staticPages.contains(request.getServletPath())) {
+                tags.add(TAG_STATIC);
+            }
+            if (responseWrapper.getStatusCode() == HttpServletResponse.SC_OK
+                    && !tags.isEmpty()
+                    && !responseWrapper.isCookieSet()
+                    && !responseWrapper.containsHeader(HttpHeaders.CONTENT_ENCODING)
+                    && request.getSession(false) == null) {
+                this.pageCache.put(key, new CachedPage(
+                        responseWrapper.getContentType(),
+                        responseWrapper.getHeader(HttpHeaders.CONTENT_LANGUAGE),
+                        responseWrapper.getContentAsByteArray(),
+                        responseWrapper.getHeader(HttpHeaders.ETAG),
+                        getLastModified(responseWrapper),
+                        tags,
+                        sequence
+                ));
+            }
+        } finally {
+            responseWrapper.copyBodyToResponse();
+        }
+    }
+
+    static long getLastModified(final HttpServletResponse response) {
+        final HttpHeaders headers = new HttpHeaders();
+        Optional.ofNullable(response.getHeader(HttpHeaders.LAST_MODIFIED)).ifPresent(value -> headers.set(HttpHeaders.LAST_MODIFIED, value));
+        return headers.getLastModified();
+    }
+
+    boolean isCacheable(final HttpServletRequest request) {
+        return "GET".equals(request.getMethod())
+                && request.getRequestedSessionId() == null
+                && request.getHeader(HttpHeaders.AUTHORIZATION) == null
+                && request.getParameter("lang") == null;
+    }
+
+    /**
+     * @param request
+     * @return The key of the page for the given request, null if the request
+     * doesn't accept any of the cacheable representations
+     */
+    String key(final HttpServletRequest request) {
+        final String representation = representation(request.getHeader(HttpHeaders.ACCEPT));
+        if (representation == null) {
+            return null;
+        }
+        final StringBuilder rv = new StringBuilder(request.getRequestURI());
+        char separator = '?';
+        for (String parameter : this.keyParameters) {
+            final String[] values = request.getParameterValues(parameter);
+            if (values == null) {
+                continue;
+            }
+            for (String value : values) {
+                rv.append(separator).append(parameter).append('=').append(value);
+                separator = '&';
+            }
+        }
+        rv.append('|').append(this.localeResolver.resolveLocale(request).toLanguageTag());
+        rv.append('|').append(representation);
+        return rv.toString();
+    }
+
+    /**
+     * @param accept
+     * @return The representation produced for the given accept header, null
+     * if no representation is acceptable or the header is invalid
+     */
+    static String representation(final String accept) {
+        if (!StringUtils.hasText(accept)) {
+            return REPRESENTATIONS.get(0).toString();
+        }
+        final List<MediaType> acceptedMediaTypes;
+        try {
+            acceptedMediaTypes = MediaType.parseMediaTypes(accept);
+        } catch (InvalidMediaTypeException e) {
+            return null;
+        }
+        MediaType.sortBySpecificityAndQuality(acceptedMediaTypes);
+        return acceptedMediaTypes.stream()
+                .filter(acceptedMediaType -> acceptedMediaType.getQualityValue() > 0)
+                .flatMap(acceptedMediaType -> REPRESENTATIONS.stream().filter(acceptedMediaType::includes))
+                .findFirst()
+                .map(MediaType::toString)
+                .orElse(null);
+    }
+}
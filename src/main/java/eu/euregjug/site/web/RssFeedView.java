@@ -0,0 +1,127 @@
+/*
+ * Copyright 2015-2016 EuregJUG.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.euregjug.site.web;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.Locale;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+import org.springframework.context.MessageSource;
+import org.springframework.stereotype.Component;
+
+/**
+ * Writes a page of the feed as RSS 2.0.
+ *
+ * @author Michael J. Simons, 2015-12-30
+ */
+@Component("feed.rss")
+final class RssFeedView extends AbstractFeedView {
+
+    static final String CONTENT_TYPE = "application/rss+xml";
+
+    static final String NAMESPACE_CONTENT = "http://purl.org/rss/1.0/modules/content/";
+
+    static final String NAMESPACE_ATOM = "http://www.w3.org/2005/Atom";
+
+    private static final DateTimeFormatter RFC822_DATE_FORMATTER = DateTimeFormatter.ofPattern("EEE, dd MMM yyyy HH:mm:ss 'GMT'", Locale.US);
+
+    private static final byte[] FOOTER = bytes("</channel></rss>");
+
+    RssFeedView(final MessageSource messageSource) {
+        super(messageSource, CONTENT_TYPE);
+    }
+
+    @Override
+    byte[] serializeHead(final Metadata metadata) {
+        return serializeXml(w -> {
+            w.writeStartDocument("UTF-8", "1.0");
+            w.writeStartElement("rss");
+            w.writeNamespace("content", NAMESPACE_CONTENT);
+            w.writeNamespace("atom", NAMESPACE_ATOM);
+            w.writeAttribute("version", "2.0");
+            w.writeStartElement("channel");
+            element(w, "title", metadata.getTitle());
+            element(w, "link", metadata.getBaseUrl());
+            element(w, "description", metadata.getDescription());
+            element(w, "generator", GENERATOR);
+        });
+    }
+
+    @Override
+    byte[] serializePage(final Page page) {
+        return serializeXml(w -> {
+            if (page.getUpdated() != null) {
+                final String pubDate = formatDate(page.getUpdated());
+                element(w, "pubDate", pubDate);
+                element(w, "lastBuildDate", pubDate);
+            }
+            atomLink(w, "self", page.getSelfHref());
+            if (page.getPreviousHref() != null) {
+                atomLink(w, "previous", page.getPreviousHref());
+            }
+            if (page.getNextHref() != null) {
+                atomLink(w, "next", page.getNextHref());
+            }
+        });
+    }
+
+    @Override
+    byte[] serializeEntry(final FeedEntry entry, final String baseUrl) {
+        final String link = baseUrl + entry.getPermalink();
+        return serializeXml(w -> {
+            w.writeStartElement("item");
+            element(w, "title", entry.getTitle());
+            element(w, "link", link);
+            w.writeStartElement("content", "encoded", NAMESPACE_CONTENT);
+            w.writeCharacters(String.valueOf(entry.getContent()));
+            w.writeEndElement();
+            element(w, "pubDate", formatDate(entry.getPublishedOn()));
+            element(w, "author", AUTHOR);
+            w.writeStartElement("guid");
+            w.writeAttribute("isPermaLink", "true");
+            w.writeCharacters(link);
+            w.writeEndElement();
+            w.writeEndElement();
+        });
+    }
+
+    @Override
+    byte[] getSeparator() {
+        return EMPTY;
+    }
+
+    @Override
+    byte[] getFooter() {
+        return FOOTER;
+    }
+
+    @Override
+    String getExtension() {
+        return "rss";
+    }
+
+    static void atomLink(final XMLStreamWriter w, final String rel, final String href) throws XMLStreamException {
+        w.writeEmptyElement("atom", "link", NAMESPACE_ATOM);
+        w.writeAttribute("rel", rel);
+        w.writeAttribute("type", CONTENT_TYPE);
+        w.writeAttribute("href", href);
+    }
+
+    static String formatDate(final LocalDate date) {
+        return RFC822_DATE_FORMATTER.format(date.atStartOfDay(UTC));
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright 2018 EuregJUG.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.euregjug.site.web;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import javax.servlet.http.HttpServletResponse;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.context.request.ServletWebRequest;
+
+import static org.springframework.web.bind.annotation.RequestMethod.GET;
+import static org.springframework.web.bind.annotation.RequestMethod.HEAD;
+
+/**
+ * Serves the bundles built by {@link StaticBundles}. The name of a bundle
+ * changes with its content, so bundles are cached for a year and marked as
+ * immutable. Clients accepting gzip get the precompressed content.
+ */
+@Controller
+@RequiredArgsConstructor
+class StaticBundleController {
+
+    private final StaticBundles staticBundles;
+
+    @RequestMapping(value = StaticBundles.PATH + "/{filename:.+}", method = {GET, HEAD})
+    public void get(
+            @PathVariable final String filename,
+            final ServletWebRequest webRequest,
+            final HttpServletResponse response
+    ) throws IOException {
+        final StaticBundles.Bundle bundle = this.staticBundles.get(filename);
+        if (bundle == null) {
+            response.setStatus(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+        response.setHeader(HttpHeaders.CACHE_CONTROL, String.format("max-age=%d, public, immutable", TimeUnit.DAYS.toSeconds(365)));
+        response.setHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        if (webRequest.checkNotModified(bundle.getEtag())) {
+            return;
+        }
+        final byte[] body;
+        if (AcceptEncoding.acceptsGzip(webRequest.getHeader(HttpHeaders.ACCEPT_ENCODING))) {
+            response.setHeader(HttpHeaders.CONTENT_ENCODING, "gzip");
+            body = bundle.getGzippedContent();
+        } else {
+            body = bundle.getContent();
+        }
+        response.setContentType(bundle.getContentType().toString());
+        response.setContentLength(body.length);
+        if (!"HEAD".equals(webRequest.getRequest().getMethod())) {
+            response.getOutputStream().write(body);
+        }
+    }
+}
@@ -0,0 +1,187 @@
+/*
+ * Copyright 2018 EuregJUG.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.euregjug.site.web;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.embedded.EmbeddedServletContainerInitializedEvent;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.util.DigestUtils;
+import org.springframework.util.StringUtils;
+import org.springframework.web.client.RestTemplate;
+
+/**
+ * Builds the wro4j groups once after startup and keeps them as content
+ * hashed, precompressed bundles. Templates link the bundles through
+ * {@link #getPath(String)}, so that the bundles can be cached forever by
+ * clients and neither minification nor compression happens on requests.
+ * Until the bundles are built or if building them failed, templates link the
+ * wro4j filter as before.
+ */
+@Component
+@Slf4j
+public final class StaticBundles {
+
+    /**
+     * Path below which bundles are served.
+     */
+    static final String PATH = "/bundles";
+
+    /**
+     * A bundle with its plain and its gzipped content.
+     */
+    @Getter
+    static final class Bundle {
+
+        private final String filename;
+
+        private final MediaType contentType;
+
+        private final String etag;
+
+        private final byte[] content;
+
+        private final byte[] gzippedContent;
+
+        Bundle(final String name, final byte[] content) {
+            final String hash = DigestUtils.md5DigestAsHex(content);
+            final String extension = StringUtils.getFilenameExtension(name);
+            this.filename = String.format("%s-%s.%s", StringUtils.stripFilenameExtension(name), hash, extension);
+            this.contentType = "css".equals(extension) ? MediaType.valueOf("text/css") : MediaType.valueOf("application/javascript");
+            this.etag = "\"" + hash + "\"";
+            this.content = content;
+            this.gzippedContent = gzip(content);
+        }
+    }
+
+    private final String filterUrl;
+
+    private final List<String> names;
+
+    private final boolean enabled;
+
+    private final String contextPath;
+
+    /**
+     * Bundles by their original name.
+     */
+    private final Map<String, Bundle> bundles = new ConcurrentHashMap<>();
+
+    /**
+     * Bundles by their content hashed filename.
+     */
+    private final Map<String, Bundle> bundlesByFilename = new ConcurrentHashMap<>();
+
+    private volatile int port = -1;
+
+    public StaticBundles(
+            @Value("${wro4j.filterUrl:/wro4j}") final String filterUrl,
+            @Value("${euregjug.bundles.names:site.css,site.js}") final String[] names,
+            @Value("${euregjug.bundles.enabled:true}") final boolean enabled,
+            @Value("${server.context-path:}") final String contextPath
+    ) {
+        this.filterUrl = filterUrl;
+        this.names = Arrays.asList(StringUtils.trimArrayElements(names));
+        this.enabled = enabled;
+        this.contextPath = contextPath;
+    }
+
+    @EventListener
+    public void onContainerInitialized(final EmbeddedServletContainerInitializedEvent event) {
+        // A separate management server has its own namespace
+        if (event.getApplicationContext().getNamespace() == null) {
+            this.port = event.getEmbeddedServletContainer().getPort();
+        }
+    }
+
+    /**
+     * Requests each bundle once from the wro4j filter of this very
+     * application, which is the only place where all resources of a group
+     * can be resolved.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!this.enabled || this.port < 0) {
+            return;
+        }
+        final RestTemplate restTemplate = new RestTemplate();
+        final String baseUrl = String.format("http://localhost:%d%s%s/", this.port, this.contextPath, this.filterUrl);
+        build(name -> restTemplate.getForObject(baseUrl + name, byte[].class));
+    }
+
+    /**
+     * Builds all configured bundles. A bundle that cannot be loaded is
+     * skipped and keeps being served by wro4j.
+     *
+     * @param loader Loads the content of a wro4j group by its name
+     */
+    void build(final Function<String, byte[]> loader) {
+        for (String name : this.names) {
+            try {
+                final long started = System.currentTimeMillis();
+                final Bundle bundle = new Bundle(name, loader.apply(name));
+                this.bundlesByFilename.put(bundle.getFilename(), bundle);
+                this.bundles.put(name, bundle);
+                log.info("Built {} with {} bytes ({} bytes gzipped) in {}ms", bundle.getFilename(), bundle.getContent().length, bundle.getGzippedContent().length, System.currentTimeMillis() - started);
+            } catch (RuntimeException e) {
+                log.warn("Could not build bundle {}: {}", name, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * @param name Name of a wro4j group including its type, i.e.
+     * {@literal site.css}
+     * @return The path of the immutable bundle if it has been built,
+     * otherwise the path of the group below the wro4j filter
+     */
+    public String getPath(final String name) {
+        final Bundle bundle = this.bundles.get(name);
+        return bundle == null ? this.filterUrl + "/" + name : PATH + "/" + bundle.getFilename();
+    }
+
+    Bundle get(final String filename) {
+        return this.bundlesByFilename.get(filename);
+    }
+
+    static byte[] gzip(final byte[] content) {
+        final ByteArrayOutputStream rv = new ByteArrayOutputStream(content.length / 3);
+        try (GZIPOutputStream out = new GZIPOutputStream(rv) {
+            {
+                def.setLevel(Deflater.BEST_COMPRESSION);
+            }
+        }) {
+            out.write(content);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return rv.toByteArray();
+    }
+}
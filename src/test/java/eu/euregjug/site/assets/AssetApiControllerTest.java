@@ -15,12 +15,22 @@
  */
 package eu.euregjug.site.assets;
 
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBObject;
+import com.mongodb.DuplicateKeyException;
+import com.mongodb.MongoException;
 import com.mongodb.gridfs.GridFSDBFile;
+import com.mongodb.gridfs.GridFSFile;
 import eu.euregjug.site.config.SecurityTestConfig;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
@@ -30,9 +40,21 @@ import java.time.format.TextStyle;
 import static java.time.temporal.ChronoField.DAY_OF_MONTH;
 import static java.time.temporal.ChronoField.DAY_OF_WEEK;
 import static java.time.temporal.ChronoField.MONTH_OF_YEAR;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
 import java.util.Locale;
+import javax.imageio.ImageIO;
 import org.apache.tika.Tika;
 import org.hamcrest.BaseMatcher;
+import static org.hamcrest.Matchers.allOf;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.hamcrest.Matchers.startsWith;
 import org.hamcrest.Description;
 import org.joor.Reflect;
 import org.junit.Test;
@@ -43,8 +65,13 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.restdocs.AutoConfigureRestDocs;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.ComponentScan.Filter;
+import org.springframework.context.annotation.FilterType;
 import org.springframework.context.annotation.Import;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.query.Criteria;
 import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.data.mongodb.gridfs.GridFsTemplate;
 import org.springframework.data.web.config.EnableSpringDataWebSupport;
 import org.springframework.mock.web.MockMultipartFile;
@@ -53,27 +80,44 @@ import static org.springframework.restdocs.operation.preprocess.Preprocessors.pr
 import static org.springframework.restdocs.operation.preprocess.Preprocessors.prettyPrint;
 import org.springframework.test.annotation.DirtiesContext;
 import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.TestPropertySource;
 import org.springframework.test.context.junit4.SpringRunner;
 import org.springframework.test.web.servlet.MockMvc;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Matchers.isNull;
+import static org.mockito.Mockito.atMost;
+import static org.mockito.Mockito.doThrow;
+import org.mockito.ArgumentCaptor;
+import org.mockito.stubbing.Answer;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.springframework.restdocs.mockmvc.MockMvcRestDocumentation.document;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.fileUpload;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
 import org.springframework.test.web.servlet.result.MockMvcResultMatchers;
+import org.springframework.util.StreamUtils;
 
 /**
  * @author Michael J. Simons, 2016-07-15
  */
 @RunWith(SpringRunner.class)
 @ActiveProfiles("test")
-@WebMvcTest(AssetApiController.class)
+@WebMvcTest(
+        controllers = AssetApiController.class,
+        includeFilters = @Filter(type = FilterType.ASSIGNABLE_TYPE, value = {AssetCache.class, AssetService.class, AssetDerivativeService.class})
+)
+@TestPropertySource(properties = {
+    "euregjug.asset-cache.directory = target/asset-cache",
+    "euregjug.assets.maximum-size = 32768"
+})
 @EnableSpringDataWebSupport // Needed to enable resolving of Pageable and other parameters
 @Import(SecurityTestConfig.class) // Needed to get rid of default CSRF protection
 @AutoConfigureRestDocs(
@@ -83,15 +127,20 @@ import org.springframework.test.web.servlet.result.MockMvcResultMatchers;
 )
 public class AssetApiControllerTest {
 
+    private static final byte[] MESSAGE = "Hello, World!".getBytes(StandardCharsets.UTF_8);
+
     @Autowired
     private MockMvc mvc;
 
     @Autowired
-    private AssetApiController controller;
+    private AssetService assetService;
 
     @MockBean
     private GridFsTemplate gridFsTemplate;
 
+    @MockBean
+    private MongoOperations mongoOperations;
+
     @Test
     public void createShouldThrowException() throws Exception {
         final MockMultipartFile multipartFile = new MockMultipartFile("assetData", this.getClass().getResourceAsStream("/eu/euregjug/site/assets/asset.png"));
@@ -114,6 +163,7 @@ public class AssetApiControllerTest {
         final MockMultipartFile multipartFile = new MockMultipartFile("assetData", "asset.png", null, this.getClass().getResourceAsStream("/eu/euregjug/site/assets/asset.png"));
 
         when(this.gridFsTemplate.findOne(any(Query.class))).thenReturn(null);
+        when(this.gridFsTemplate.store(any(InputStream.class), any(String.class), any(String.class))).then(readContentAndReturn(mock(GridFSFile.class)));
 
         mvc
                 .perform(
@@ -121,6 +171,7 @@ public class AssetApiControllerTest {
                         .file(multipartFile)
                 )
                 .andExpect(status().isCreated())
+                .andExpect(MockMvcResultMatchers.header().string("Location", "http://euregjug.eu/api/assets/91a636eb757131f3dfc976cd645293a1639fb86b891a76062514f88cfbed03a5/asset.png"))
                 .andExpect(content().string("asset.png"))
                 .andDo(document("api/assets/create",
                         preprocessRequest(prettyPrint()),
@@ -135,15 +186,16 @@ public class AssetApiControllerTest {
     @Test
     @DirtiesContext
     public void failedMimetypeDetectionShouldWork() throws Exception {
-        final Reflect controllerReflect = Reflect.on(this.controller);
+        final Reflect serviceReflect = Reflect.on(this.assetService);
         // Much more evil isn't possible, i guess... DirtiesContext!!!!
-        Tika tika = controllerReflect.field("tika").get();
+        Tika tika = serviceReflect.field("tika").get();
         tika = spy(tika);
         when(tika.detect(any(InputStream.class), any(String.class))).thenThrow(IOException.class);
-        controllerReflect.set("tika", tika);
+        serviceReflect.set("tika", tika);
 
         final MockMultipartFile multipartFile = new MockMultipartFile("assetData", "asset.png", null, this.getClass().getResourceAsStream("/eu/euregjug/site/assets/asset.png"));
         when(this.gridFsTemplate.findOne(any(Query.class))).thenReturn(null);
+        when(this.gridFsTemplate.store(any(InputStream.class), any(String.class), any(String.class))).then(readContentAndReturn(mock(GridFSFile.class)));
 
         mvc
                 .perform(
@@ -158,6 +210,198 @@ public class AssetApiControllerTest {
         verifyNoMoreInteractions(this.gridFsTemplate);
     }
 
+    @Test
+    public void createAllShouldStoreEachAssetOnce() throws Exception {
+        when(this.mongoOperations.find(any(Query.class), eq(DBObject.class), eq("fs.files"))).thenReturn(Arrays.asList(
+                new BasicDBObject("filename", "original.txt").append("metadata", new BasicDBObject(AssetService.METADATA_ALIASES, Arrays.asList("original.txt", "existing.txt")))
+        ));
+        when(this.gridFsTemplate.store(any(InputStream.class), any(String.class), any(String.class))).then(readContentAndReturn(mock(GridFSFile.class)));
+
+        mvc
+                .perform(
+                        fileUpload("/api/assets/batch")
+                        .file(new MockMultipartFile("assetData", "existing.txt", null, MESSAGE))
+                        .file(new MockMultipartFile("assetData", "batch1.txt", null, MESSAGE))
+                        .file(new MockMultipartFile("assetData", "batch1.txt", null, MESSAGE))
+                        .file(new MockMultipartFile("assetData", "batch2.txt", null, new byte[32769]))
+                        .file(new MockMultipartFile("assetData", "batch3.txt", null, "Hallo, Welt!".getBytes(StandardCharsets.UTF_8)))
+                )
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[*].filename", contains("existing.txt", "batch1.txt", "batch1.txt", "batch2.txt", "batch3.txt")))
+                .andExpect(jsonPath("$[*].status", contains(409, 201, 409, 413, 201)))
+                .andExpect(jsonPath("$[1].sha256", is("dffd6021bb2bd5b0af676290809ec3a53191dd81c7f70a4b28688a362182986f")))
+                .andDo(document("api/assets/create-all",
+                        preprocessResponse(prettyPrint())
+                ));
+
+        final List<String> names = Arrays.asList("existing.txt", "batch1.txt", "batch2.txt", "batch3.txt");
+        final ArgumentCaptor<Query> query = ArgumentCaptor.forClass(Query.class);
+        verify(this.mongoOperations).find(query.capture(), eq(DBObject.class), eq("fs.files"));
+        assertThat(query.getValue().getQueryObject(), is(Query.query(new Criteria().orOperator(Criteria.where("filename").in(names), Criteria.where("metadata.aliases").in(names))).getQueryObject()));
+        verify(this.gridFsTemplate).store(any(InputStream.class), eq("batch1.txt"), eq("text/plain"));
+        verify(this.gridFsTemplate).store(any(InputStream.class), eq("batch3.txt"), eq("text/plain"));
+        verifyNoMoreInteractions(this.gridFsTemplate);
+    }
+
+    @Test
+    public void listShouldOnlyLoadDescriptions() throws Exception {
+        final Date uploadDate = Date.from(LocalDate.of(2018, 3, 1).atStartOfDay(ZoneId.of("UTC")).toInstant());
+        when(this.mongoOperations.count(any(Query.class), eq("fs.files"))).thenReturn(3L);
+        when(this.mongoOperations.find(any(Query.class), eq(DBObject.class), eq("fs.files"))).thenReturn(Arrays.asList(
+                new BasicDBObject("filename", "asset.png")
+                .append("length", 18990L)
+                .append("contentType", "image/png")
+                .append("uploadDate", uploadDate)
+                .append("metadata", new BasicDBObject(AssetService.METADATA_SHA256, "91a636eb757131f3dfc976cd645293a1639fb86b891a76062514f88cfbed03a5")),
+                new BasicDBObject("filename", "legacy.txt")
+                .append("length", 13)
+                .append("contentType", "text/plain")
+                .append("uploadDate", uploadDate)
+        ));
+
+        mvc
+                .perform(get("/api/assets").param("page", "0").param("size", "2"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.totalElements", is(3)))
+                .andExpect(jsonPath("$.content[*].filename", contains("asset.png", "legacy.txt")))
+                .andExpect(jsonPath("$.content[0].length", is(18990)))
+                .andExpect(jsonPath("$.content[0].contentType", is("image/png")))
+                .andExpect(jsonPath("$.content[0].sha256", is("91a636eb757131f3dfc976cd645293a1639fb86b891a76062514f88cfbed03a5")))
+                .andExpect(jsonPath("$.content[1].sha256", is(nullValue())))
+                .andDo(document("api/assets/list",
+                        preprocessResponse(prettyPrint())
+                ));
+
+        final ArgumentCaptor<Query> query = ArgumentCaptor.forClass(Query.class);
+        verify(this.mongoOperations).find(query.capture(), eq(DBObject.class), eq("fs.files"));
+        assertThat(query.getValue().getQueryObject(), is(new BasicDBObject("metadata.derivativeOf", new BasicDBObject("$exists", false))));
+        assertThat(query.getValue().getFieldsObject().keySet(), containsInAnyOrder(AssetInfo.FIELDS));
+        assertThat(query.getValue().getSkip(), is(0));
+        assertThat(query.getValue().getLimit(), is(2));
+        assertThat(query.getValue().getSortObject(), is(new BasicDBObject("uploadDate", -1)));
+        verifyNoMoreInteractions(this.gridFsTemplate);
+    }
+
+    @Test
+    public void uploadShouldStreamIntoGridFs() throws Exception {
+        final GridFSFile storedFile = mock(GridFSFile.class);
+        when(this.gridFsTemplate.findOne(any(Query.class))).thenReturn(null);
+        when(this.gridFsTemplate.store(any(InputStream.class), eq("message.txt"), eq("text/plain"))).then(invocation -> {
+            assertThat(StreamUtils.copyToByteArray(invocation.getArgumentAt(0, InputStream.class)), is(MESSAGE));
+            return storedFile;
+        });
+
+        mvc
+                .perform(put("/api/assets/message.txt").content(MESSAGE))
+                .andExpect(status().isCreated())
+                .andExpect(content().string("message.txt"));
+
+        verify(this.gridFsTemplate).findOne(any(Query.class));
+        verify(this.gridFsTemplate).store(any(InputStream.class), eq("message.txt"), eq("text/plain"));
+        verify(storedFile).setMetaData(new BasicDBObject(AssetService.METADATA_SHA256, "dffd6021bb2bd5b0af676290809ec3a53191dd81c7f70a4b28688a362182986f").append(AssetService.METADATA_ALIASES, Arrays.asList("message.txt")));
+        verify(storedFile).save();
+        verifyNoMoreInteractions(this.gridFsTemplate);
+    }
+
+    @Test
+    public void identicalContentShouldBeStoredOnce() throws Exception {
+        final GridFSFile storedFile = mock(GridFSFile.class);
+        when(storedFile.getId()).thenReturn("4711");
+        doThrow(mock(DuplicateKeyException.class)).when(storedFile).save();
+        when(this.gridFsTemplate.findOne(any(Query.class))).thenReturn(null, null, mock(GridFSDBFile.class));
+        when(this.gridFsTemplate.store(any(InputStream.class), eq("alias.txt"), eq("text/plain"))).then(readContentAndReturn(storedFile));
+
+        mvc
+                .perform(put("/api/assets/alias.txt").content(MESSAGE))
+                .andExpect(status().isCreated())
+                .andExpect(MockMvcResultMatchers.header().string("Location", "http://euregjug.eu/api/assets/dffd6021bb2bd5b0af676290809ec3a53191dd81c7f70a4b28688a362182986f/alias.txt"));
+
+        verify(this.gridFsTemplate, times(3)).findOne(any(Query.class));
+        verify(this.gridFsTemplate).store(any(InputStream.class), eq("alias.txt"), eq("text/plain"));
+        verify(this.gridFsTemplate).delete(Query.query(Criteria.where("_id").is("4711")));
+        verify(this.mongoOperations).updateFirst(
+                Query.query(Criteria.where("metadata.sha256").is("dffd6021bb2bd5b0af676290809ec3a53191dd81c7f70a4b28688a362182986f")),
+                new Update().addToSet("metadata.aliases", "alias.txt"),
+                "fs.files"
+        );
+        verifyNoMoreInteractions(this.gridFsTemplate);
+    }
+
+    @Test
+    public void existingNamesWithIdenticalContentShouldConflict() throws Exception {
+        final GridFSFile storedFile = mock(GridFSFile.class);
+        when(storedFile.getId()).thenReturn("4711");
+        doThrow(mock(DuplicateKeyException.class)).when(storedFile).save();
+        // The name is stored concurrently after it has been checked
+        when(this.gridFsTemplate.findOne(any(Query.class))).thenReturn(null, mock(GridFSDBFile.class));
+        when(this.gridFsTemplate.store(any(InputStream.class), eq("message.txt"), eq("text/plain"))).then(readContentAndReturn(storedFile));
+
+        mvc
+                .perform(put("/api/assets/message.txt").content(MESSAGE))
+                .andExpect(status().isConflict());
+
+        verify(this.gridFsTemplate, times(2)).findOne(any(Query.class));
+        verify(this.gridFsTemplate).store(any(InputStream.class), eq("message.txt"), eq("text/plain"));
+        verify(this.gridFsTemplate).delete(Query.query(Criteria.where("_id").is("4711")));
+        verify(this.mongoOperations, never()).updateFirst(any(Query.class), any(Update.class), any(String.class));
+        verifyNoMoreInteractions(this.gridFsTemplate);
+    }
+
+    @Test
+    public void failingDeletesOfDuplicatesShouldNotFailUploads() throws Exception {
+        final GridFSFile storedFile = mock(GridFSFile.class);
+        when(storedFile.getId()).thenReturn("4711");
+        doThrow(mock(DuplicateKeyException.class)).when(storedFile).save();
+        doThrow(new MongoException("Connection lost")).when(this.gridFsTemplate).delete(any(Query.class));
+        // The orphaned duplicate itself must not count as existing name
+        when(this.gridFsTemplate.findOne(any(Query.class))).thenReturn(null, null, mock(GridFSDBFile.class));
+        when(this.gridFsTemplate.store(any(InputStream.class), eq("alias.txt"), eq("text/plain"))).then(readContentAndReturn(storedFile));
+
+        mvc
+                .perform(put("/api/assets/alias.txt").content(MESSAGE))
+                .andExpect(status().isCreated());
+
+        verify(this.gridFsTemplate).findOne(Query.query(new Criteria().andOperator(
+                Criteria.where("_id").ne("4711"),
+                new Criteria().orOperator(Criteria.where("filename").is("alias.txt"), Criteria.where("metadata.aliases").is("alias.txt"))
+        )));
+        verify(this.gridFsTemplate).delete(Query.query(Criteria.where("_id").is("4711")));
+        verify(this.mongoOperations).updateFirst(
+                Query.query(Criteria.where("metadata.sha256").is("dffd6021bb2bd5b0af676290809ec3a53191dd81c7f70a4b28688a362182986f")),
+                new Update().addToSet("metadata.aliases", "alias.txt"),
+                "fs.files"
+        );
+    }
+
+    @Test
+    public void contentAddressedUrlsShouldBeImmutable() throws Exception {
+        final GridFSDBFile file = mockMessage("immutable.txt");
+        when(this.gridFsTemplate.findOne(any(Query.class))).thenReturn(file);
+
+        mvc
+                .perform(get("/api/assets/65a8e27d8879283831b664bd8b7f0ad465a8e27d8879283831b664bd8b7f0ad4/hello.txt"))
+                .andExpect(status().isOk())
+                .andExpect(MockMvcResultMatchers.header().string("Content-Disposition", "inline; filename=\"hello.txt\""))
+                .andExpect(MockMvcResultMatchers.header().string("Cache-Control", "max-age=31536000, public, immutable"))
+                .andExpect(content().string("Hello, World!"));
+
+        verify(this.gridFsTemplate).findOne(Query.query(Criteria.where("metadata.sha256").is("65a8e27d8879283831b664bd8b7f0ad465a8e27d8879283831b664bd8b7f0ad4")));
+        verifyNoMoreInteractions(this.gridFsTemplate);
+    }
+
+    @Test
+    public void uploadShouldRequireAKnownSize() throws Exception {
+        mvc
+                .perform(put("/api/assets/message.txt"))
+                .andExpect(status().isLengthRequired());
+
+        mvc
+                .perform(put("/api/assets/message.txt").content(new byte[32769]))
+                .andExpect(status().isPayloadTooLarge());
+
+        verifyNoMoreInteractions(this.gridFsTemplate);
+    }
+
     @Test
     public void getShouldThrowException() throws Exception {
         when(this.gridFsTemplate.findOne(any(Query.class))).thenReturn(null);
@@ -175,12 +419,8 @@ public class AssetApiControllerTest {
         GridFSDBFile file = mock(GridFSDBFile.class);
         when(file.getContentType()).thenReturn("text/plain");
         when(file.getFilename()).thenReturn("helloword.txt");
-        when(file.writeTo(any(OutputStream.class))).then(invocation -> {
-            final OutputStream out = invocation.getArgumentAt(0, OutputStream.class);
-            final byte[] message = "Hello, World!".getBytes(StandardCharsets.UTF_8);
-            out.write(message);
-            return (long) message.length;
-        });
+        when(file.getInputStream()).then(invocation -> new ByteArrayInputStream(MESSAGE));
+        when(file.getLength()).thenReturn((long) MESSAGE.length);
 
         when(this.gridFsTemplate.findOne(any(Query.class))).thenReturn(file);
 
@@ -195,7 +435,7 @@ public class AssetApiControllerTest {
                 .perform(get("/api/assets/message.txt"))
                 .andExpect(status().isOk())
                 .andExpect(MockMvcResultMatchers.header().string("Content-Type", "text/plain"))
-                .andExpect(MockMvcResultMatchers.header().string("Content-Disposition", "inline; filename=\"helloword.txt\""))
+                .andExpect(MockMvcResultMatchers.header().string("Content-Disposition", "inline; filename=\"message.txt\""))
                 .andExpect(MockMvcResultMatchers.header().string("Expires", new BaseMatcher<String>() {
                     @Override
                     public boolean matches(Object item) {                        
@@ -207,9 +447,171 @@ public class AssetApiControllerTest {
                     }
 
                 }))
-                .andExpect(MockMvcResultMatchers.header().string("Cache-Control", "max-age=31536000, public"));
+                .andExpect(MockMvcResultMatchers.header().string("Cache-Control", "max-age=31536000, public"))
+                .andExpect(MockMvcResultMatchers.header().string("Accept-Ranges", "bytes"))
+                .andExpect(MockMvcResultMatchers.header().string("Content-Length", "13"))
+                .andExpect(content().string("Hello, World!"));
 
         verify(this.gridFsTemplate).findOne(any(Query.class));
         verifyNoMoreInteractions(this.gridFsTemplate);
     }
+
+    @Test
+    public void getShouldSupportRanges() throws Exception {
+        final GridFSDBFile file = mockMessage("ranges.txt");
+        when(this.gridFsTemplate.findOne(any(Query.class))).thenReturn(file);
+
+        mvc
+                .perform(get("/api/assets/ranges.txt").header("Range", "bytes=7-11"))
+                .andExpect(status().isPartialContent())
+                .andExpect(MockMvcResultMatchers.header().string("Content-Range", "bytes 7-11/13"))
+                .andExpect(MockMvcResultMatchers.header().string("Content-Length", "5"))
+                .andExpect(content().string("World"));
+
+        mvc
+                .perform(get("/api/assets/ranges.txt").header("Range", "bytes=0-4,7-11"))
+                .andExpect(status().isPartialContent())
+                .andExpect(MockMvcResultMatchers.header().string("Content-Type", startsWith("multipart/byteranges")))
+                .andExpect(content().string(allOf(containsString("Content-Range: bytes 0-4/13"), containsString("Hello"), containsString("Content-Range: bytes 7-11/13"), containsString("World"))));
+
+        mvc
+                .perform(get("/api/assets/ranges.txt").header("Range", "bytes=20-30"))
+                .andExpect(status().isRequestedRangeNotSatisfiable())
+                .andExpect(MockMvcResultMatchers.header().string("Content-Range", "bytes */13"));
+    }
+
+    @Test
+    public void getShouldSupportConditionalRequests() throws Exception {
+        final GridFSDBFile file = mockMessage("conditional.txt");
+        when(this.gridFsTemplate.findOne(any(Query.class))).thenReturn(file);
+
+        mvc
+                .perform(get("/api/assets/conditional.txt"))
+                .andExpect(status().isOk())
+                .andExpect(MockMvcResultMatchers.header().string("ETag", "\"65a8e27d8879283831b664bd8b7f0ad4\""))
+                .andExpect(MockMvcResultMatchers.header().string("Last-Modified", "Thu, 04 Aug 2016 00:00:00 GMT"));
+
+        mvc
+                .perform(get("/api/assets/conditional.txt").header("If-None-Match", "\"65a8e27d8879283831b664bd8b7f0ad4\""))
+                .andExpect(status().isNotModified())
+                .andExpect(content().string(""));
+
+        mvc
+                .perform(get("/api/assets/conditional.txt").header("If-Modified-Since", "Thu, 04 Aug 2016 00:00:00 GMT"))
+                .andExpect(status().isNotModified());
+
+        mvc
+                .perform(get("/api/assets/conditional.txt").header("If-None-Match", "\"foobar\""))
+                .andExpect(status().isOk())
+                .andExpect(content().string("Hello, World!"));
+    }
+
+    @Test
+    public void cachedAssetsShouldBeServedFromDisk() throws Exception {
+        final GridFSDBFile file = mockMessage("cached.txt");
+        when(this.gridFsTemplate.findOne(any(Query.class))).thenReturn(file);
+
+        for (int i = 0; i < 2; ++i) {
+            mvc
+                    .perform(get("/api/assets/cached.txt"))
+                    .andExpect(status().isOk())
+                    .andExpect(MockMvcResultMatchers.header().string("Content-Type", "text/plain"))
+                    .andExpect(MockMvcResultMatchers.header().string("Content-Length", "13"))
+                    .andExpect(MockMvcResultMatchers.header().string("ETag", "\"65a8e27d8879283831b664bd8b7f0ad4\""))
+                    .andExpect(content().string("Hello, World!"));
+        }
+        mvc
+                .perform(get("/api/assets/cached.txt").header("Range", "bytes=7-11"))
+                .andExpect(status().isPartialContent())
+                .andExpect(content().string("World"));
+
+        // Copies are keyed by content, other tests may already have copied
+        // the same message
+        verify(this.gridFsTemplate).findOne(any(Query.class));
+        verify(file, atMost(1)).writeTo(any(File.class));
+        verify(file, never()).getInputStream();
+    }
+
+    @Test
+    public void derivativesShouldBeCreatedOnceAndServedLikeAssets() throws Exception {
+        final byte[] original = StreamUtils.copyToByteArray(this.getClass().getResourceAsStream("/eu/euregjug/site/assets/asset.png"));
+        final GridFSDBFile source = mock(GridFSDBFile.class);
+        when(source.getContentType()).thenReturn("image/png");
+        when(source.getFilename()).thenReturn("derivative.png");
+        when(source.getInputStream()).then(invocation -> new ByteArrayInputStream(original));
+        when(source.getMetaData()).thenReturn(new BasicDBObject(AssetService.METADATA_SHA256, "91a636eb757131f3dfc976cd645293a1639fb86b891a76062514f88cfbed03a5"));
+
+        final String derivativeFilename = "derivatives/91a636eb757131f3dfc976cd645293a1639fb86b891a76062514f88cfbed03a5/320-75.jpg";
+        final ByteArrayOutputStream stored = new ByteArrayOutputStream();
+        final GridFSDBFile derivative = mock(GridFSDBFile.class);
+        when(derivative.getContentType()).thenReturn("image/jpeg");
+        when(derivative.getMD5()).thenReturn("d41d8cd98f00b204e9800998ecf8427e");
+        when(derivative.getLength()).then(invocation -> (long) stored.size());
+        when(derivative.getInputStream()).then(invocation -> new ByteArrayInputStream(stored.toByteArray()));
+        when(derivative.writeTo(any(File.class))).then(invocation -> {
+            Files.write(invocation.getArgumentAt(0, File.class).toPath(), stored.toByteArray());
+            return (long) stored.size();
+        });
+
+        final Query derivativeQuery = Query.query(Criteria.where("filename").is(derivativeFilename));
+        when(this.gridFsTemplate.findOne(any(Query.class))).thenReturn(source);
+        when(this.gridFsTemplate.findOne(derivativeQuery)).thenReturn(null, derivative);
+        when(this.gridFsTemplate.store(any(InputStream.class), eq(derivativeFilename), eq("image/jpeg"), any(BasicDBObject.class))).then(invocation -> {
+            StreamUtils.copy(invocation.getArgumentAt(0, InputStream.class), stored);
+            return derivative;
+        });
+
+        for (int i = 0; i < 2; ++i) {
+            mvc
+                    .perform(get("/api/assets/derivative.png").param("width", "320").param("quality", "75"))
+                    .andExpect(status().isOk())
+                    .andExpect(MockMvcResultMatchers.header().string("Content-Type", "image/jpeg"))
+                    .andExpect(MockMvcResultMatchers.header().string("Content-Disposition", "inline; filename=\"derivative.jpg\""));
+        }
+
+        final BufferedImage image = ImageIO.read(new ByteArrayInputStream(stored.toByteArray()));
+        assertThat(image.getWidth(), is(262));
+        assertThat(image.getHeight(), is(121));
+        verify(this.gridFsTemplate).store(any(InputStream.class), eq(derivativeFilename), eq("image/jpeg"), eq(new BasicDBObject(AssetDerivativeService.METADATA_DERIVATIVE_OF, "91a636eb757131f3dfc976cd645293a1639fb86b891a76062514f88cfbed03a5")));
+        verify(this.gridFsTemplate, times(2)).findOne(derivativeQuery);
+    }
+
+    @Test
+    public void invalidDerivativesShouldBeRejected() throws Exception {
+        mvc
+                .perform(get("/api/assets/invalid.png").param("width", "321"))
+                .andExpect(status().isBadRequest());
+
+        mvc
+                .perform(get("/api/assets/invalid.png").param("width", "320").param("format", "gif"))
+                .andExpect(status().isBadRequest());
+
+        mvc
+                .perform(get("/api/assets/invalid.png").param("width", "320").param("quality", "0"))
+                .andExpect(status().isBadRequest());
+
+        verifyNoMoreInteractions(this.gridFsTemplate);
+    }
+
+    private static Answer<GridFSFile> readContentAndReturn(final GridFSFile storedFile) {
+        return invocation -> {
+            StreamUtils.copyToByteArray(invocation.getArgumentAt(0, InputStream.class));
+            return storedFile;
+        };
+    }
+
+    private static GridFSDBFile mockMessage(final String filename) throws IOException {
+        final GridFSDBFile file = mock(GridFSDBFile.class);
+        when(file.getContentType()).thenReturn("text/plain");
+        when(file.getFilename()).thenReturn(filename);
+        when(file.getInputStream()).then(invocation -> new ByteArrayInputStream(MESSAGE));
+        when(file.writeTo(any(File.class))).then(invocation -> {
+            Files.write(invocation.getArgumentAt(0, File.class).toPath(), MESSAGE);
+            return (long) MESSAGE.length;
+        });
+        when(file.getLength()).thenReturn((long) MESSAGE.length);
+        when(file.getMD5()).thenReturn("65a8e27d8879283831b664bd8b7f0ad4");
+        when(file.getUploadDate()).thenReturn(Date.from(LocalDate.of(2016, 8, 4).atStartOfDay(ZoneId.of("UTC")).toInstant()));
+        return file;
+    }
 }
@@ -0,0 +1,142 @@
+/*
+ * Copyright 2018 EuregJUG.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.euregjug.site.assets;
+
+import com.mongodb.gridfs.GridFSDBFile;
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Map;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.boot.actuate.metrics.Metric;
+
+import static java.util.stream.Collectors.toMap;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class AssetCacheTest {
+
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void leastRecentlyUsedAssetsShouldBeEvicted() throws Exception {
+        final File directory = this.temporaryFolder.newFolder();
+        final File leftOver = new File(directory, "left-over");
+        Files.write(leftOver.toPath(), new byte[]{1});
+        final AssetCache assetCache = new AssetCache(true, directory.getAbsolutePath(), 20, 10);
+        assertThat(leftOver.exists(), is(false));
+
+        final AssetResource a = assetCache.put("a.txt", mockFile("a.txt", 8));
+        assetCache.release(a);
+        assertThat(a, is(instanceOf(AssetCache.CachedAssetResource.class)));
+        assertThat(a.getFilename(), is("a.txt"));
+        assertThat(a.getEtag(), is("\"a.txt-md5\""));
+        assertThat(a.contentLength(), is(8L));
+        assertThat(getAndRelease(assetCache, "a.txt"), is(sameInstance(a)));
+
+        assertThat(assetCache.put("tooLarge.txt", mockFile("tooLarge.txt", 11)), is(instanceOf(GridFsAssetResource.class)));
+        assetCache.release(assetCache.put("b.txt", mockFile("b.txt", 8)));
+        getAndRelease(assetCache, "a.txt");
+        assetCache.release(assetCache.put("c.txt", mockFile("c.txt", 8)));
+
+        assertThat(assetCache.getIfPresent("b.txt"), is(nullValue()));
+        assertThat(getAndRelease(assetCache, "a.txt"), is(sameInstance(a)));
+        assertThat(directory.list().length, is(2));
+
+        final Map<String, Number> metrics = assetCache.metrics().stream().collect(toMap(Metric::getName, Metric::getValue));
+        assertThat(metrics.get("assets.cache.hits"), is(3L));
+        assertThat(metrics.get("assets.cache.misses"), is(4L));
+        assertThat(metrics.get("assets.cache.evictions"), is(1L));
+        assertThat(metrics.get("assets.cache.count"), is(2L));
+        assertThat(metrics.get("assets.cache.size"), is(16L));
+    }
+
+    @Test
+    public void copiesShouldBeDeletedOnlyAfterTheirLastRelease() throws Exception {
+        final File directory = this.temporaryFolder.newFolder();
+        final AssetCache assetCache = new AssetCache(true, directory.getAbsolutePath(), 10, 10);
+
+        final AssetResource a = assetCache.put("a.txt", mockFile("a.txt", 8));
+        final AssetResource sameA = assetCache.getIfPresent("a.txt");
+        assetCache.release(assetCache.put("b.txt", mockFile("b.txt", 8)));
+
+        assertThat(assetCache.getIfPresent("a.txt"), is(nullValue()));
+        assertThat(a.exists(), is(true));
+        assetCache.release(a);
+        assertThat(a.exists(), is(true));
+        assetCache.release(sameA);
+        assertThat(a.exists(), is(false));
+
+        final Map<String, Number> metrics = assetCache.metrics().stream().collect(toMap(Metric::getName, Metric::getValue));
+        assertThat(metrics.get("assets.cache.count"), is(1L));
+        assertThat(metrics.get("assets.cache.size"), is(8L));
+    }
+
+    @Test
+    public void assetsWithTheSameContentShouldShareOneCopy() throws Exception {
+        final File directory = this.temporaryFolder.newFolder();
+        final AssetCache assetCache = new AssetCache(true, directory.getAbsolutePath(), 20, 10);
+
+        final GridFSDBFile file = mockFile("a.txt", 8);
+        final AssetResource byName = assetCache.put("a.txt", file);
+        final AssetResource byAlias = assetCache.put("alias.txt", file);
+        assetCache.release(byName);
+        assetCache.release(byAlias);
+
+        assertThat(byAlias.getFile(), is(byName.getFile()));
+        assertThat(getAndRelease(assetCache, "alias.txt"), is(sameInstance(byAlias)));
+        assertThat(directory.list().length, is(1));
+        verify(file, times(1)).writeTo(any(File.class));
+    }
+
+    @Test
+    public void disabledCacheShouldNotCopyAssets() throws Exception {
+        final File directory = this.temporaryFolder.newFolder();
+        final AssetCache assetCache = new AssetCache(false, directory.getAbsolutePath(), 20, 10);
+
+        assertThat(assetCache.put("a.txt", mockFile("a.txt", 8)), is(instanceOf(GridFsAssetResource.class)));
+        assertThat(assetCache.getIfPresent("a.txt"), is(nullValue()));
+        assertThat(directory.list().length, is(0));
+    }
+
+    private static AssetResource getAndRelease(final AssetCache assetCache, final String key) {
+        final AssetResource rv = assetCache.getIfPresent(key);
+        assetCache.release(rv);
+        return rv;
+    }
+
+    private static GridFSDBFile mockFile(final String filename, final int length) throws Exception {
+        final GridFSDBFile file = mock(GridFSDBFile.class);
+        when(file.getFilename()).thenReturn(filename);
+        when(file.getMD5()).thenReturn(filename + "-md5");
+        when(file.getLength()).thenReturn((long) length);
+        when(file.writeTo(any(File.class))).then(invocation -> {
+            Files.write(invocation.getArgumentAt(0, File.class).toPath(), new byte[length]);
+            return (long) length;
+        });
+        return file;
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright 2018 EuregJUG.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.euregjug.site.assets;
+
+import com.mongodb.DBObject;
+import com.mongodb.gridfs.GridFSDBFile;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import javax.imageio.ImageIO;
+import org.junit.Test;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.gridfs.GridFsTemplate;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.mockingDetails;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class AssetDerivativeServiceTest {
+
+    @Test
+    public void imagesShouldBeScaledDownButNotUp() throws Exception {
+        final byte[] original = png(1000, 500, BufferedImage.TYPE_INT_ARGB);
+
+        BufferedImage derivative = ImageIO.read(new ByteArrayInputStream(AssetDerivativeService.render(new ByteArrayInputStream(original), derivative(320, "png", 80))));
+        assertThat(derivative.getWidth(), is(320));
+        assertThat(derivative.getHeight(), is(160));
+        assertThat(derivative.getColorModel().hasAlpha(), is(true));
+
+        derivative = ImageIO.read(new ByteArrayInputStream(AssetDerivativeService.render(new ByteArrayInputStream(original), derivative(1920, "jpg", 80))));
+        assertThat(derivative.getWidth(), is(1000));
+        assertThat(derivative.getHeight(), is(500));
+        assertThat(derivative.getColorModel().hasAlpha(), is(false));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unsupportedImagesShouldBeRejected() throws Exception {
+        AssetDerivativeService.render(new ByteArrayInputStream("Hello, World!".getBytes("UTF-8")), derivative(320, "jpg", 80));
+    }
+
+    @Test
+    public void qualityShouldOnlyApplyToJpg() {
+        assertThat(derivative(320, "PNG", 50).toString(), is("width=320&format=png&quality=100"));
+        assertThat(derivative(320, "jpg", 50).toString(), is("width=320&format=jpg&quality=50"));
+    }
+
+    @Test
+    public void concurrentRequestsShouldCreateDerivativeOnce() throws Exception {
+        final byte[] original = png(400, 200, BufferedImage.TYPE_INT_RGB);
+        final GridFSDBFile source = mock(GridFSDBFile.class);
+        when(source.getContentType()).thenReturn("image/png");
+        when(source.getMD5()).thenReturn("md5");
+        when(source.getInputStream()).then(invocation -> new ByteArrayInputStream(original));
+
+        final GridFSDBFile created = mock(GridFSDBFile.class);
+        final CountDownLatch storing = new CountDownLatch(1);
+        final CountDownLatch requested = new CountDownLatch(1);
+        final GridFsTemplate gridFs = mock(GridFsTemplate.class);
+        final AssetDerivativeService service = new AssetDerivativeService(gridFs, new int[]{320}, 1, 1, 5000);
+        when(gridFs.findOne(any(Query.class))).thenReturn(null, null, created);
+        when(gridFs.store(any(InputStream.class), anyString(), anyString(), any(DBObject.class))).then(invocation -> {
+            storing.countDown();
+            requested.await();
+            return created;
+        });
+
+        final ExecutorService requests = Executors.newFixedThreadPool(2);
+        try {
+            final Future<GridFSDBFile> first = requests.submit(() -> service.getOrCreate(source, service.getDerivative(320, "jpg", 80)));
+            storing.await();
+            final Future<GridFSDBFile> second = requests.submit(() -> service.getOrCreate(source, service.getDerivative(320, "jpg", 80)));
+            // Wait until the second request looked for the derivative and
+            // give it some time to join the running creation
+            while (mockingDetails(gridFs).getInvocations().stream().filter(i -> "findOne".equals(i.getMethod().getName())).count() < 2) {
+                Thread.sleep(10);
+            }
+            Thread.sleep(100);
+            requested.countDown();
+
+            assertThat(first.get(), is(sameInstance(created)));
+            assertThat(second.get(), is(sameInstance(created)));
+        } finally {
+            requests.shutdownNow();
+            service.shutdown();
+        }
+        verify(gridFs, times(1)).store(any(InputStream.class), anyString(), anyString(), any(DBObject.class));
+        verify(source, times(1)).getInputStream();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void onlyImagesShouldHaveDerivatives() {
+        final GridFSDBFile source = mock(GridFSDBFile.class);
+        when(source.getContentType()).thenReturn("text/plain");
+        new AssetDerivativeService(mock(GridFsTemplate.class), new int[]{320}, 1, 1, 5000)
+                .getOrCreate(source, derivative(320, "jpg", 80));
+    }
+
+    private static AssetDerivativeService.Derivative derivative(final int width, final String format, final int quality) {
+        return AssetDerivativeService.Derivative.of(width, format, quality, Arrays.asList(320, 1920));
+    }
+
+    private static byte[] png(final int width, final int height, final int type) throws Exception {
+        final ByteArrayOutputStream rv = new ByteArrayOutputStream();
+        ImageIO.write(new BufferedImage(width, height, type), "png", rv);
+        return rv.toByteArray();
+    }
+}
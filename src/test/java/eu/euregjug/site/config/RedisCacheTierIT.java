@@ -0,0 +1,126 @@
+/*
+ * Copyright 2018 EuregJUG.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.euregjug.site.config;
+
+import eu.euregjug.site.posts.Post;
+import java.time.LocalDate;
+import java.util.Optional;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.cache.concurrent.ConcurrentMapCache;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.jedis.JedisConnectionFactory;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+
+import static java.util.Collections.singletonList;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assume.assumeNoException;
+
+/**
+ * Runs two instances of the Redis tier against a real Redis. The Redis is
+ * started by the docker-maven-plugin before the integration tests, the test
+ * is skipped if no Redis is reachable.
+ */
+public class RedisCacheTierIT {
+
+    private JedisConnectionFactory connectionFactory;
+
+    private RedisMessageListenerContainer listenerContainer1;
+
+    private RedisMessageListenerContainer listenerContainer2;
+
+    private TwoLevelCache node1;
+
+    private TwoLevelCache node2;
+
+    @Before
+    public void connect() throws InterruptedException {
+        this.connectionFactory = new JedisConnectionFactory();
+        this.connectionFactory.setPort(Optional.ofNullable(System.getenv("it-cache.port")).filter(port -> port.matches("\\d+")).map(Integer::valueOf).orElse(6379));
+        this.connectionFactory.afterPropertiesSet();
+        try {
+            final RedisConnection connection = this.connectionFactory.getConnection();
+            connection.ping();
+            connection.close();
+        } catch (RuntimeException e) {
+            this.connectionFactory.destroy();
+            assumeNoException("No Redis reachable", e);
+        }
+
+        final RedisCacheTier tier1 = new RedisCacheTier(this.connectionFactory, singletonList("renderedPosts"), 60);
+        this.listenerContainer1 = newListenerContainer(tier1);
+        this.node1 = (TwoLevelCache) tier1.decorate(new ConcurrentMapCache("renderedPosts"));
+        this.node1.clear();
+
+        final RedisCacheTier tier2 = new RedisCacheTier(this.connectionFactory, singletonList("renderedPosts"), 60);
+        this.listenerContainer2 = newListenerContainer(tier2);
+        this.node2 = (TwoLevelCache) tier2.decorate(new ConcurrentMapCache("renderedPosts"));
+        // Subscriptions are established asynchronously
+        Thread.sleep(500);
+    }
+
+    private RedisMessageListenerContainer newListenerContainer(final RedisCacheTier tier) {
+        final RedisMessageListenerContainer rv = new RedisMessageListenerContainer();
+        rv.setConnectionFactory(this.connectionFactory);
+        rv.addMessageListener(tier, new ChannelTopic(RedisCacheTier.CHANNEL));
+        rv.afterPropertiesSet();
+        rv.start();
+        return rv;
+    }
+
+    @After
+    public void disconnect() throws Exception {
+        if (this.listenerContainer1 != null) {
+            this.node1.clear();
+            this.listenerContainer1.destroy();
+            this.listenerContainer2.destroy();
+            this.connectionFactory.destroy();
+        }
+    }
+
+    @Test
+    public void postsShouldSurviveTheRoundTripThroughRedis() {
+        final Post post = new Post(java.sql.Date.valueOf(LocalDate.of(2018, 3, 1)), "a-slug", "A title", "<p>Some content äöü</p>");
+        this.node1.put(1, post);
+
+        assertThat(this.node2.getLocal().get(1), is(nullValue()));
+        final Post shared = this.node2.get(1, Post.class);
+        assertThat(shared.getPublishedOn(), is(post.getPublishedOn()));
+        assertThat(shared.getSlug(), is(post.getSlug()));
+        assertThat(shared.getTitle(), is(post.getTitle()));
+        assertThat(shared.getContent(), is(post.getContent()));
+    }
+
+    @Test
+    public void replacedEntriesShouldBeEvictedOnOtherNodes() throws InterruptedException {
+        this.node1.put(1, "v1");
+        assertThat(this.node2.get(1).get(), is("v1"));
+        assertThat(this.node2.getLocal().get(1), is(notNullValue()));
+
+        this.node1.put(1, "v2");
+        for (int i = 0; i < 50 && this.node2.getLocal().get(1) != null; ++i) {
+            Thread.sleep(100);
+        }
+        assertThat(this.node2.getLocal().get(1), is(nullValue()));
+        assertThat(this.node2.get(1).get(), is("v2"));
+        assertThat(this.node1.getLocal().get(1).get(), is("v2"));
+    }
+}
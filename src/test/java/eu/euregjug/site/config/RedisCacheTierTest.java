@@ -0,0 +1,90 @@
+/*
+ * Copyright 2018 EuregJUG.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.euregjug.site.config;
+
+import eu.euregjug.site.config.RedisCacheTier.Invalidation;
+import eu.euregjug.site.posts.Post;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.Date;
+import org.junit.Test;
+import org.springframework.cache.Cache;
+import org.springframework.cache.concurrent.ConcurrentMapCache;
+import org.springframework.data.redis.connection.DefaultMessage;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.serializer.JdkSerializationRedisSerializer;
+
+import static java.util.Collections.singletonList;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.mock;
+
+public class RedisCacheTierTest {
+
+    private final CompactRedisSerializer serializer = new CompactRedisSerializer();
+
+    @Test
+    public void onlySharedCachesShouldBeDecorated() {
+        final RedisCacheTier tier = new RedisCacheTier(mock(RedisConnectionFactory.class), singletonList("renderedPosts"), 60);
+        final Cache wro4j = new ConcurrentMapCache("wro4j");
+        assertThat(tier.decorate(wro4j), is(sameInstance(wro4j)));
+        assertThat(tier.decorate(new ConcurrentMapCache("renderedPosts")), is(instanceOf(TwoLevelCache.class)));
+    }
+
+    @Test
+    public void invalidationsFromOtherNodesShouldEvictLocally() {
+        final RedisCacheTier tier = new RedisCacheTier(mock(RedisConnectionFactory.class), singletonList("renderedPosts"), 60);
+        final TwoLevelCache cache = (TwoLevelCache) tier.decorate(new ConcurrentMapCache("renderedPosts"));
+        cache.getLocal().put(1, "v1");
+        cache.getLocal().put(2, "v2");
+
+        final byte[] channel = RedisCacheTier.CHANNEL.getBytes(StandardCharsets.UTF_8);
+        tier.onMessage(new DefaultMessage(channel, serializer.serialize(new Invalidation("other", "renderedPosts", 1))), null);
+        assertThat(cache.getLocal().get(1), is(nullValue()));
+        assertThat(cache.getLocal().get(2), is(notNullValue()));
+
+        tier.onMessage(new DefaultMessage(channel, serializer.serialize(new Invalidation("other", "renderedPosts", null))), null);
+        assertThat(cache.getLocal().get(2), is(nullValue()));
+    }
+
+    @Test
+    public void postsShouldBeSerializedCompactly() {
+        final StringBuilder content = new StringBuilder();
+        for (int i = 0; i < 100; ++i) {
+            content.append("<div class=\"paragraph\">\n<p>Some <strong>rendered</strong> content äöü</p>\n</div>\n");
+        }
+        final Post post = new Post(java.sql.Date.valueOf(LocalDate.of(2018, 3, 1)), "a-slug", "A title", content.toString());
+
+        final byte[] serialized = serializer.serialize(post);
+        assertThat(serialized.length, is(lessThan(new JdkSerializationRedisSerializer().serialize(post).length / 10)));
+
+        final Post deserialized = (Post) serializer.deserialize(serialized);
+        assertThat(deserialized.getPublishedOn(), is(post.getPublishedOn()));
+        assertThat(deserialized.getSlug(), is(post.getSlug()));
+        assertThat(deserialized.getTitle(), is(post.getTitle()));
+        assertThat(deserialized.getContent(), is(post.getContent()));
+
+        final Post withoutContent = (Post) serializer.deserialize(serializer.serialize(new Post(new Date(), "a-slug", "A title", null)));
+        assertThat(withoutContent.getContent(), is(nullValue()));
+        assertThat(serializer.deserialize(serializer.serialize("other")), is("other"));
+        assertThat(serializer.deserialize(serializer.serialize(null)), is(nullValue()));
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright 2018 EuregJUG.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.euregjug.site.config;
+
+import eu.euregjug.site.posts.Post;
+import java.util.Date;
+import java.util.Map;
+import java.util.stream.Collectors;
+import org.junit.Test;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.cache.Cache;
+import org.springframework.cache.concurrent.ConcurrentMapCache;
+
+import static java.util.Collections.singletonMap;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.hasEntry;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class SpecBasedGuavaCacheManagerTest {
+
+    @Test
+    public void weightedCachesShouldEvictBySize() {
+        final SpecBasedGuavaCacheManager cacheManager = new SpecBasedGuavaCacheManager("maximumSize=10,recordStats", singletonMap("renderedPosts", "maximumWeight=5000,concurrencyLevel=1,recordStats"));
+        final Cache cache = cacheManager.getCache("renderedPosts");
+        cache.put(1, new Post(new Date(), "post-1", "Post 1", new String(new char[1000])));
+        assertThat(cache.get(1).get(), is(notNullValue()));
+        cache.put(2, new Post(new Date(), "post-2", "Post 2", new String(new char[2000])));
+        assertThat(cache.get(1), is(nullValue()));
+        assertThat(cache.get(3), is(nullValue()));
+
+        final Map<String, Number> metrics = cacheManager.metrics().stream().collect(Collectors.toMap(Metric::getName, Metric::getValue));
+        assertThat(metrics, hasEntry("cache.renderedPosts.hits", (Number) 1L));
+        assertThat(metrics, hasEntry("cache.renderedPosts.misses", (Number) 2L));
+        assertThat(metrics, hasEntry("cache.renderedPosts.evictions", (Number) 1L));
+    }
+
+    @Test
+    public void unconfiguredCachesShouldUseDefaultSpec() {
+        final SpecBasedGuavaCacheManager cacheManager = new SpecBasedGuavaCacheManager("maximumSize=1", singletonMap("renderedPosts", "maximumWeight=5000"));
+        final Cache cache = cacheManager.getCache("wro4j");
+        cache.put(1, "a");
+        cache.put(2, "b");
+        assertThat(cache.get(1), is(nullValue()));
+        assertThat(cache.get(2).get(), is("b"));
+    }
+
+    @Test
+    public void weigherShouldGrowWithContent() {
+        final CacheEntryWeigher weigher = new CacheEntryWeigher();
+        final int small = weigher.weigh(1, new Post(new Date(), "a", "b", "c"));
+        final int large = weigher.weigh(1, new Post(new Date(), "a", "b", new String(new char[1000])));
+        assertThat(large - small, is(2 * 999));
+        assertThat(weigher.weigh("key", new Object()), greaterThan(CacheEntryWeigher.DEFAULT_WEIGHT));
+    }
+
+    @Test
+    public void metricsShouldSkipCachesOtherThanGuava() {
+        final SpecBasedGuavaCacheManager cacheManager = new SpecBasedGuavaCacheManager("maximumSize=1", singletonMap("renderedPosts", "maximumWeight=5000"));
+        cacheManager.setCacheDecorator(cache -> new ConcurrentMapCache(cache.getName()));
+        cacheManager.getCache("renderedPosts");
+        assertThat(cacheManager.metrics(), is(empty()));
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright 2018 EuregJUG.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.euregjug.site.config;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+import org.springframework.cache.Cache;
+import org.springframework.cache.concurrent.ConcurrentMapCache;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class TwoLevelCacheTest {
+
+    /**
+     * Two instances sharing one remote cache, invalidations are delivered
+     * synchronously to all other instances.
+     */
+    private final Cache remote = new ConcurrentMapCache("renderedPosts");
+
+    private final List<TwoLevelCache> nodes = new ArrayList<>();
+
+    private final TwoLevelCache node1 = newNode();
+
+    private final TwoLevelCache node2 = newNode();
+
+    private TwoLevelCache newNode() {
+        final TwoLevelCache[] self = new TwoLevelCache[1];
+        self[0] = new TwoLevelCache(new ConcurrentMapCache("renderedPosts"), this.remote, (cacheName, key) -> this.nodes.stream()
+                .filter(node -> node != self[0])
+                .forEach(node -> {
+                    if (key == null) {
+                        node.clearLocal();
+                    } else {
+                        node.evictLocal(key);
+                    }
+                })
+        );
+        this.nodes.add(self[0]);
+        return self[0];
+    }
+
+    @Test
+    public void valuesShouldBeSharedBetweenNodes() {
+        node1.put(1, "v1");
+        assertThat(remote.get(1).get(), is("v1"));
+        assertThat(node2.getLocal().get(1), is(nullValue()));
+        assertThat(node2.get(1).get(), is("v1"));
+        assertThat(node2.getLocal().get(1).get(), is("v1"));
+        assertThat(node2.get(1, String.class), is("v1"));
+    }
+
+    @Test
+    public void changesShouldInvalidateOtherNodes() {
+        node1.put(1, "v1");
+        node2.get(1);
+
+        node1.put(1, "v2");
+        assertThat(node2.getLocal().get(1), is(nullValue()));
+        assertThat(node2.get(1).get(), is("v2"));
+
+        node2.evict(1);
+        assertThat(node1.get(1), is(nullValue()));
+
+        node1.put(2, "v3");
+        node2.get(2);
+        node1.clear();
+        assertThat(node2.getLocal().get(2), is(nullValue()));
+    }
+
+    @Test
+    public void valueLoaderShouldOnlyBeCalledIfNoTierHasAValue() {
+        node1.put(1, "v1");
+        assertThat(node2.get(1, () -> "loaded"), is("v1"));
+        assertThat(node2.get(2, () -> "loaded"), is("loaded"));
+        assertThat(remote.get(2).get(), is("loaded"));
+    }
+
+    @Test
+    public void writesButNotFillsShouldBeAnnounced() {
+        final List<Object> announcedKeys = new ArrayList<>();
+        final TwoLevelCache cache = new TwoLevelCache(new ConcurrentMapCache("renderedPosts"), this.remote, (cacheName, key) -> announcedKeys.add(key));
+
+        assertThat(cache.get(1), is(nullValue()));
+        assertThat(cache.get(2, () -> "loaded"), is("loaded"));
+        assertThat(announcedKeys, is(empty()));
+
+        cache.put(1, "v1");
+        assertThat(announcedKeys, contains(1));
+        assertThat(remote.get(1).get(), is("v1"));
+        cache.evict(2);
+        assertThat(announcedKeys, contains(1, 2));
+    }
+
+    @Test
+    public void remoteFailuresShouldBeTolerated() {
+        final Cache failingRemote = mock(Cache.class);
+        when(failingRemote.get(any())).thenThrow(new IllegalStateException("Connection refused"));
+        doThrow(new IllegalStateException("Connection refused")).when(failingRemote).put(any(), any());
+        final TwoLevelCache cache = new TwoLevelCache(new ConcurrentMapCache("renderedPosts"), failingRemote, (cacheName, key) -> {
+            throw new IllegalStateException("Connection refused");
+        });
+
+        assertThat(cache.get(1), is(nullValue()));
+        cache.put(1, "v1");
+        assertThat(cache.get(1).get(), is("v1"));
+    }
+}
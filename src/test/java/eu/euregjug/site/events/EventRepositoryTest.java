@@ -0,0 +1,62 @@
+/*
+ * Copyright 2018 EuregJUG.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.euregjug.site.events;
+
+import java.util.GregorianCalendar;
+import java.util.List;
+import java.util.stream.Stream;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import static java.util.stream.Collectors.toList;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+@RunWith(SpringRunner.class)
+@DataJpaTest
+public class EventRepositoryTest {
+
+    @Autowired
+    private EventRepository eventRepository;
+
+    @Test
+    public void streamCalendarEntriesHeldBetweenShouldWork() {
+        final EventEntity closed = new EventEntity(new GregorianCalendar(2016, 6, 7, 19, 0), "event-2", "desc-2");
+        closed.setStatus(EventEntity.Status.closed);
+        closed.setSpeaker("Farin Urlaub");
+        this.eventRepository.save(closed);
+        this.eventRepository.save(new EventEntity(new GregorianCalendar(2016, 0, 1, 0, 0), "event-1", "desc-1"));
+        this.eventRepository.save(new EventEntity(new GregorianCalendar(2016, 11, 31, 23, 59), "event-3", "desc-3"));
+        this.eventRepository.save(new EventEntity(new GregorianCalendar(2017, 0, 1, 0, 0), "event-4", "desc-4"));
+
+        final List<Object[]> rows;
+        try (Stream<Object[]> entries = this.eventRepository.streamCalendarEntriesHeldBetween(new GregorianCalendar(2016, 0, 1), new GregorianCalendar(2017, 0, 1))) {
+            rows = entries.collect(toList());
+        }
+
+        assertThat(rows.stream().map(row -> row[4]).collect(toList()), contains("event-1", "event-2", "event-3"));
+        final Object[] row = rows.get(1);
+        assertThat(row.length, is(8));
+        assertThat(row[0], is(instanceOf(Integer.class)));
+        assertThat(row[5], is("Farin Urlaub"));
+        assertThat(row[6], is("desc-2"));
+    }
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright 2018 EuregJUG.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.euregjug.site.links;
+
+import eu.euregjug.site.support.ModificationStamp;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+@RunWith(SpringRunner.class)
+@DataJpaTest
+public class LinkRepositoryTest {
+
+    @Autowired
+    private LinkRepository linkRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    public void linksChangedWithPlainSqlShouldChangeTheModificationStamp() {
+        this.jdbcTemplate.update("Update links set updated_at = timestamp '2016-01-01 00:00:00'");
+        final ModificationStamp before = this.linkRepository.getModificationStamp();
+
+        this.jdbcTemplate.update("Update links set title = 'Java User Groups worldwide' where title = 'Java User Groups'");
+        final ModificationStamp after = this.linkRepository.getModificationStamp();
+
+        assertThat(after.getCount(), is(before.getCount()));
+        assertThat(after.getLastModified(), is(greaterThan(before.getLastModified())));
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright 2018 EuregJUG.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.euregjug.site.posts;
+
+import eu.euregjug.site.posts.PostEntity.Status;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.GregorianCalendar;
+import java.util.List;
+import org.joor.Reflect;
+import org.junit.Before;
+import org.junit.Test;
+
+import static java.util.stream.Collectors.toList;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class PostArchiveServiceTest {
+
+    private static final LocalDate JANUARY = LocalDate.of(2016, 1, 1);
+
+    private static final LocalDate FEBRUARY = LocalDate.of(2016, 2, 1);
+
+    private final PostRepository postRepository = mock(PostRepository.class);
+
+    private final PostArchiveService postArchiveService = new PostArchiveService(this.postRepository, 300);
+
+    @Before
+    public void prepareRepository() {
+        when(this.postRepository.findAllArchiveEntriesByStatus(Status.published)).thenReturn(Arrays.asList(
+                row(1, LocalDate.of(2016, 1, 10), 1),
+                row(2, LocalDate.of(2016, 1, 20), 2),
+                row(3, LocalDate.of(2016, 2, 5), 3),
+                row(4, LocalDate.of(2016, 1, 20), 4)
+        ));
+    }
+
+    @Test
+    public void archiveShouldBeBuiltOnce() {
+        assertThat(this.postArchiveService.getMonths().keySet(), contains(FEBRUARY, JANUARY));
+        assertThat(slugs(JANUARY), contains("slug-4", "slug-2", "slug-1"));
+        assertThat(slugs(FEBRUARY), contains("slug-3"));
+        assertThat(this.postArchiveService.getCounts().get(JANUARY), is(3));
+        assertThat(this.postArchiveService.getCounts().get(FEBRUARY), is(1));
+
+        verify(this.postRepository, times(1)).findAllArchiveEntriesByStatus(Status.published);
+    }
+
+    @Test
+    public void changesShouldBeIgnoredBeforeArchiveIsBuilt() {
+        this.postArchiveService.onPostChanged(new PostChangedEvent(post(1, LocalDate.of(2016, 1, 10), Status.published)));
+
+        verify(this.postRepository, never()).findAllArchiveEntriesByStatus(Status.published);
+    }
+
+    @Test
+    public void newPostsShouldBeAdded() {
+        this.postArchiveService.getMonths();
+        this.postArchiveService.onPostChanged(new PostChangedEvent(post(5, LocalDate.of(2016, 3, 1), Status.published)));
+
+        assertThat(this.postArchiveService.getMonths().keySet(), contains(LocalDate.of(2016, 3, 1), FEBRUARY, JANUARY));
+        assertThat(slugs(LocalDate.of(2016, 3, 1)), contains("slug-5"));
+        assertThat(this.postArchiveService.getCounts().get(JANUARY), is(3));
+    }
+
+    @Test
+    public void movedPostsShouldBeMoved() {
+        this.postArchiveService.getMonths();
+        this.postArchiveService.onPostChanged(new PostChangedEvent(post(3, LocalDate.of(2016, 1, 15), Status.published)));
+
+        assertThat(this.postArchiveService.getMonths().keySet(), contains(JANUARY));
+        assertThat(slugs(JANUARY), contains("slug-4", "slug-2", "slug-3", "slug-1"));
+        assertThat(this.postArchiveService.getCounts().containsKey(FEBRUARY), is(false));
+    }
+
+    @Test
+    public void unpublishedPostsShouldBeRemoved() {
+        this.postArchiveService.getMonths();
+        this.postArchiveService.onPostChanged(new PostChangedEvent(post(2, LocalDate.of(2016, 1, 20), Status.hidden)));
+
+        assertThat(slugs(JANUARY), contains("slug-4", "slug-1"));
+        assertThat(this.postArchiveService.getCounts().get(JANUARY), is(2));
+        verify(this.postRepository, never()).findOne(2);
+    }
+
+    @Test
+    public void expiredArchiveShouldBeBuiltAgain() {
+        final PostArchiveService expiringArchive = new PostArchiveService(this.postRepository, 0);
+        assertThat(expiringArchive.getCounts().get(FEBRUARY), is(1));
+        when(this.postRepository.findAllArchiveEntriesByStatus(Status.published)).thenReturn(Arrays.asList(
+                row(1, LocalDate.of(2016, 1, 10), 1),
+                row(3, LocalDate.of(2016, 2, 5), 3),
+                row(5, LocalDate.of(2016, 2, 6), 5)
+        ));
+
+        assertThat(expiringArchive.getCounts().get(JANUARY), is(1));
+        assertThat(expiringArchive.getCounts().get(FEBRUARY), is(2));
+        verify(this.postRepository, times(3)).findAllArchiveEntriesByStatus(Status.published);
+    }
+
+    private ArchivedPost row(final int id, final LocalDate publishedOn, final long createdAt) {
+        final GregorianCalendar createdAtCalendar = new GregorianCalendar();
+        createdAtCalendar.setTimeInMillis(createdAt);
+        return new ArchivedPost(id, toDate(publishedOn), createdAtCalendar, "slug-" + id, "title-" + id);
+    }
+
+    private PostEntity post(final int id, final LocalDate publishedOn, final Status status) {
+        final GregorianCalendar createdAt = new GregorianCalendar();
+        createdAt.setTimeInMillis(id);
+        final PostEntity rv = Reflect.on(new PostEntity(toDate(publishedOn), "slug-" + id, "title-" + id, "content"))
+                .set("id", id)
+                .set("createdAt", createdAt)
+                .get();
+        rv.setStatus(status);
+        return rv;
+    }
+
+    private static Date toDate(final LocalDate localDate) {
+        return Date.from(localDate.atStartOfDay(ZoneId.systemDefault()).toInstant());
+    }
+
+    private List<String> slugs(final LocalDate month) {
+        return this.postArchiveService.getMonths().get(month).stream().map(Post::getSlug).collect(toList());
+    }
+}
@@ -15,10 +15,22 @@
  */
 package eu.euregjug.site.posts;
 
+import eu.euregjug.site.posts.PostRenderingService.AsciiDocRenderer;
+import eu.euregjug.site.posts.PostRenderingService.RendererUnavailableException;
+import java.util.Arrays;
 import java.util.Date;
+import java.util.Iterator;
+import java.util.concurrent.CountDownLatch;
+import org.asciidoctor.Asciidoctor;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
 import org.junit.Test;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
 
 /**
  * @author Michael J. Simons, 2016-07-15
@@ -31,7 +43,7 @@ public class PostRenderingServiceTest {
         entity1.setFormat(PostEntity.Format.markdown);
         final PostEntity entity2 = new PostEntity(new Date(), "a-title", "A title", "some *ASCIIdoc* content");
         entity2.setFormat(PostEntity.Format.asciidoc);
-        final PostRenderingService postRenderingService = new PostRenderingService();
+        final PostRenderingService postRenderingService = new PostRenderingService(1, 60_000);
 
         Post post;
         post = postRenderingService.render(entity1);
@@ -39,5 +51,100 @@ public class PostRenderingServiceTest {
 
         post = postRenderingService.render(entity2);
         assertThat(post.getContent(), is("<div class=\"paragraph\">\n<p>some <strong>ASCIIdoc</strong> content</p>\n</div>"));
+        postRenderingService.shutdown();
+    }
+
+    @Test
+    public void renditionShouldBeUpdatedOnlyWhenStale() {
+        final PostEntity entity = new PostEntity(new Date(), "a-title", "A title", "some content");
+        entity.setFormat(PostEntity.Format.asciidoc);
+        final PostRenderingService postRenderingService = new PostRenderingService(1, 60_000);
+        try {
+            assertThat(entity.getRenderedContent(), is(nullValue()));
+            assertThat(postRenderingService.updateRendition(entity), is(true));
+            assertThat(entity.getRenderedContent(), is("<div class=\"paragraph\">\n<p>some content</p>\n</div>"));
+            assertThat(entity.getRendererVersion(), is(PostRenderingService.RENDERER_VERSION));
+            assertThat(postRenderingService.updateRendition(entity), is(false));
+
+            entity.setRendition("<p>stored</p>", entity.getContentHash(), entity.getRendererVersion());
+            assertThat(postRenderingService.render(entity).getContent(), is("<p>stored</p>"));
+
+            entity.setContent("other content");
+            assertThat(postRenderingService.hasCurrentRendition(entity), is(false));
+            assertThat(postRenderingService.render(entity).getContent(), is("<div class=\"paragraph\">\n<p>other content</p>\n</div>"));
+            assertThat(postRenderingService.updateRendition(entity), is(true));
+        } finally {
+            postRenderingService.shutdown();
+        }
+    }
+
+    @Test
+    public void failedRenditionsShouldNotBeStored() {
+        final PostEntity entity = new PostEntity(new Date(), "a-title", "A title", "some content");
+        entity.setFormat(PostEntity.Format.markdown);
+        final PostRenderingService postRenderingService = new PostRenderingService(1, 0);
+        try {
+            assertThat(postRenderingService.render(entity).getContent(), is(PostRenderingService.RENDERING_FAILED));
+            assertThat(postRenderingService.updateRendition(entity), is(false));
+            assertThat(entity.getRenderedContent(), is(nullValue()));
+            assertThat(entity.getContentHash(), is(nullValue()));
+
+            // No Asciidoctor instance is available while the pool is warming up
+            entity.setFormat(PostEntity.Format.asciidoc);
+            try {
+                postRenderingService.updateRendition(entity);
+                fail("Rendition should not be updated without a renderer");
+            } catch (RendererUnavailableException e) {
+                assertThat(entity.getRenderedContent(), is(nullValue()));
+                assertThat(entity.getContentHash(), is(nullValue()));
+            }
+        } finally {
+            postRenderingService.shutdown();
+        }
+    }
+
+    @Test(expected = RendererUnavailableException.class)
+    public void checkoutShouldTimeoutWhilePoolIsWarmingUp() {
+        final AsciiDocRenderer renderer = new AsciiDocRenderer(1, 0);
+        try {
+            renderer.checkout();
+        } finally {
+            renderer.shutdown();
+        }
+    }
+
+    @Test
+    public void allInstancesShouldBeDestroyedOnShutdown() throws InterruptedException {
+        final Asciidoctor checkedOut = mock(Asciidoctor.class);
+        final Asciidoctor idle = mock(Asciidoctor.class);
+        final Asciidoctor late = mock(Asciidoctor.class);
+        final CountDownLatch creatingLate = new CountDownLatch(1);
+        final CountDownLatch shutdown = new CountDownLatch(1);
+        final Iterator<Asciidoctor> instances = Arrays.asList(checkedOut, idle).iterator();
+        final AsciiDocRenderer renderer = new AsciiDocRenderer(3, 60_000, () -> {
+            if (instances.hasNext()) {
+                return instances.next();
+            }
+            creatingLate.countDown();
+            try {
+                shutdown.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return late;
+        });
+
+        assertThat(renderer.checkout(), is(checkedOut));
+        renderer.checkin(renderer.checkout());
+        creatingLate.await();
+        renderer.shutdown();
+        shutdown.countDown();
+
+        verify(idle).shutdown();
+        verify(late, timeout(10_000)).shutdown();
+        verify(checkedOut, never()).shutdown();
+        renderer.checkin(checkedOut);
+        verify(checkedOut).shutdown();
+        assertThat(renderer.size(), is(0));
     }
 }
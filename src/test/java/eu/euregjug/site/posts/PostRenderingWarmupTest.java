@@ -0,0 +1,80 @@
+/*
+ * Copyright 2018 EuregJUG.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.euregjug.site.posts;
+
+import eu.euregjug.site.posts.PostEntity.Status;
+import eu.euregjug.site.posts.PostRenderingWarmup.State;
+import java.util.Date;
+import java.util.function.Consumer;
+import org.junit.Test;
+import org.springframework.boot.actuate.health.Health;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.hasEntry;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.springframework.boot.actuate.health.Status.OUT_OF_SERVICE;
+import static org.springframework.boot.actuate.health.Status.UP;
+
+public class PostRenderingWarmupTest {
+
+    private final PostRepository postRepository = mock(PostRepository.class);
+
+    private final PostRenderingService postRenderingService = mock(PostRenderingService.class);
+
+    @Test
+    public void warmupShouldRenderAllPublishedPosts() {
+        final PostEntity post1 = new PostEntity(new Date(), "post-1", "Post 1", "Content 1");
+        final PostEntity post2 = new PostEntity(new Date(), "post-2", "Post 2", "Content 2");
+        when(this.postRepository.countByStatus(Status.published)).thenReturn(2L);
+        doAnswer(invocation -> {
+            @SuppressWarnings("unchecked")
+            final Consumer<PostEntity> action = invocation.getArgumentAt(0, Consumer.class);
+            action.accept(post1);
+            action.accept(post2);
+            return null;
+        }).when(this.postRepository).forEachPublished(any());
+        when(this.postRenderingService.render(post2)).thenThrow(new IllegalStateException());
+
+        final PostRenderingWarmup warmup = new PostRenderingWarmup(this.postRepository, this.postRenderingService, true, 2);
+        assertThat(warmup.health().getStatus(), is(OUT_OF_SERVICE));
+
+        warmup.warmup();
+
+        verify(this.postRenderingService, times(1)).render(post1);
+        verify(this.postRenderingService, times(1)).render(post2);
+        final Health health = warmup.health();
+        assertThat(health.getStatus(), is(UP));
+        assertThat(health.getDetails(), hasEntry("state", (Object) State.finished));
+        assertThat(health.getDetails(), hasEntry("total", (Object) 2L));
+        assertThat(health.getDetails(), hasEntry("rendered", (Object) 1));
+        assertThat(health.getDetails(), hasEntry("failed", (Object) 1));
+    }
+
+    @Test
+    public void disabledWarmupShouldBeHealthy() {
+        final PostRenderingWarmup warmup = new PostRenderingWarmup(this.postRepository, this.postRenderingService, false, 0);
+        warmup.start();
+        assertThat(warmup.getState(), equalTo(State.disabled));
+        assertThat(warmup.health().getStatus(), is(UP));
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright 2018 EuregJUG.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.euregjug.site.posts;
+
+import java.util.Date;
+import java.util.Optional;
+import org.joor.Reflect;
+import org.junit.Test;
+import org.mockito.InOrder;
+import org.springframework.context.ApplicationEventPublisher;
+
+import static org.hamcrest.Matchers.hasProperty;
+import static org.hamcrest.Matchers.is;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.argThat;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class PostRenditionServiceTest {
+
+    private final PostRepository postRepository = mock(PostRepository.class);
+
+    private final PostRenderingService postRenderingService = mock(PostRenderingService.class);
+
+    private final ApplicationEventPublisher applicationEventPublisher = mock(ApplicationEventPublisher.class);
+
+    private final PostRenditionService postRenditionService = new PostRenditionService(this.postRepository, this.postRenderingService, this.applicationEventPublisher);
+
+    @Test
+    public void staleRenditionsShouldBePersistedAndRefreshed() {
+        final PostEntity post = Reflect.on(new PostEntity(new Date(), "post-1", "Post 1", "Content 1")).set("id", 23).get();
+        post.setRendition("<p>Content 1</p>", "hash", "version");
+        when(this.postRepository.findOne(23)).thenReturn(Optional.of(post));
+        when(this.postRenderingService.updateRendition(post)).thenReturn(true);
+
+        this.postRenditionService.onPostChanged(postChanged(23));
+
+        verify(this.postRepository).updateRendition(23, "<p>Content 1</p>", "hash", "version");
+        verify(this.postRenderingService).refresh(post);
+    }
+
+    @Test
+    public void currentRenditionsShouldOnlyBeRefreshed() {
+        final PostEntity post = Reflect.on(new PostEntity(new Date(), "post-1", "Post 1", "Content 1")).set("id", 23).get();
+        when(this.postRepository.findOne(23)).thenReturn(Optional.of(post));
+        when(this.postRenderingService.updateRendition(post)).thenReturn(false);
+
+        this.postRenditionService.onPostChanged(postChanged(23));
+
+        verify(this.postRepository, never()).updateRendition(anyInt(), anyString(), anyString(), anyString());
+        verify(this.postRenderingService).refresh(post);
+    }
+
+    @Test
+    public void missingPostsShouldBeIgnored() {
+        when(this.postRepository.findOne(42)).thenReturn(Optional.empty());
+
+        this.postRenditionService.onPostChanged(postChanged(42));
+
+        verify(this.postRenderingService, never()).refresh(any(PostEntity.class));
+        verify(this.applicationEventPublisher).publishEvent(any(PostRenditionRefreshedEvent.class));
+    }
+
+    @Test
+    public void refreshShouldBeAnnouncedAfterTheRenditionHasBeenCached() {
+        final PostEntity post = Reflect.on(new PostEntity(new Date(), "post-1", "Post 1", "Content 1")).set("id", 23).get();
+        post.setRendition("<p>Content 1</p>", "hash", "version");
+        when(this.postRepository.findOne(23)).thenReturn(Optional.of(post));
+        when(this.postRenderingService.updateRendition(post)).thenReturn(true);
+
+        this.postRenditionService.onPostChanged(postChanged(23));
+
+        final InOrder inOrder = inOrder(this.postRepository, this.postRenderingService, this.applicationEventPublisher);
+        inOrder.verify(this.postRepository).updateRendition(23, "<p>Content 1</p>", "hash", "version");
+        inOrder.verify(this.postRenderingService).refresh(post);
+        inOrder.verify(this.applicationEventPublisher).publishEvent((Object) argThat(hasProperty("postChangedEvent", hasProperty("id", is(23)))));
+    }
+
+    @Test
+    public void failedRefreshesShouldBeAnnounced() {
+        when(this.postRepository.findOne(23)).thenThrow(new IllegalStateException("Database gone"));
+
+        this.postRenditionService.onPostChanged(postChanged(23));
+
+        verify(this.applicationEventPublisher).publishEvent(any(PostRenditionRefreshedEvent.class));
+    }
+
+    private static PostChangedEvent postChanged(final int id) {
+        return new PostChangedEvent(Reflect.on(new PostEntity(new Date(), "post-" + id, "Post " + id, "Content " + id)).set("id", id).<PostEntity>get());
+    }
+}
@@ -15,8 +15,17 @@
  */
 package eu.euregjug.site.posts;
 
+import static java.util.stream.Collectors.toList;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsInAnyOrder;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
 import static org.junit.Assert.assertThat;
+import eu.euregjug.site.support.ModificationStamp;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import javax.persistence.EntityManager;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -33,23 +42,118 @@ public class PostRepositoryTest {
     @Autowired
     private PostRepository postRepository;
 
+    @Autowired
+    private EntityManager entityManager;
+
+    @Test
+    public void getNeighboursShouldWork() {
+        PostNeighbours neighbours = postRepository.getNeighbours(postRepository.findOne(3).get());
+        assertThat(neighbours.getPrevious().get().getSlug(), is("slug-2"));
+        assertThat(neighbours.getPrevious().get().getContent(), is(nullValue()));
+        assertThat(neighbours.getNext().get().getSlug(), is("slug-4"));
+        assertThat(neighbours.getNext().get().getTitle(), is("title-4"));
+        assertThat(neighbours.getNext().get().getPublishedOn(), is(LocalDate.of(2016, 1, 2)));
+
+        neighbours = postRepository.getNeighbours(postRepository.findOne(1).get());
+        assertThat(neighbours.getPrevious().isPresent(), is(false));
+        assertThat(neighbours.getNext().get().getSlug(), is("slug-2"));
+
+        neighbours = postRepository.getNeighbours(postRepository.findOne(5).get());
+        assertThat(neighbours.getPrevious().get().getSlug(), is("slug-4"));
+        assertThat(neighbours.getNext().isPresent(), is(false));
+    }
+
+    @Test
+    public void getNeighboursShouldIgnoreUnpublishedPosts() {
+        postRepository.findOne(4).get().setStatus(PostEntity.Status.draft);
+        final PostNeighbours neighbours = postRepository.getNeighbours(postRepository.findOne(5).get());
+        assertThat(neighbours.getPrevious().get().getSlug(), is("slug-3"));
+    }
+
+    @Test
+    public void getNeighboursOfCursorShouldWork() {
+        final PostEntity post = postRepository.findOne(3).get();
+        final PostNeighbours neighbours = postRepository.getNeighbours(PostCursor.of(post));
+        assertThat(neighbours.getPrevious().get().getSlug(), is("slug-2"));
+        assertThat(neighbours.getNext().get().getSlug(), is("slug-4"));
+    }
+
+    @Test
+    public void findAllArchiveEntriesByStatusShouldWork() {
+        postRepository.findOne(2).get().setStatus(PostEntity.Status.hidden);
+        final List<ArchivedPost> entries = postRepository.findAllArchiveEntriesByStatus(PostEntity.Status.published);
+        assertThat(entries.stream().map(ArchivedPost::getId).collect(toList()), containsInAnyOrder(1, 3, 4, 5));
+        final ArchivedPost entry = entries.stream().filter(archivedPost -> archivedPost.getId() == 5).findFirst().get();
+        assertThat(entry.getPost().getSlug(), is("slug-5"));
+        assertThat(entry.getPost().getTitle(), is("title-5"));
+    }
+
+    @Test
+    public void getModificationStampShouldWork() {
+        final ModificationStamp stamp = postRepository.getModificationStamp();
+        assertThat(stamp.getCount(), is(5L));
+        assertThat(stamp.getLastModified() > 0, is(true));
+    }
+
     @Test
-    public void getPreviousShouldWork() {
-        PostEntity currentPost = postRepository.findOne(3).get();
-        currentPost = postRepository.getPrevious(currentPost).get();
-        assertThat(currentPost.getId(), is(2));
-        currentPost = postRepository.getPrevious(currentPost).get();
-        assertThat(currentPost.getId(), is(1));
-        assertThat(postRepository.getPrevious(currentPost).isPresent(), is(false));
+    public void updateRenditionShouldWork() {
+        assertThat(postRepository.updateRendition(3, "<p>rendered</p>", "hash", "version"), is(1));
+        final PostEntity post = postRepository.findOne(3).get();
+        assertThat(post.getRenderedContent(), is("<p>rendered</p>"));
+        assertThat(post.getContentHash(), is("hash"));
+        assertThat(post.getRendererVersion(), is("version"));
     }
 
     @Test
-    public void getNextShouldWork() {
-        PostEntity currentPost = postRepository.findOne(3).get();
-        currentPost = postRepository.getNext(currentPost).get();
-        assertThat(currentPost.getId(), is(4));
-        currentPost = postRepository.getNext(currentPost).get();
-        assertThat(currentPost.getId(), is(5));
-        assertThat(postRepository.getNext(currentPost).isPresent(), is(false));
+    public void keysetPaginationShouldWork() {
+        KeysetPage<PostEntity> page = postRepository.findPublishedAfter(null, 2);
+        assertThat(ids(page), contains(5, 4));
+        assertThat(page.getPrevious(), is(nullValue()));
+        assertThat(page.getNext(), is(PostCursor.of(postRepository.findOne(4).get())));
+
+        page = postRepository.findPublishedAfter(page.getNext(), 2);
+        assertThat(ids(page), contains(3, 2));
+        assertThat(page.getPrevious(), is(PostCursor.of(postRepository.findOne(3).get())));
+
+        page = postRepository.findPublishedAfter(page.getNext(), 2);
+        assertThat(ids(page), contains(1));
+        assertThat(page.getNext(), is(nullValue()));
+
+        page = postRepository.findPublishedBefore(PostCursor.of(postRepository.findOne(2).get()), 2);
+        assertThat(ids(page), contains(4, 3));
+        assertThat(page.getPrevious(), is(PostCursor.of(postRepository.findOne(4).get())));
+        assertThat(page.getNext(), is(PostCursor.of(postRepository.findOne(3).get())));
+
+        page = postRepository.findPublishedBefore(page.getPrevious(), 2);
+        assertThat(ids(page), contains(5, 4));
+        assertThat(page.getPrevious(), is(nullValue()));
+
+        postRepository.findOne(5).get().setStatus(PostEntity.Status.draft);
+        assertThat(ids(postRepository.findPublishedAfter(null, 2)), contains(4, 3));
+    }
+
+    @Test
+    public void forEachPublishedShouldWork() {
+        final List<Integer> ids = new ArrayList<>();
+        postRepository.forEachPublished(post -> {
+            assertThat(entityManager.contains(post), is(false));
+            ids.add(post.getId());
+        });
+        assertThat(ids, contains(5, 4, 3, 2, 1));
+    }
+
+    @Test
+    public void cursorsShouldBeParseable() {
+        final PostCursor cursor = PostCursor.of(postRepository.findOne(3).get());
+        assertThat(PostCursor.parse(cursor.toString()), is(cursor));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidCursorsShouldBeRejected() {
+        PostCursor.parse("2016-01-02.foo.3");
+    }
+
+    private static List<Integer> ids(final KeysetPage<PostEntity> page) {
+        return page.getContent().stream().map(PostEntity::getId).collect(toList());
     }
 }
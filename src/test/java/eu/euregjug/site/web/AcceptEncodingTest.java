@@ -0,0 +1,35 @@
+/*
+ * Copyright 2018 EuregJUG.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.euregjug.site.web;
+
+import org.junit.Test;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+public class AcceptEncodingTest {
+
+    @Test
+    public void acceptEncodingShouldBeParsed() {
+        assertThat(AcceptEncoding.acceptsGzip(null), is(false));
+        assertThat(AcceptEncoding.acceptsGzip("identity"), is(false));
+        assertThat(AcceptEncoding.acceptsGzip("deflate, GZIP;q=0.8"), is(true));
+        assertThat(AcceptEncoding.acceptsGzip("gzip;q=0, *"), is(false));
+        assertThat(AcceptEncoding.acceptsGzip("gzip;q=0"), is(false));
+        assertThat(AcceptEncoding.acceptsGzip("*;q=0.5"), is(true));
+        assertThat(AcceptEncoding.acceptsGzip("*;q=0.0"), is(false));
+    }
+}
@@ -0,0 +1,166 @@
+/*
+ * Copyright 2018 EuregJUG.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.euregjug.site.web;
+
+import eu.euregjug.site.events.EventRepository;
+import eu.euregjug.site.links.LinkRepository;
+import eu.euregjug.site.posts.PostChangedEvent;
+import eu.euregjug.site.posts.PostEntity;
+import eu.euregjug.site.posts.PostRenditionRefreshedEvent;
+import eu.euregjug.site.posts.PostRepository;
+import eu.euregjug.site.support.ModificationStamp;
+import eu.euregjug.site.web.ConditionalRequestService.Content;
+import eu.euregjug.site.web.ConditionalRequestService.Representation;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.GregorianCalendar;
+import org.joor.Reflect;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.servlet.DispatcherServlet;
+import org.springframework.web.servlet.FlashMap;
+
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.startsWith;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class ConditionalRequestServiceTest {
+
+    private final PostRepository postRepository = mock(PostRepository.class);
+
+    private final EventRepository eventRepository = mock(EventRepository.class);
+
+    private final LinkRepository linkRepository = mock(LinkRepository.class);
+
+    private final ConditionalRequestService conditionalRequestService = new ConditionalRequestService(this.postRepository, this.eventRepository, this.linkRepository);
+
+    @Before
+    public void prepareRepositories() {
+        when(this.postRepository.getModificationStamp()).thenReturn(new ModificationStamp(new GregorianCalendar(2016, 0, 1, 12, 0), 5L));
+        when(this.linkRepository.getModificationStamp()).thenReturn(new ModificationStamp(new GregorianCalendar(2016, 0, 2, 12, 0), 3L));
+    }
+
+    @Test
+    public void unchangedContentShouldBeNotModified() {
+        final MockHttpServletResponse response = new MockHttpServletResponse();
+        assertThat(this.conditionalRequestService.checkNotModified(new ServletWebRequest(new MockHttpServletRequest("GET", "/"), response), Representation.page, Content.posts, Content.links), is(false));
+        final String etag = response.getHeader("ETag");
+        assertThat(etag, is(notNullValue()));
+        assertThat(response.getHeader("Last-Modified"), is(nullValue()));
+
+        final MockHttpServletRequest request = new MockHttpServletRequest("GET", "/");
+        request.addHeader("If-None-Match", etag);
+        final MockHttpServletResponse notModified = new MockHttpServletResponse();
+        assertThat(this.conditionalRequestService.checkNotModified(new ServletWebRequest(request, notModified), Representation.page, Content.posts, Content.links), is(true));
+        assertThat(notModified.getStatus(), is(304));
+    }
+
+    @Test
+    public void changedContentShouldBeModified() {
+        final MockHttpServletResponse response = new MockHttpServletResponse();
+        this.conditionalRequestService.checkNotModified(new ServletWebRequest(new MockHttpServletRequest("GET", "/"), response), Representation.page, Content.posts);
+        final String etag = response.getHeader("ETag");
+
+        when(this.postRepository.getModificationStamp()).thenReturn(new ModificationStamp(new GregorianCalendar(2016, 0, 1, 12, 0), 4L));
+        final MockHttpServletRequest request = new MockHttpServletRequest("GET", "/");
+        request.addHeader("If-None-Match", etag);
+        final MockHttpServletResponse modified = new MockHttpServletResponse();
+        assertThat(this.conditionalRequestService.checkNotModified(new ServletWebRequest(request, modified), Representation.page, Content.posts), is(false));
+        assertThat(modified.getHeader("ETag"), is(not(etag)));
+    }
+
+    @Test
+    public void requestsWithFlashAttributesShouldNeverBeNotModified() {
+        final MockHttpServletResponse response = new MockHttpServletResponse();
+        this.conditionalRequestService.checkNotModified(new ServletWebRequest(new MockHttpServletRequest("GET", "/"), response), Representation.page, Content.posts);
+        final String etag = response.getHeader("ETag");
+
+        final MockHttpServletRequest request = new MockHttpServletRequest("GET", "/");
+        request.addHeader("If-None-Match", etag);
+        final FlashMap flashMap = new FlashMap();
+        flashMap.put("alerts", Arrays.asList("registered"));
+        request.setAttribute(DispatcherServlet.INPUT_FLASH_MAP_ATTRIBUTE, flashMap);
+        final MockHttpServletResponse modified = new MockHttpServletResponse();
+        assertThat(this.conditionalRequestService.checkNotModified(new ServletWebRequest(request, modified), Representation.page, Content.posts), is(false));
+        assertThat(modified.getStatus(), is(200));
+        assertThat(modified.getHeader("ETag"), is(nullValue()));
+    }
+
+    @Test
+    public void refreshedRenditionsShouldModifyPosts() {
+        final MockHttpServletResponse response = new MockHttpServletResponse();
+        this.conditionalRequestService.checkNotModified(new ServletWebRequest(new MockHttpServletRequest("GET", "/"), response), Representation.page, Content.posts);
+        final String etag = response.getHeader("ETag");
+
+        this.conditionalRequestService.onPostRenditionRefreshed(new PostRenditionRefreshedEvent(postChanged(1)));
+        final MockHttpServletRequest request = new MockHttpServletRequest("GET", "/");
+        request.addHeader("If-None-Match", etag);
+        final MockHttpServletResponse modified = new MockHttpServletResponse();
+        assertThat(this.conditionalRequestService.checkNotModified(new ServletWebRequest(request, modified), Representation.page, Content.posts), is(false));
+        assertThat(modified.getHeader("ETag"), is(not(etag)));
+    }
+
+    @Test
+    public void pagesShouldVaryByLocaleAndAcceptType() {
+        final MockHttpServletResponse response = new MockHttpServletResponse();
+        this.conditionalRequestService.checkNotModified(new ServletWebRequest(new MockHttpServletRequest("GET", "/"), response), Representation.page, Content.posts);
+        final String etag = response.getHeader("ETag");
+
+        final MockHttpServletRequest request = new MockHttpServletRequest("GET", "/");
+        request.addHeader("Accept", "application/atom+xml");
+        request.addHeader("If-None-Match", etag);
+        final MockHttpServletResponse modified = new MockHttpServletResponse();
+        assertThat(this.conditionalRequestService.checkNotModified(new ServletWebRequest(request, modified), Representation.page, Content.posts), is(false));
+        assertThat(modified.getHeader("ETag"), is(not(etag)));
+    }
+
+    @Test
+    public void calendarsShouldNotBeOlderThanTheInstance() {
+        final long startedAt = Reflect.on(this.conditionalRequestService).get("startedAt");
+        final MockHttpServletResponse response = new MockHttpServletResponse();
+        assertThat(this.conditionalRequestService.checkNotModified(new ServletWebRequest(new MockHttpServletRequest("GET", "/events"), response), Representation.calendar, Content.events), is(false));
+        assertThat(response.getHeader("ETag"), startsWith("W/\""));
+        assertThat(response.getDateHeader("Last-Modified"), is(greaterThanOrEqualTo(startedAt / 1000 * 1000)));
+
+        final MockHttpServletRequest request = new MockHttpServletRequest("GET", "/events");
+        request.addHeader("If-Modified-Since", new GregorianCalendar(2016, 0, 2, 12, 0).getTimeInMillis());
+        final MockHttpServletResponse modified = new MockHttpServletResponse();
+        assertThat(this.conditionalRequestService.checkNotModified(new ServletWebRequest(request, modified), Representation.calendar, Content.events), is(false));
+
+        final MockHttpServletRequest conditionalRequest = new MockHttpServletRequest("GET", "/events");
+        conditionalRequest.addHeader("If-None-Match", response.getHeader("ETag"));
+        final MockHttpServletResponse notModified = new MockHttpServletResponse();
+        assertThat(this.conditionalRequestService.checkNotModified(new ServletWebRequest(conditionalRequest, notModified), Representation.calendar, Content.events), is(true));
+    }
+
+    @Test
+    public void emptyTablesShouldBeSupported() {
+        assertThat(this.conditionalRequestService.getModificationStamp(Content.events), is(ModificationStamp.EMPTY));
+    }
+
+    private static PostChangedEvent postChanged(final int id) {
+        return new PostChangedEvent(Reflect.on(new PostEntity(new Date(), "post-" + id, "Post " + id, "Content " + id)).set("id", id).<PostEntity>get());
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright 2018 EuregJUG.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.euregjug.site.web;
+
+import eu.euregjug.site.events.EventChangedEvent;
+import eu.euregjug.site.events.EventEntity;
+import eu.euregjug.site.events.EventRepository;
+import eu.euregjug.site.web.EventCalendarService.RenderedCalendar;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.GregorianCalendar;
+import java.util.zip.GZIPInputStream;
+import org.joor.Reflect;
+import org.junit.Test;
+import org.springframework.util.StreamUtils;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class EventCalendarServiceTest {
+
+    private static final String REGISTRATION_URL = "http://euregjug.eu/register/";
+
+    private final EventRepository eventRepository = mock(EventRepository.class);
+
+    private final EventCalendarService eventCalendarService = new EventCalendarService(this.eventRepository, 300);
+
+    private final EventEntity event1 = event(1, "name-1");
+
+    private final EventEntity event2 = event(2, "name-2");
+
+    @Test
+    public void calendarsShouldBeCached() {
+        when(this.eventRepository.findUpcomingEvents()).thenReturn(Arrays.asList(this.event1, this.event2));
+
+        final RenderedCalendar calendar = this.eventCalendarService.getCalendar(REGISTRATION_URL);
+
+        assertThat(this.eventCalendarService.getCalendar(REGISTRATION_URL), is(sameInstance(calendar)));
+        verify(this.eventRepository, times(1)).findUpcomingEvents();
+    }
+
+    @Test
+    public void onlyChangedEventsShouldBeSerializedAgain() {
+        when(this.eventRepository.findUpcomingEvents()).thenReturn(Arrays.asList(this.event1, this.event2));
+        final RenderedCalendar calendar = this.eventCalendarService.getCalendar(REGISTRATION_URL);
+        final byte[] fragment1 = this.eventCalendarService.getFragment(this.event1, REGISTRATION_URL);
+        final byte[] fragment2 = this.eventCalendarService.getFragment(this.event2, REGISTRATION_URL);
+
+        this.event2.setDescription("new-desc-2");
+        this.eventCalendarService.onEventChanged(new EventChangedEvent(2));
+
+        final RenderedCalendar newCalendar = this.eventCalendarService.getCalendar(REGISTRATION_URL);
+        assertThat(newCalendar, is(not(sameInstance(calendar))));
+        assertThat(new String(newCalendar.getContent(), StandardCharsets.UTF_8), containsString("DESCRIPTION:new-desc-2"));
+        assertThat(this.eventCalendarService.getFragment(this.event1, REGISTRATION_URL), is(sameInstance(fragment1)));
+        assertThat(this.eventCalendarService.getFragment(this.event2, REGISTRATION_URL), is(not(sameInstance(fragment2))));
+        verify(this.eventRepository, times(2)).findUpcomingEvents();
+    }
+
+    @Test
+    public void calendarsAssembledDuringAChangeShouldNotBeUsed() {
+        when(this.eventRepository.findUpcomingEvents()).then(invocation -> {
+            this.eventCalendarService.onEventChanged(new EventChangedEvent(2));
+            return Arrays.asList(this.event1, this.event2);
+        });
+
+        final RenderedCalendar calendar = this.eventCalendarService.getCalendar(REGISTRATION_URL);
+
+        assertThat(this.eventCalendarService.getCalendar(REGISTRATION_URL), is(not(sameInstance(calendar))));
+        verify(this.eventRepository, times(2)).findUpcomingEvents();
+    }
+
+    @Test
+    public void fragmentsShouldBeKeyedByModificationDate() {
+        final byte[] fragment = this.eventCalendarService.getFragment(this.event1, REGISTRATION_URL);
+        assertThat(this.eventCalendarService.getFragment(this.event1, REGISTRATION_URL), is(sameInstance(fragment)));
+
+        Reflect.on(this.event1).set("updatedAt", new GregorianCalendar(2016, 6, 8, 19, 0));
+        assertThat(this.eventCalendarService.getFragment(this.event1, REGISTRATION_URL), is(not(sameInstance(fragment))));
+    }
+
+    @Test
+    public void gzippedContentShouldMatchContent() throws IOException {
+        when(this.eventRepository.findUpcomingEvents()).thenReturn(Arrays.asList(this.event1, this.event2));
+        final RenderedCalendar calendar = this.eventCalendarService.getCalendar(REGISTRATION_URL);
+
+        final byte[] unzipped = StreamUtils.copyToByteArray(new GZIPInputStream(new ByteArrayInputStream(calendar.getGzippedContent())));
+        assertThat(Arrays.equals(unzipped, calendar.getContent()), is(true));
+    }
+
+    private static EventEntity event(final int id, final String name) {
+        final GregorianCalendar heldOn = new GregorianCalendar(2016, 6, 7, 19, 0);
+        return Reflect.on(new EventEntity(heldOn, name, "desc-" + id)).set("id", id).set("createdAt", heldOn).get();
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright 2018 EuregJUG.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.euregjug.site.web;
+
+import eu.euregjug.site.posts.KeysetPage;
+import eu.euregjug.site.posts.Post;
+import eu.euregjug.site.posts.PostChangedEvent;
+import eu.euregjug.site.posts.PostEntity;
+import eu.euregjug.site.posts.PostRenderingService;
+import eu.euregjug.site.posts.PostRenditionRefreshedEvent;
+import eu.euregjug.site.posts.PostRepository;
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+import org.joor.Reflect;
+import org.junit.Test;
+import org.mockito.Matchers;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class FeedServiceTest {
+
+    private final PostRepository postRepository = mock(PostRepository.class);
+
+    private final PostRenderingService postRenderingService = mock(PostRenderingService.class);
+
+    private final FeedService feedService = new FeedService(this.postRepository, this.postRenderingService, 300);
+
+    private final PostEntity post = new PostEntity(Date.valueOf(LocalDate.of(2016, 8, 4)), "bar", "bar", "bar");
+
+    @Test
+    public void pagesShouldBeCachedUntilPostsChange() {
+        when(this.postRepository.findPublishedAfter(null, FeedService.ENTRIES_PER_PAGE)).thenReturn(new KeysetPage<>(Arrays.asList(this.post), null, null));
+        when(this.postRenderingService.render(this.post)).thenReturn(new Post(Date.valueOf(LocalDate.of(2016, 8, 4)), "bar", "bar", "<p>bar</p>"));
+
+        final KeysetPage<FeedEntry> entries = this.feedService.getEntries(null, null);
+        assertThat(this.feedService.getEntries(null, null), is(sameInstance(entries)));
+        assertThat(entries.getContent().get(0).getPermalink(), is("/2016/8/4/bar"));
+
+        this.feedService.onPostRenditionRefreshed(new PostRenditionRefreshedEvent(postChanged(1)));
+        assertThat(this.feedService.getEntries(null, null), is(not(sameInstance(entries))));
+        verify(this.postRepository, times(2)).findPublishedAfter(null, FeedService.ENTRIES_PER_PAGE);
+        verify(this.postRenderingService, times(2)).render(any(PostEntity.class));
+    }
+
+    @Test
+    public void entriesShouldOnlyBeReusedForTheSamePost() {
+        final Post renderedPost = new Post(Date.valueOf(LocalDate.of(2016, 8, 4)), "bar", "bar", "<p>bar</p>");
+        final FeedEntry entry = this.feedService.getEntry(renderedPost);
+        final byte[] serialized = entry.getSerialized("rss|http://euregjug.eu", () -> new byte[]{1});
+
+        assertThat(this.feedService.getEntry(new Post(Date.valueOf(LocalDate.of(2016, 8, 4)), "bar", "bar", "<p>bar</p>")), is(sameInstance(entry)));
+        assertThat(entry.getSerialized("rss|http://euregjug.eu", () -> new byte[]{2}), is(sameInstance(serialized)));
+        assertThat(this.feedService.getEntry(new Post(Date.valueOf(LocalDate.of(2016, 8, 4)), "bar", "bar", "<p>new bar</p>")), is(not(sameInstance(entry))));
+    }
+
+    @Test
+    public void numberOfSerializedFormsShouldBeLimited() {
+        final FeedEntry entry = new FeedEntry(new Post(Date.valueOf(LocalDate.of(2016, 8, 4)), "bar", "bar", "<p>bar</p>"));
+        for (int i = 0; i < FeedEntry.MAXIMUM_NUMBER_OF_SERIALIZED_FORMS; ++i) {
+            entry.getSerialized("rss|http://host" + i, () -> new byte[]{1});
+        }
+        final byte[] serialized = entry.getSerialized("rss|http://euregjug.eu", () -> new byte[]{1});
+        assertThat(entry.getSerialized("rss|http://euregjug.eu", () -> new byte[]{2}), is(not(sameInstance(serialized))));
+        assertThat(entry.getSerialized("rss|http://host0", () -> new byte[]{2})[0], is((byte) 1));
+    }
+
+    @Test
+    public void allEntriesShouldBeProvidedWithoutBeingKept() {
+        final PostEntity otherPost = new PostEntity(Date.valueOf(LocalDate.of(2016, 8, 5)), "foo", "foo", "foo");
+        doAnswer(invocation -> {
+            @SuppressWarnings("unchecked")
+            final Consumer<PostEntity> action = (Consumer<PostEntity>) invocation.getArguments()[0];
+            Arrays.asList(otherPost, this.post).forEach(action);
+            return null;
+        }).when(this.postRepository).forEachPublished(Matchers.<Consumer<PostEntity>>any());
+        final Post renderedPost = new Post(Date.valueOf(LocalDate.of(2016, 8, 4)), "bar", "bar", "<p>bar</p>");
+        when(this.postRenderingService.render(this.post)).thenReturn(renderedPost);
+        when(this.postRenderingService.render(otherPost)).thenReturn(new Post(Date.valueOf(LocalDate.of(2016, 8, 5)), "foo", "foo", "<p>foo</p>"));
+        final FeedEntry knownEntry = this.feedService.getEntry(renderedPost);
+
+        final List<FeedEntry> entries = new ArrayList<>();
+        this.feedService.forEachEntry(entries::add);
+        assertThat(entries.size(), is(2));
+        assertThat(entries.get(0).getPermalink(), is("/2016/8/5/foo"));
+        assertThat(entries.get(1), is(sameInstance(knownEntry)));
+
+        final List<FeedEntry> sameEntries = new ArrayList<>();
+        this.feedService.forEachEntry(sameEntries::add);
+        assertThat(sameEntries.get(0), is(not(sameInstance(entries.get(0)))));
+    }
+
+    private static PostChangedEvent postChanged(final int id) {
+        return new PostChangedEvent(Reflect.on(new PostEntity(Date.valueOf(LocalDate.of(2016, 8, 4)), "post-" + id, "Post " + id, "Content " + id)).set("id", id).<PostEntity>get());
+    }
+}
@@ -0,0 +1,190 @@
+/*
+ * Copyright 2018 EuregJUG.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.euregjug.site.web;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import eu.euregjug.site.posts.KeysetPage;
+import eu.euregjug.site.posts.Post;
+import eu.euregjug.site.posts.PostCursor;
+import java.io.ByteArrayInputStream;
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.xpath.XPathFactory;
+import org.junit.Test;
+import org.springframework.context.support.StaticMessageSource;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.servlet.DispatcherServlet;
+import org.springframework.web.servlet.i18n.FixedLocaleResolver;
+import org.w3c.dom.Document;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+public class FeedViewsTest {
+
+    private static final String BASE_URL = "http://euregjug.eu";
+
+    private final StaticMessageSource messageSource = new StaticMessageSource();
+
+    private final KeysetPage<FeedEntry> entries = new KeysetPage<>(
+            Arrays.asList(
+                    new FeedEntry(new Post(Date.valueOf(LocalDate.of(2016, 8, 5)), "foo", "foo", "<p>foo</p>")),
+                    new FeedEntry(new Post(Date.valueOf(LocalDate.of(2016, 8, 4)), "bar", "bar & baz", "<p>bar & \"baz\"</p>"))
+            ),
+            null,
+            PostCursor.parse("2016-08-04.1470268800000.1")
+    );
+
+    public FeedViewsTest() {
+        this.messageSource.addMessage("siteTitle", Locale.ENGLISH, "EuregJUG");
+        this.messageSource.addMessage("siteSubTitle", Locale.ENGLISH, "All things JVM!");
+        this.messageSource.addMessage("feedDescription", Locale.ENGLISH, "Feed <description>");
+        this.messageSource.addMessage("feedDescription", Locale.GERMAN, "Feed <Beschreibung>");
+    }
+
+    @Test
+    public void rssShouldBeWellFormed() throws Exception {
+        final Document feed = parseXml(render(new RssFeedView(this.messageSource), this.entries));
+
+        assertThat(xpath(feed, "/rss/channel/title"), is("EuregJUG - All things JVM!"));
+        assertThat(xpath(feed, "/rss/channel/description"), is("Feed <description>"));
+        assertThat(xpath(feed, "/rss/channel/pubDate"), is("Fri, 05 Aug 2016 00:00:00 GMT"));
+        assertThat(xpath(feed, "/rss/channel/*[local-name() = 'link' and @rel='next']/@href"), is(BASE_URL + "/feed.rss?after=2016-08-04.1470268800000.1"));
+        assertThat(xpath(feed, "count(/rss/channel/item)"), is("2"));
+        assertThat(xpath(feed, "/rss/channel/item[2]/title"), is("bar & baz"));
+        assertThat(xpath(feed, "/rss/channel/item[2]/*[local-name() = 'encoded']"), is("<p>bar & \"baz\"</p>"));
+    }
+
+    @Test
+    public void feedsShouldUseTheResolvedLocale() throws Exception {
+        final MockHttpServletRequest request = new MockHttpServletRequest("GET", "/feed");
+        request.setServerName("euregjug.eu");
+        request.addPreferredLocale(Locale.GERMAN);
+        request.setAttribute(DispatcherServlet.LOCALE_RESOLVER_ATTRIBUTE, new FixedLocaleResolver(Locale.ENGLISH));
+        final MockHttpServletResponse response = new MockHttpServletResponse();
+        new RssFeedView(this.messageSource).render(Collections.singletonMap(AbstractFeedView.MODEL_ATTRIBUTE, this.entries), request, response);
+
+        assertThat(xpath(parseXml(response.getContentAsByteArray()), "/rss/channel/description"), is("Feed <description>"));
+    }
+
+    @Test
+    public void atomShouldBeWellFormed() throws Exception {
+        final Document feed = parseXml(render(new AtomFeedView(this.messageSource), this.entries));
+
+        assertThat(feed.getDocumentElement().getNamespaceURI(), is(AtomFeedView.NAMESPACE_ATOM));
+        assertThat(xpath(feed, "/*[local-name() = 'feed']/*[local-name() = 'subtitle']"), is("Feed <description>"));
+        assertThat(xpath(feed, "count(/*[local-name() = 'feed']/*[local-name() = 'entry'])"), is("2"));
+        assertThat(xpath(feed, "namespace-uri(/*[local-name() = 'feed']/*[local-name() = 'entry'][2])"), is(AtomFeedView.NAMESPACE_ATOM));
+        assertThat(xpath(feed, "/*[local-name() = 'feed']/*[local-name() = 'entry'][2]/*[local-name() = 'content']"), is("<p>bar & \"baz\"</p>"));
+    }
+
+    @Test
+    public void jsonFeedShouldBeValid() throws Exception {
+        final JsonNode feed = new ObjectMapper().readTree(render(new JsonFeedView(this.messageSource), this.entries));
+
+        assertThat(feed.get("version").asText(), is(JsonFeedView.VERSION));
+        assertThat(feed.get("description").asText(), is("Feed <description>"));
+        assertThat(feed.get("next_url").asText(), is(BASE_URL + "/feed.json?after=2016-08-04.1470268800000.1"));
+        assertThat(feed.get("items").size(), is(2));
+        assertThat(feed.get("items").get(1).get("content_html").asText(), is("<p>bar & \"baz\"</p>"));
+    }
+
+    @Test
+    public void emptyFeedsShouldBeValid() throws Exception {
+        final KeysetPage<FeedEntry> noEntries = new KeysetPage<>(Collections.emptyList(), null, null);
+
+        assertThat(xpath(parseXml(render(new RssFeedView(this.messageSource), noEntries)), "count(/rss/channel/item)"), is("0"));
+        assertThat(xpath(parseXml(render(new AtomFeedView(this.messageSource), noEntries)), "count(/*[local-name() = 'feed']/*[local-name() = 'entry'])"), is("0"));
+        assertThat(new ObjectMapper().readTree(render(new JsonFeedView(this.messageSource), noEntries)).get("items").size(), is(0));
+    }
+
+    @Test
+    public void archivesShouldBeStreamed() throws Exception {
+        final AbstractFeedView.EntrySource source = this.entries::forEach;
+
+        final Document rss = parseXml(renderArchive(new RssFeedView(this.messageSource), source));
+        assertThat(xpath(rss, "/rss/channel/pubDate"), is("Fri, 05 Aug 2016 00:00:00 GMT"));
+        assertThat(xpath(rss, "/rss/channel/*[local-name() = 'link' and @rel='self']/@href"), is(BASE_URL + "/feed/archive.rss"));
+        assertThat(xpath(rss, "count(/rss/channel/*[local-name() = 'link' and @rel='next'])"), is("0"));
+        assertThat(xpath(rss, "count(/rss/channel/item)"), is("2"));
+
+        final Document atom = parseXml(renderArchive(new AtomFeedView(this.messageSource), source));
+        assertThat(xpath(atom, "count(/*[local-name() = 'feed']/*[local-name() = 'entry'])"), is("2"));
+
+        final JsonNode json = new ObjectMapper().readTree(renderArchive(new JsonFeedView(this.messageSource), source));
+        assertThat(json.get("feed_url").asText(), is(BASE_URL + "/feed/archive.json"));
+        assertThat(json.get("items").size(), is(2));
+        assertThat(json.get("items").get(1).get("title").asText(), is("bar & baz"));
+    }
+
+    @Test
+    public void emptyArchivesShouldBeValid() throws Exception {
+        final AbstractFeedView.EntrySource source = action -> {
+        };
+
+        assertThat(xpath(parseXml(renderArchive(new RssFeedView(this.messageSource), source)), "count(/rss/channel/item)"), is("0"));
+        assertThat(xpath(parseXml(renderArchive(new AtomFeedView(this.messageSource), source)), "count(/*[local-name() = 'feed']/*[local-name() = 'entry'])"), is("0"));
+        assertThat(new ObjectMapper().readTree(renderArchive(new JsonFeedView(this.messageSource), source)).get("items").size(), is(0));
+    }
+
+    @Test
+    public void headsAndEntriesShouldBeSerializedOnlyOnce() {
+        final RssFeedView view = new RssFeedView(this.messageSource);
+        final List<byte[]> feed = view.getFeed(this.entries, Locale.ENGLISH, BASE_URL, BASE_URL + "/feed.rss");
+        final List<byte[]> sameFeed = view.getFeed(this.entries, Locale.ENGLISH, BASE_URL, BASE_URL + "/feed.rss");
+
+        assertThat(sameFeed.get(0), is(sameInstance(feed.get(0))));
+        assertThat(sameFeed.get(2), is(sameInstance(feed.get(2))));
+        assertThat(sameFeed.get(3), is(sameInstance(feed.get(3))));
+    }
+
+    private static byte[] render(final AbstractFeedView view, final KeysetPage<FeedEntry> entries) throws Exception {
+        final MockHttpServletRequest request = new MockHttpServletRequest("GET", "/feed");
+        request.setServerName("euregjug.eu");
+        request.addPreferredLocale(Locale.ENGLISH);
+        final MockHttpServletResponse response = new MockHttpServletResponse();
+        view.render(Collections.singletonMap(AbstractFeedView.MODEL_ATTRIBUTE, entries), request, response);
+        assertThat(response.getContentLength(), is(response.getContentAsByteArray().length));
+        return response.getContentAsByteArray();
+    }
+
+    private static byte[] renderArchive(final AbstractFeedView view, final AbstractFeedView.EntrySource source) throws Exception {
+        final MockHttpServletRequest request = new MockHttpServletRequest("GET", "/feed/archive");
+        request.setServerName("euregjug.eu");
+        request.addPreferredLocale(Locale.ENGLISH);
+        final MockHttpServletResponse response = new MockHttpServletResponse();
+        view.render(Collections.singletonMap(AbstractFeedView.MODEL_ATTRIBUTE, source), request, response);
+        return response.getContentAsByteArray();
+    }
+
+    private static Document parseXml(final byte[] content) throws Exception {
+        final DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+        factory.setNamespaceAware(true);
+        return factory.newDocumentBuilder().parse(new ByteArrayInputStream(content));
+    }
+
+    private static String xpath(final Document document, final String expression) throws Exception {
+        return XPathFactory.newInstance().newXPath().evaluate(expression, document);
+    }
+}
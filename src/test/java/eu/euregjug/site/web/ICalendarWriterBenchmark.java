@@ -0,0 +1,98 @@
+/*
+ * Copyright 2018 EuregJUG.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.euregjug.site.web;
+
+import eu.euregjug.site.web.EventCalendarService.CalendarEntry;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Measures the throughput of writing calendars with hundreds of events the
+ * way {@link EventCalendarService#writeCalendar} does. Not run by the
+ * build, run {@link #main(java.lang.String...)} after test-compile with the
+ * test classpath.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ICalendarWriterBenchmark {
+
+    private static final String REGISTRATION_URL = "https://www.euregjug.eu/register/";
+
+    @Param({"100", "500"})
+    private int numberOfEvents;
+
+    private List<CalendarEntry> entries;
+
+    private ByteArrayOutputStream out;
+
+    @Setup
+    public void prepareEntries() {
+        final Instant start = Instant.parse("2016-01-01T18:00:00Z");
+        final StringBuilder description = new StringBuilder();
+        while (description.length() < 1500) {
+            description.append("Über die JVM, Lambdas; Streams, und \"Reactive Programming\" mit Spring.\n");
+        }
+        this.entries = new ArrayList<>(this.numberOfEvents);
+        for (int i = 0; i < this.numberOfEvents; ++i) {
+            this.entries.add(new CalendarEntry(
+                    i, start.plus(7L * i, ChronoUnit.DAYS), start, 120,
+                    "Event " + i, i % 2 == 0 ? "Michael Simons" : null, description.toString(),
+                    "Hochschule Aachen\nEupener Straße 70\r\n52066 Aachen"
+            ));
+        }
+        this.out = new ByteArrayOutputStream(this.numberOfEvents * 2048);
+    }
+
+    @Benchmark
+    public int writeCalendar() throws IOException {
+        this.out.reset();
+        final ICalendarWriter writer = new ICalendarWriter(this.out);
+        EventCalendarService.writeHeader(writer);
+        for (CalendarEntry entry : this.entries) {
+            EventCalendarService.writeEvent(writer, entry, REGISTRATION_URL);
+        }
+        EventCalendarService.writeFooter(writer);
+        writer.flush();
+        return this.out.size();
+    }
+
+    public static void main(final String... args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(ICalendarWriterBenchmark.class.getSimpleName()).build()).run();
+    }
+}
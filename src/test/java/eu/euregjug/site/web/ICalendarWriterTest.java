@@ -0,0 +1,87 @@
+/*
+ * Copyright 2018 EuregJUG.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.euregjug.site.web;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import org.junit.Test;
+
+import static eu.euregjug.site.web.EventsIcalView.ICS_LINEBREAK;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.junit.Assert.assertThat;
+
+public class ICalendarWriterTest {
+
+    private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+    private final ICalendarWriter writer = new ICalendarWriter(this.out);
+
+    @Test
+    public void longLinesShouldBeFolded() throws IOException {
+        final String digits = "123456789012345678901234567890123456789012345678901234567890123456789012345";
+        this.writer.property("DESCRIPTION", digits + digits + digits).close();
+
+        assertThat(written(), is(""
+                + "DESCRIPTION:123456789012345678901234567890123456789012345678901234567890123" + ICS_LINEBREAK
+                + " 45678901234512345678901234567890123456789012345678901234567890123456789012" + ICS_LINEBREAK
+                + " 34567890123451234567890123456789012345678901234567890123456789012345678901" + ICS_LINEBREAK
+                + " 23456789012345" + ICS_LINEBREAK
+        ));
+    }
+
+    @Test
+    public void foldingShouldCountOctetsAndKeepCharactersIntact() throws IOException {
+        final StringBuilder value = new StringBuilder();
+        for (int i = 0; i < 60; ++i) {
+            value.append("ä€😀");
+        }
+        this.writer.text("SUMMARY", value).close();
+
+        final String[] lines = written().split(ICS_LINEBREAK);
+        for (String line : lines) {
+            assertThat(line.getBytes(StandardCharsets.UTF_8).length, is(lessThanOrEqualTo(ICalendarWriter.MAX_LINE_LENGTH)));
+        }
+        assertThat(written().replace(ICS_LINEBREAK + " ", ""), is("SUMMARY:" + value + ICS_LINEBREAK));
+    }
+
+    @Test
+    public void textShouldBeEscaped() throws IOException {
+        this.writer.text("DESCRIPTION", "a\\b;c,d\r\ne\nf").close();
+
+        assertThat(written(), is("DESCRIPTION:a\\\\b\\;c\\,d\\ne\\nf" + ICS_LINEBREAK));
+    }
+
+    @Test
+    public void dateTimesShouldBeWrittenInUtc() throws IOException {
+        this.writer.utcDateTime("DTSTART", Instant.parse("2016-07-07T17:05:09Z")).close();
+
+        assertThat(written(), is("DTSTART:20160707T170509Z" + ICS_LINEBREAK));
+    }
+
+    @Test
+    public void multilineLocationsShouldBeJoined() throws IOException {
+        this.writer.text("LOCATION", EventCalendarService.joinLines("Am Strand\n4223 Schlaraffenland\n\nirgendwo")).close();
+
+        assertThat(written(), is("LOCATION:Am Strand\\, 4223 Schlaraffenland\\, irgendwo" + ICS_LINEBREAK));
+    }
+
+    private String written() {
+        return new String(this.out.toByteArray(), StandardCharsets.UTF_8);
+    }
+}
@@ -25,7 +25,12 @@ import eu.euregjug.site.events.RegistrationEntity;
 import eu.euregjug.site.events.RegistrationService;
 import eu.euregjug.site.links.LinkEntity;
 import eu.euregjug.site.links.LinkRepository;
+import eu.euregjug.site.posts.KeysetPage;
+import eu.euregjug.site.posts.Post;
+import eu.euregjug.site.posts.PostArchiveService;
+import eu.euregjug.site.posts.PostCursor;
 import eu.euregjug.site.posts.PostEntity;
+import eu.euregjug.site.posts.PostNeighbours;
 import eu.euregjug.site.posts.PostEntity.Status;
 import eu.euregjug.site.posts.PostRenderingService;
 import eu.euregjug.site.posts.PostRepository;
@@ -36,6 +41,7 @@ import java.time.ZoneId;
 import java.time.ZonedDateTime;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Comparator;
 import java.util.Date;
 import java.util.GregorianCalendar;
 import java.util.HashMap;
@@ -43,15 +49,25 @@ import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Optional;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 import javax.servlet.http.HttpServletRequest;
 import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.endsWith;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.startsWith;
 import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.hasProperty;
 import org.joor.Reflect;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyVararg;
 import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
 import static org.mockito.Mockito.verifyZeroInteractions;
@@ -65,9 +81,6 @@ import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.ComponentScan;
 import org.springframework.context.annotation.FilterType;
-import org.springframework.data.domain.PageImpl;
-import org.springframework.data.domain.PageRequest;
-import org.springframework.data.domain.Sort;
 import org.springframework.data.web.config.EnableSpringDataWebSupport;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.junit4.SpringRunner;
@@ -78,9 +91,12 @@ import static org.springframework.test.web.servlet.request.MockMvcRequestBuilder
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import org.springframework.test.web.servlet.result.MockMvcResultHandlers;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.flash;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.model;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.view;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.xpath;
+import org.springframework.web.context.request.WebRequest;
 import org.springframework.web.servlet.LocaleResolver;
 import org.springframework.web.servlet.i18n.AcceptHeaderLocaleResolver;
 
@@ -97,10 +113,15 @@ import org.springframework.web.servlet.i18n.AcceptHeaderLocaleResolver;
         includeFilters = @ComponentScan.Filter(
                 type = FilterType.ASSIGNABLE_TYPE,
                 classes = {
+                    AtomFeedView.class,
+                    EventCalendarService.class,
                     EventsIcalView.class,
-                    IndexRssView.class,
+                    FeedService.class,
+                    JsonFeedView.class,
                     MailChimpConfig.class,
-                    PostRenderingService.class // PostRenderService cannot be mocked (again: @Cacheable)
+                    PostRenderingService.class, // PostRenderService cannot be mocked (again: @Cacheable)
+                    RssFeedView.class,
+                    StaticBundles.class
                 }
         )
 )
@@ -129,6 +150,9 @@ public class IndexControllerTest {
     @MockBean
     private PostRepository postRepository;
 
+    @MockBean
+    private PostArchiveService postArchiveService;
+
     @MockBean
     private LinkRepository linkRepository;
 
@@ -138,6 +162,9 @@ public class IndexControllerTest {
     @MockBean
     private RegistrationService registrationService;
 
+    @MockBean
+    private ConditionalRequestService conditionalRequestService;
+
     private final List<EventEntity> events;
 
     private final List<PostEntity> posts;
@@ -173,9 +200,8 @@ public class IndexControllerTest {
     public void indexShouldWork() throws Exception {
         when(this.eventRepository.findUpcomingEvents()).thenReturn(events);
         when(this.linkRepository.findAllByOrderByTypeAscSortColAscTitleAsc()).thenReturn(links);
-        final PageRequest pageRequest = new PageRequest(0, 5, Sort.Direction.DESC, "publishedOn", "createdAt");
-        final PageImpl<PostEntity> postsPage = new PageImpl<>(this.posts, pageRequest, 15);
-        when(this.postRepository.findAllByStatus(Status.published, pageRequest)).thenReturn(postsPage);
+        final KeysetPage<PostEntity> postsPage = new KeysetPage<>(this.posts, null, PostCursor.parse("2016-08-04.1470268800000.1"));
+        when(this.postRepository.findPublishedAfter(null, 5)).thenReturn(postsPage);
 
         final Map<LinkEntity.Type, List<LinkEntity>> links = new HashMap<>();
         links.put(LinkEntity.Type.generic, this.links);
@@ -187,7 +213,32 @@ public class IndexControllerTest {
                 .andExpect(model().attribute("upcomingEvents", events))
                 .andExpect(model().attribute("links", links))
                 .andExpect(model().attributeExists("posts"))
-                .andExpect(model().attribute("posts", hasProperty("totalElements", equalTo(15L))));
+                .andExpect(model().attribute("posts", hasProperty("next", equalTo(postsPage.getNext()))))
+                .andExpect(content().string(containsString("href=\"/?after=2016-08-04.1470268800000.1\"")));
+    }
+
+    @Test
+    public void indexShouldSelectPagesByCursor() throws Exception {
+        when(this.linkRepository.findAllByOrderByTypeAscSortColAscTitleAsc()).thenReturn(links);
+        final PostCursor after = PostCursor.parse("2016-08-06.1470441600000.3");
+        final PostCursor before = PostCursor.parse("2016-08-03.1470182400000.0");
+        when(this.postRepository.findPublishedAfter(after, 5)).thenReturn(new KeysetPage<>(this.posts, PostCursor.parse("2016-08-05.1470355200000.2"), null));
+        when(this.postRepository.findPublishedBefore(before, 5)).thenReturn(new KeysetPage<>(this.posts, null, null));
+
+        this.mvc
+                .perform(get("http://euregjug.eu").param("after", after.toString()))
+                .andExpect(status().isOk())
+                .andExpect(content().string(containsString("href=\"/?before=2016-08-05.1470355200000.2\"")));
+        this.mvc
+                .perform(get("http://euregjug.eu").param("before", before.toString()))
+                .andExpect(status().isOk());
+        this.mvc
+                .perform(get("http://euregjug.eu").param("after", "invalid"))
+                .andExpect(status().isBadRequest());
+
+        verify(this.postRepository).findPublishedAfter(after, 5);
+        verify(this.postRepository).findPublishedBefore(before, 5);
+        verifyNoMoreInteractions(this.postRepository);
     }
 
     @Test
@@ -220,7 +271,7 @@ public class IndexControllerTest {
                         + "SUMMARY:name-1 (Farin Urlaub)" + ICS_LINEBREAK
                         + "DESCRIPTION:desc-1" + ICS_LINEBREAK
                         + "URL:http://euregjug.eu/register/23" + ICS_LINEBREAK
-                        + "LOCATION: Am Strand, 4223 Schlaraffenland, irgendwo" + ICS_LINEBREAK
+                        + "LOCATION:Am Strand\\, 4223 Schlaraffenland\\, irgendwo" + ICS_LINEBREAK
                         + "END:VEVENT" + ICS_LINEBREAK
                         + "BEGIN:VEVENT" + ICS_LINEBREAK
                         + "UID:42@euregjug.eu" + ICS_LINEBREAK
@@ -232,12 +283,72 @@ public class IndexControllerTest {
                         + "DESCRIPTION:desc-2" + ICS_LINEBREAK
                         + "URL:http://euregjug.eu/register/42" + ICS_LINEBREAK
                         + "END:VEVENT" + ICS_LINEBREAK
-                        + "END:VCALENDAR" + ICS_LINEBREAK));
+                        + "END:VCALENDAR" + ICS_LINEBREAK))
+                .andExpect(header().string("Content-Length", "580"));
+
+        this.mvc
+                .perform(get("http://euregjug.eu/events.ics").accept("text/calendar").header("Accept-Encoding", "gzip, deflate"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("Content-Encoding", "gzip"))
+                .andExpect(header().string("Vary", "Accept-Encoding"));
 
         verify(this.eventRepository).findUpcomingEvents();
         verifyNoMoreInteractions(this.eventRepository);
     }
 
+    @Test
+    public void eventsInRangeShouldBeStreamed() throws Exception {
+        final EventEntity event = this.events.get(0);
+        final Object[] row = new Object[]{
+            event.getId(), event.getHeldOn(), event.getCreatedAt(), event.getDuration(),
+            event.getName(), event.getSpeaker(), event.getDescription(), event.getLocation()
+        };
+        when(this.eventRepository.streamCalendarEntriesHeldBetween(any(), any())).thenReturn(Stream.<Object[]>of(row));
+
+        this.mvc
+                .perform(get("http://euregjug.eu/events.ics").param("from", "2016-01-01").param("to", "2016-12-31").accept("text/calendar"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType("text/calendar"))
+                .andExpect(content().string(startsWith("BEGIN:VCALENDAR" + ICS_LINEBREAK)))
+                .andExpect(content().string(containsString("UID:23@euregjug.eu" + ICS_LINEBREAK)))
+                .andExpect(content().string(containsString("LOCATION:Am Strand\\, 4223 Schlaraffenland\\, irgendwo" + ICS_LINEBREAK)))
+                .andExpect(content().string(endsWith("END:VCALENDAR" + ICS_LINEBREAK)));
+
+        verify(this.eventRepository).streamCalendarEntriesHeldBetween(
+                EventCalendarService.startOf(LocalDate.of(2016, 1, 1)),
+                EventCalendarService.startOf(LocalDate.of(2017, 1, 1))
+        );
+        verifyNoMoreInteractions(this.eventRepository);
+    }
+
+    @Test
+    public void eventsShouldHandleInvalidRanges() throws Exception {
+        this.mvc
+                .perform(get("http://euregjug.eu/events.ics").param("from", "2016-12-31").param("to", "2016-01-01").accept("text/calendar"))
+                .andExpect(status().isBadRequest());
+        this.mvc
+                .perform(get("http://euregjug.eu/events.ics").param("from", "gestern").accept("text/calendar"))
+                .andExpect(status().isBadRequest());
+
+        verifyZeroInteractions(this.eventRepository);
+    }
+
+    @Test
+    public void singleEventsShouldWork() throws Exception {
+        when(this.eventRepository.findOne(23)).thenReturn(Optional.of(this.events.get(0)));
+        when(this.eventRepository.findOne(4711)).thenReturn(Optional.empty());
+
+        this.mvc
+                .perform(get("http://euregjug.eu/events/{eventId}.ics", 23).accept("text/calendar"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType("text/calendar"))
+                .andExpect(content().string(containsString("UID:23@euregjug.eu" + ICS_LINEBREAK)))
+                .andExpect(content().string(not(containsString("UID:42@euregjug.eu"))));
+        this.mvc
+                .perform(get("http://euregjug.eu/events/{eventId}.ics", 4711).accept("text/calendar"))
+                .andExpect(status().isNotFound());
+    }
+
     @Test
     public void registerFormShouldWork() throws Exception {
         when(this.eventRepository.findOne(23)).thenReturn(Optional.of(this.events.get(0)));
@@ -269,11 +380,9 @@ public class IndexControllerTest {
 
     @Test
     public void feedShouldWork() throws Exception {
-        when(this.eventRepository.findUpcomingEvents()).thenReturn(events);
-        final PageRequest pageRequest = new PageRequest(1, 5, Sort.Direction.DESC, "publishedOn", "createdAt");
-        final PageImpl<PostEntity> postsPage = new PageImpl<>(this.posts, pageRequest, 15);
-        when(this.postRepository.findAllByStatus(Status.published, pageRequest)).thenReturn(postsPage);
-        when(this.linkRepository.findAllByOrderByTypeAscSortColAscTitleAsc()).thenReturn(new ArrayList<>());
+        final PostCursor cursor = PostCursor.parse("2016-08-06.1470441600000.3");
+        final KeysetPage<PostEntity> postsPage = new KeysetPage<>(this.posts, PostCursor.parse("2016-08-05.1470355200000.2"), PostCursor.parse("2016-08-04.1470268800000.1"));
+        when(this.postRepository.findPublishedAfter(cursor, 5)).thenReturn(postsPage);
 
         final ZoneId zoneUtc = ZoneId.of("UTC");
         final SimpleDateFormat df = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss 'GMT'", Locale.US);
@@ -283,7 +392,7 @@ public class IndexControllerTest {
         this.mvc
                 .perform(
                         get("http://euregjug.eu/feed.rss")
-                                .param("page", "1")
+                                .param("after", cursor.toString())
                                 .locale(Locale.ENGLISH)
                                 .accept("application/rss+xml"))
                 .andExpect(xpath("/rss/channel/title").string("EuregJUG Maas-Rhine - All things JVM!"))
@@ -292,10 +401,9 @@ public class IndexControllerTest {
                 .andExpect(xpath("/rss/channel/pubDate").string(date1))
                 .andExpect(xpath("/rss/channel/lastBuildDate").string(date1))
                 .andExpect(xpath("/rss/channel/generator").string("https://github.com/EuregJUG-Maas-Rhine/site"))
-                .andExpect(xpath("/rss/channel/*[local-name() = 'link' and @rel='previous']/@href").string("http://euregjug.eu/feed.rss?page=0"))
-                .andExpect(xpath("/rss/channel/*[local-name() = 'link' and @rel='self']/@href").string("http://euregjug.eu/feed.rss?page=1"))
-                .andExpect(xpath("/rss/channel/*[local-name() = 'link' and @rel='next']/@href").string("http://euregjug.eu/feed.rss?page=2"))
-                .andExpect(xpath("/rss/channel/*[local-name() = 'link' and @rel='next']/@href").string("http://euregjug.eu/feed.rss?page=2"))
+                .andExpect(xpath("/rss/channel/*[local-name() = 'link' and @rel='previous']/@href").string("http://euregjug.eu/feed.rss?before=2016-08-05.1470355200000.2"))
+                .andExpect(xpath("/rss/channel/*[local-name() = 'link' and @rel='self']/@href").string("http://euregjug.eu/feed.rss?after=2016-08-06.1470441600000.3"))
+                .andExpect(xpath("/rss/channel/*[local-name() = 'link' and @rel='next']/@href").string("http://euregjug.eu/feed.rss?after=2016-08-04.1470268800000.1"))
                 .andExpect(xpath("/rss/channel/item").nodeCount(2))
                 .andExpect(xpath("/rss/channel/item[2]/title").string("bar"))
                 .andExpect(xpath("/rss/channel/item[2]/link").string("http://euregjug.eu/2016/8/4/bar"))
@@ -306,6 +414,64 @@ public class IndexControllerTest {
                 .andExpect(status().isOk());
     }
 
+    @Test
+    public void allFeedFormatsShouldShareTheirModel() throws Exception {
+        final PostCursor cursor = PostCursor.parse("2016-08-07.1470528000000.4");
+        final KeysetPage<PostEntity> postsPage = new KeysetPage<>(this.posts, PostCursor.parse("2016-08-05.1470355200000.2"), PostCursor.parse("2016-08-04.1470268800000.1"));
+        when(this.postRepository.findPublishedAfter(cursor, 5)).thenReturn(postsPage);
+
+        this.mvc
+                .perform(get("http://euregjug.eu/feed.atom").param("after", cursor.toString()).locale(Locale.ENGLISH))
+                .andExpect(status().isOk())
+                .andExpect(content().contentTypeCompatibleWith("application/atom+xml"))
+                .andExpect(xpath("/*[local-name() = 'feed']/*[local-name() = 'title']").string("EuregJUG Maas-Rhine - All things JVM!"))
+                .andExpect(xpath("/*[local-name() = 'feed']/*[local-name() = 'updated']").string("2016-08-05T00:00:00Z"))
+                .andExpect(xpath("/*[local-name() = 'feed']/*[local-name() = 'link' and @rel='self']/@href").string("http://euregjug.eu/feed.atom?after=2016-08-07.1470528000000.4"))
+                .andExpect(xpath("/*[local-name() = 'feed']/*[local-name() = 'link' and @rel='previous']/@href").string("http://euregjug.eu/feed.atom?before=2016-08-05.1470355200000.2"))
+                .andExpect(xpath("/*[local-name() = 'feed']/*[local-name() = 'entry']").nodeCount(2))
+                .andExpect(xpath("/*[local-name() = 'feed']/*[local-name() = 'entry'][2]/*[local-name() = 'id']").string("http://euregjug.eu/2016/8/4/bar"))
+                .andExpect(xpath("/*[local-name() = 'feed']/*[local-name() = 'entry'][2]/*[local-name() = 'content']").string(containsString("bar")));
+
+        this.mvc
+                .perform(get("http://euregjug.eu/feed.json").param("after", cursor.toString()).locale(Locale.ENGLISH))
+                .andExpect(status().isOk())
+                .andExpect(content().contentTypeCompatibleWith("application/json"))
+                .andExpect(jsonPath("$.version").value("https://jsonfeed.org/version/1"))
+                .andExpect(jsonPath("$.title").value("EuregJUG Maas-Rhine - All things JVM!"))
+                .andExpect(jsonPath("$.feed_url").value("http://euregjug.eu/feed.json?after=2016-08-07.1470528000000.4"))
+                .andExpect(jsonPath("$.next_url").value("http://euregjug.eu/feed.json?after=2016-08-04.1470268800000.1"))
+                .andExpect(jsonPath("$.items.length()").value(2))
+                .andExpect(jsonPath("$.items[1].url").value("http://euregjug.eu/2016/8/4/bar"))
+                .andExpect(jsonPath("$.items[1].date_published").value("2016-08-04T00:00:00Z"));
+
+        verify(this.postRepository).findPublishedAfter(cursor, 5);
+        verifyNoMoreInteractions(this.postRepository);
+        verifyZeroInteractions(this.eventRepository, this.linkRepository);
+    }
+
+    @Test
+    public void feedArchiveShouldBeStreamed() throws Exception {
+        doAnswer(invocation -> {
+            final Consumer<PostEntity> action = (Consumer<PostEntity>) invocation.getArguments()[0];
+            this.posts.forEach(action);
+            return null;
+        }).when(this.postRepository).forEachPublished(any(Consumer.class));
+
+        this.mvc
+                .perform(get("http://euregjug.eu/feed/archive.atom").locale(Locale.ENGLISH))
+                .andExpect(status().isOk())
+                .andExpect(content().contentTypeCompatibleWith("application/atom+xml"))
+                .andExpect(header().doesNotExist("Content-Length"))
+                .andExpect(xpath("/*[local-name() = 'feed']/*[local-name() = 'updated']").string("2016-08-05T00:00:00Z"))
+                .andExpect(xpath("/*[local-name() = 'feed']/*[local-name() = 'link' and @rel='self']/@href").string("http://euregjug.eu/feed/archive.atom"))
+                .andExpect(xpath("/*[local-name() = 'feed']/*[local-name() = 'link' and @rel='next']").nodeCount(0))
+                .andExpect(xpath("/*[local-name() = 'feed']/*[local-name() = 'entry']").nodeCount(2))
+                .andExpect(xpath("/*[local-name() = 'feed']/*[local-name() = 'entry'][2]/*[local-name() = 'id']").string("http://euregjug.eu/2016/8/4/bar"));
+
+        verify(this.postRepository).forEachPublished(any(Consumer.class));
+        verifyNoMoreInteractions(this.postRepository);
+    }
+
     @Test
     public void registerShouldHandleInvalidData() throws Exception {
         when(this.eventRepository.findOne(23)).thenReturn(Optional.of(this.events.get(0)));
@@ -415,9 +581,8 @@ public class IndexControllerTest {
     public void shouldDisplayPost() throws Exception {
         final Date postDate = Date.from(LocalDate.of(2017, 1, 1).atStartOfDay(ZoneId.systemDefault()).toInstant());
         when(this.postRepository.findByPublishedOnAndSlug(postDate, "foo")).thenReturn(Optional.of(this.posts.get(0)));
-        final Optional<PostEntity> previousPost = Optional.of(this.posts.get(1));
-        when(this.postRepository.getPrevious(this.posts.get(0))).thenReturn(previousPost);
-        when(this.postRepository.getNext(this.posts.get(0))).thenReturn(Optional.empty());
+        final Post previousPost = new Post(this.posts.get(1));
+        when(this.postRepository.getNeighbours(this.posts.get(0))).thenReturn(new PostNeighbours(previousPost, null));
 
         this.mvc.perform(
                 get("/2017/1/1/foo")
@@ -425,29 +590,69 @@ public class IndexControllerTest {
                 .andDo(MockMvcResultHandlers.print())
                 .andExpect(status().isOk())
                 .andExpect(view().name("post"))
-                .andExpect(model().attribute("previousPost", previousPost))
+                .andExpect(model().attribute("previousPost", Optional.of(previousPost)))
+                .andExpect(content().string(containsString("href=\"/2016/08/04/bar\"")))
                 .andExpect(model().attributeExists("post"))
                 .andExpect(model().attribute("nextPost", Optional.empty()));
 
         verify(this.postRepository).findByPublishedOnAndSlug(postDate, "foo");
-        verify(this.postRepository).getPrevious(this.posts.get(0));
-        verify(this.postRepository).getNext(this.posts.get(0));
+        verify(this.postRepository).getNeighbours(this.posts.get(0));
         verifyNoMoreInteractions(this.postRepository);
     }
 
+    @Test
+    public void unmodifiedIndexShouldNotBeRendered() throws Exception {
+        when(this.conditionalRequestService.checkNotModified(any(WebRequest.class), eq(ConditionalRequestService.Representation.page), anyVararg()))
+                .thenAnswer(invocation -> invocation.getArgumentAt(0, WebRequest.class).checkNotModified("\"4711\""));
+        this.mvc.perform(
+                get("/").header("If-None-Match", "\"4711\"")
+        )
+                .andExpect(status().isNotModified())
+                .andExpect(content().string(""));
+
+        verifyZeroInteractions(this.postRepository, this.eventRepository, this.linkRepository);
+    }
+
     @Test
     public void archiveShouldWork() throws Exception {
-        when(this.postRepository.findAll(any(Sort.class))).thenReturn(this.posts);
+        final SortedMap<LocalDate, List<Post>> months = new TreeMap<>(Comparator.reverseOrder());
+        months.put(LocalDate.of(2016, 8, 1), this.posts.stream().map(Post::new).collect(Collectors.toList()));
+        when(this.postArchiveService.getMonths()).thenReturn(months);
         this.mvc.perform(
                 get("/archive")
         )
                 .andDo(MockMvcResultHandlers.print())
                 .andExpect(status().isOk())
                 .andExpect(view().name("archive"))
-                .andExpect(model().attributeExists("posts"));
+                .andExpect(model().attributeExists("posts"))
+                .andExpect(content().string(containsString("href=\"/2016/08/04/bar\"")));
 
-        verify(this.postRepository).findAll(any(Sort.class));
-        verifyNoMoreInteractions(this.postRepository);
+        verify(this.postArchiveService).getMonths();
+        verifyNoMoreInteractions(this.postArchiveService, this.postRepository);
+
+    }
+
+    @Test
+    public void searchShouldWork() throws Exception {
+        when(this.postRepository.searchPublishedByKeyword("foo")).thenReturn(Arrays.asList(new Post(this.posts.get(0))));
+        this.mvc.perform(
+                get("/search").param("q", "foo")
+        )
+                .andExpect(status().isOk())
+                .andExpect(view().name("archive"))
+                .andExpect(model().attribute("q", "foo"))
+                .andExpect(model().attributeDoesNotExist("alerts"))
+                .andExpect(content().string(containsString("href=\"/2016/08/05/foo\"")));
 
+        when(this.postRepository.searchPublishedByKeyword("bar")).thenReturn(new ArrayList<>());
+        this.mvc.perform(
+                get("/search").param("q", "bar")
+        )
+                .andExpect(status().isOk())
+                .andExpect(model().attribute("alerts", Arrays.asList("search.noResults")));
+
+        verify(this.postRepository).searchPublishedByKeyword("foo");
+        verify(this.postRepository).searchPublishedByKeyword("bar");
+        verifyNoMoreInteractions(this.postRepository);
     }
 }
@@ -0,0 +1,210 @@
+/*
+ * Copyright 2018 EuregJUG.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.euregjug.site.web;
+
+import eu.euregjug.site.links.LinkRepository;
+import eu.euregjug.site.posts.PostRepository;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.servlet.FilterChain;
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.junit.After;
+import org.junit.Test;
+import org.springframework.cache.concurrent.ConcurrentMapCache;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+import org.springframework.web.servlet.i18n.FixedLocaleResolver;
+import org.springframework.web.util.ContentCachingResponseWrapper;
+
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.not;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.mock;
+
+public class PageCacheFilterTest {
+
+    private final PageCache pageCache = new PageCache(new ConcurrentMapCache(PageCache.CACHE_NAME), mock(PostRepository.class), mock(LinkRepository.class));
+
+    private final PageCacheFilter pageCacheFilter = new PageCacheFilter(this.pageCache, new FixedLocaleResolver(Locale.GERMAN), Arrays.asList("/about"), Arrays.asList("/events"), Arrays.asList("before", "after"));
+
+    private final AtomicInteger renderings = new AtomicInteger();
+
+    @After
+    public void resetRequestAttributes() {
+        RequestContextHolder.resetRequestAttributes();
+    }
+
+    @Test
+    public void taggedPagesShouldBeCached() throws Exception {
+        assertThat(get("/", page("index", PageCache.TAG_POSTS)).getContentAsString(), is("index"));
+        final MockHttpServletResponse response = get("/", page("other", PageCache.TAG_POSTS));
+
+        assertThat(response.getContentAsString(), is("index"));
+        assertThat(response.getContentType(), is("text/html;charset=UTF-8"));
+        assertThat(response.getContentLength(), is(5));
+        assertThat(this.renderings.get(), is(1));
+    }
+
+    @Test
+    public void invalidatedPagesShouldBeRenderedAgain() throws Exception {
+        get("/", page("index", PageCache.TAG_POSTS, PageCache.TAG_EVENTS));
+        get("/archive", page("archive", PageCache.TAG_POSTS));
+
+        this.pageCache.invalidate(PageCache.TAG_EVENTS);
+
+        assertThat(get("/", page("new index", PageCache.TAG_POSTS)).getContentAsString(), is("new index"));
+        assertThat(get("/archive", page("new archive", PageCache.TAG_POSTS)).getContentAsString(), is("archive"));
+        assertThat(this.renderings.get(), is(3));
+    }
+
+    @Test
+    public void pagesInvalidatedWhileRenderingShouldNotBeCached() throws Exception {
+        get("/", (request, response) -> {
+            page("index", PageCache.TAG_POSTS).doFilter(request, response);
+            this.pageCache.invalidate(PageCache.TAG_POSTS);
+        });
+
+        assertThat(get("/", page("new index", PageCache.TAG_POSTS)).getContentAsString(), is("new index"));
+    }
+
+    @Test
+    public void conditionalRequestServiceShouldBeAnsweredFromCache() throws Exception {
+        final FilterChain page = page("index", PageCache.TAG_POSTS);
+        get("/", (request, response) -> {
+            ((HttpServletResponse) response).setHeader("ETag", "\"4711\"");
+            page.doFilter(request, response);
+        });
+
+        final MockHttpServletRequest request = new MockHttpServletRequest("GET", "/");
+        request.addHeader("If-None-Match", "\"4711\"");
+        final MockHttpServletResponse response = new MockHttpServletResponse();
+        this.pageCacheFilter.doFilter(request, response, page);
+
+        assertThat(response.getStatus(), is(304));
+        assertThat(response.getContentLength(), is(0));
+        assertThat(this.renderings.get(), is(1));
+    }
+
+    @Test
+    public void untaggedPagesShouldNotBeCached() throws Exception {
+        get("/register/1", page("register"));
+        get("/register/1", page("register"));
+
+        assertThat(this.renderings.get(), is(2));
+    }
+
+    @Test
+    public void staticPagesShouldBeCached() throws Exception {
+        get("/about", page("about"));
+        get("/about", page("about"));
+
+        assertThat(this.renderings.get(), is(1));
+    }
+
+    @Test
+    public void excludedPathsShouldNeitherBeBufferedNorCached() throws Exception {
+        final FilterChain page = page("calendar", PageCache.TAG_EVENTS);
+        final FilterChain unbuffered = (request, response) -> {
+            assertThat(response, is(not(instanceOf(ContentCachingResponseWrapper.class))));
+            page.doFilter(request, response);
+        };
+        get("/events.ics", unbuffered);
+        get("/events.ics", unbuffered);
+
+        assertThat(this.renderings.get(), is(2));
+    }
+
+    @Test
+    public void pagesSettingCookiesShouldNotBeCached() throws Exception {
+        final FilterChain page = page("index", PageCache.TAG_POSTS);
+        get("/", (request, response) -> {
+            ((HttpServletResponse) response).addCookie(new Cookie("foo", "bar"));
+            page.doFilter(request, response);
+        });
+        get("/", page);
+
+        assertThat(this.renderings.get(), is(2));
+    }
+
+    @Test
+    public void requestsWithSessionShouldBypassCache() throws Exception {
+        get("/", page("index", PageCache.TAG_POSTS));
+
+        final MockHttpServletRequest request = new MockHttpServletRequest("GET", "/");
+        request.setRequestedSessionId("4711");
+        final MockHttpServletResponse response = new MockHttpServletResponse();
+        this.pageCacheFilter.doFilter(request, response, page("personal index", PageCache.TAG_POSTS));
+
+        assertThat(response.getContentAsString(), is("personal index"));
+    }
+
+    @Test
+    public void keysShouldContainQueryLocaleAndAcceptType() {
+        final MockHttpServletRequest request = new MockHttpServletRequest("GET", "/");
+        request.setParameter("after", "2016-01-01.1.1");
+        request.addHeader("Accept", "application/atom+xml");
+
+        assertThat(this.pageCacheFilter.key(request), is("/?after=2016-01-01.1.1|de|application/atom+xml"));
+    }
+
+    @Test
+    public void keysShouldIgnoreParametersNotReadByPages() {
+        final MockHttpServletRequest request = new MockHttpServletRequest("GET", "/");
+        request.setParameter("x", "1");
+        request.setParameter("before", "2016-01-01.1.1");
+        request.setParameter("after", "2015-01-01.1.1");
+
+        assertThat(this.pageCacheFilter.key(request), is("/?after=2015-01-01.1.1&before=2016-01-01.1.1|de|text/html"));
+    }
+
+    @Test
+    public void keysShouldContainTheProducedRepresentation() {
+        assertThat(PageCacheFilter.representation(null), is("text/html"));
+        assertThat(PageCacheFilter.representation("text/html,application/xhtml+xml,application/xml;q=0.9,*/*;q=0.8"), is("text/html"));
+        assertThat(PageCacheFilter.representation("*/*; junk=1"), is("text/html"));
+        assertThat(PageCacheFilter.representation("application/*"), is("application/rss+xml"));
+        assertThat(PageCacheFilter.representation("application/json, application/atom+xml;q=0.5"), is("application/json"));
+        assertThat(PageCacheFilter.representation("image/png"), is(nullValue()));
+        assertThat(PageCacheFilter.representation("text/html;q=0"), is(nullValue()));
+        assertThat(PageCacheFilter.representation("not a media type"), is(nullValue()));
+    }
+
+    private FilterChain page(final String body, final String... tags) {
+        return (request, response) -> {
+            RequestContextHolder.setRequestAttributes(new ServletRequestAttributes((HttpServletRequest) request));
+            PageCache.tag(tags);
+            this.renderings.incrementAndGet();
+            response.setContentType("text/html;charset=UTF-8");
+            response.getOutputStream().write(body.getBytes(StandardCharsets.UTF_8));
+        };
+    }
+
+    private MockHttpServletResponse get(final String path, final FilterChain filterChain) throws Exception {
+        final MockHttpServletRequest request = new MockHttpServletRequest("GET", path);
+        request.setServletPath(path);
+        final MockHttpServletResponse response = new MockHttpServletResponse();
+        this.pageCacheFilter.doFilter(request, response, filterChain);
+        return response;
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright 2018 EuregJUG.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.euregjug.site.web;
+
+import eu.euregjug.site.links.LinkRepository;
+import eu.euregjug.site.posts.Post;
+import eu.euregjug.site.posts.PostChangedEvent;
+import eu.euregjug.site.posts.PostCursor;
+import eu.euregjug.site.posts.PostEntity;
+import eu.euregjug.site.posts.PostNeighbours;
+import eu.euregjug.site.posts.PostRenditionRefreshedEvent;
+import eu.euregjug.site.posts.PostRepository;
+import eu.euregjug.site.support.ModificationStamp;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.HashSet;
+import org.joor.Reflect;
+import org.junit.Test;
+import org.springframework.cache.concurrent.ConcurrentMapCache;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class PageCacheTest {
+
+    private final PostRepository postRepository = mock(PostRepository.class);
+
+    private final LinkRepository linkRepository = mock(LinkRepository.class);
+
+    private final PageCache pageCache = new PageCache(new ConcurrentMapCache(PageCache.CACHE_NAME), this.postRepository, this.linkRepository);
+
+    @Test
+    public void postTagShouldWork() {
+        assertThat(PageCache.postTag(post(LocalDate.of(2016, 1, 2), "slug")), is("post:2016-01-02/slug"));
+    }
+
+    @Test
+    public void changedPostsShouldInvalidateListsPermalinkAndNeighbours() {
+        final Post previous = post(LocalDate.of(2016, 1, 1), "previous");
+        final Post changed = post(LocalDate.of(2016, 1, 2), "changed");
+        final Post next = post(LocalDate.of(2016, 1, 3), "next");
+        final Post unrelated = post(LocalDate.of(2016, 1, 4), "unrelated");
+        final PostEntity changedEntity = entity(changed);
+        when(this.postRepository.getNeighbours(PostCursor.parse("2016-01-02.0.23"))).thenReturn(new PostNeighbours(previous, next));
+
+        put("/", PageCache.TAG_POSTS, PageCache.TAG_EVENTS);
+        put("/events", PageCache.TAG_EVENTS);
+        for (Post post : Arrays.asList(previous, changed, next, unrelated)) {
+            put(post.getSlug(), PageCache.postTag(post));
+        }
+
+        this.pageCache.onPostRenditionRefreshed(new PostRenditionRefreshedEvent(new PostChangedEvent(changedEntity)));
+
+        assertThat(this.pageCache.get("/"), is(nullValue()));
+        assertThat(this.pageCache.get("previous"), is(nullValue()));
+        assertThat(this.pageCache.get("changed"), is(nullValue()));
+        assertThat(this.pageCache.get("next"), is(nullValue()));
+        assertThat(this.pageCache.get("unrelated"), is(notNullValue()));
+        assertThat(this.pageCache.get("/events"), is(notNullValue()));
+    }
+
+    @Test
+    public void changedLinksShouldInvalidatePagesListingLinks() {
+        when(this.linkRepository.getModificationStamp()).thenReturn(stamp(1L, 2L));
+        this.pageCache.checkLinks();
+        put("/", PageCache.TAG_POSTS, PageCache.TAG_LINKS);
+        put("/events", PageCache.TAG_EVENTS);
+
+        this.pageCache.checkLinks();
+        assertThat(this.pageCache.get("/"), is(notNullValue()));
+
+        when(this.linkRepository.getModificationStamp()).thenReturn(stamp(3L, 2L));
+        this.pageCache.checkLinks();
+        assertThat(this.pageCache.get("/"), is(nullValue()));
+        assertThat(this.pageCache.get("/events"), is(notNullValue()));
+    }
+
+    private void put(final String key, final String... tags) {
+        this.pageCache.put(key, new CachedPage("text/html", null, new byte[0], null, -1, new HashSet<>(Arrays.asList(tags)), this.pageCache.currentSequence()));
+    }
+
+    private static PostEntity entity(final Post post) {
+        final Calendar createdAt = Calendar.getInstance();
+        createdAt.setTimeInMillis(0);
+        return Reflect.on(new PostEntity(toDate(post.getPublishedOn()), post.getSlug(), post.getSlug(), "content"))
+                .set("id", 23)
+                .set("createdAt", createdAt)
+                .get();
+    }
+
+    private static ModificationStamp stamp(final long lastModified, final long count) {
+        final Calendar calendar = Calendar.getInstance();
+        calendar.setTimeInMillis(lastModified);
+        return new ModificationStamp(calendar, count);
+    }
+
+    private static Post post(final LocalDate publishedOn, final String slug) {
+        return new Post(toDate(publishedOn), slug, slug);
+    }
+
+    private static Date toDate(final LocalDate localDate) {
+        return Date.from(localDate.atStartOfDay(ZoneId.systemDefault()).toInstant());
+    }
+}
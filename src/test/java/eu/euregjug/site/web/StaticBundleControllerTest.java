@@ -0,0 +1,108 @@
+/*
+ * Copyright 2018 EuregJUG.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.euregjug.site.web;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.context.annotation.ComponentScan;
+import org.springframework.context.annotation.FilterType;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.util.StreamUtils;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@RunWith(SpringRunner.class)
+@ActiveProfiles("test")
+@WebMvcTest(
+        controllers = StaticBundleController.class,
+        secure = false,
+        includeFilters = @ComponentScan.Filter(type = FilterType.ASSIGNABLE_TYPE, classes = StaticBundles.class)
+)
+public class StaticBundleControllerTest {
+
+    private static final String CSS = "body{color:#333}";
+
+    private static final String CSS_FILENAME = "site-772b1169dc98f0821bd3b54941942baf.css";
+
+    @Autowired
+    private MockMvc mvc;
+
+    @Autowired
+    private StaticBundles staticBundles;
+
+    @Before
+    public void buildBundles() {
+        this.staticBundles.build(name -> {
+            if ("site.js".equals(name)) {
+                throw new IllegalStateException("wro4j not available");
+            }
+            return CSS.getBytes(StandardCharsets.UTF_8);
+        });
+    }
+
+    @Test
+    public void pathsShouldBeContentHashed() {
+        assertThat(this.staticBundles.getPath("site.css"), is("/bundles/" + CSS_FILENAME));
+        assertThat(this.staticBundles.getPath("site.js"), is("/owr/site.js"));
+    }
+
+    @Test
+    public void bundlesShouldBeImmutable() throws Exception {
+        mvc
+                .perform(get("/bundles/" + CSS_FILENAME))
+                .andExpect(status().isOk())
+                .andExpect(header().string("Content-Type", "text/css"))
+                .andExpect(header().string("Cache-Control", "max-age=31536000, public, immutable"))
+                .andExpect(header().string("Vary", "Accept-Encoding"))
+                .andExpect(header().string("ETag", "\"772b1169dc98f0821bd3b54941942baf\""))
+                .andExpect(header().doesNotExist("Content-Encoding"))
+                .andExpect(content().string(CSS));
+
+        mvc
+                .perform(get("/bundles/" + CSS_FILENAME).header("If-None-Match", "\"772b1169dc98f0821bd3b54941942baf\""))
+                .andExpect(status().isNotModified());
+
+        mvc
+                .perform(get("/bundles/site-0000.css"))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    public void bundlesShouldBePrecompressed() throws Exception {
+        final MvcResult result = mvc
+                .perform(get("/bundles/" + CSS_FILENAME).header("Accept-Encoding", "gzip, deflate, br"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("Content-Encoding", "gzip"))
+                .andReturn();
+
+        final byte[] body = result.getResponse().getContentAsByteArray();
+        assertThat(new String(StreamUtils.copyToByteArray(new GZIPInputStream(new ByteArrayInputStream(body))), StandardCharsets.UTF_8), is(CSS));
+    }
+}